@@ -0,0 +1,26 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.constants;
+
+/**
+ * Channels of the per channel InterOp values, in the order of the InterOp
+ * records. The ordinal is the index of the channel in the per tile and per
+ * cycle value arrays; the Constants.METRIC_VAR_* strings are only labels
+ * for output.
+ */
+public enum Channel {
+  A, C, G, T,
+  // No call; only base call counts have this channel.
+  NC;
+
+  // The channels of the intensity and FWHM values, without NC.
+  public static final Channel[] BASES = {A, C, G, T};
+  public static final int NUM_BASES = BASES.length;
+  // Number of base call count channels, including NC.
+  public static final int NUM_CALLS = NC.ordinal() + 1;
+}
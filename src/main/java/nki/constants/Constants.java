@@ -69,6 +69,13 @@ public final class Constants {
   public static final String METRIC_VAR_NUM_BCS_T = "BaseCallsT";      // UnsignedShort (uint16)
   public static final String METRIC_VAR_NUM_SIGNOISE = "SigNoiseRatio";    // Float
 
+  // Labels of the per channel values, indexed by Channel ordinal
+  public static final String[] METRIC_VAR_ACI_LABELS = {METRIC_VAR_ACI_A, METRIC_VAR_ACI_C, METRIC_VAR_ACI_G, METRIC_VAR_ACI_T};
+  public static final String[] METRIC_VAR_ACICC_LABELS = {METRIC_VAR_ACICC_A, METRIC_VAR_ACICC_C, METRIC_VAR_ACICC_G, METRIC_VAR_ACICC_T};
+  public static final String[] METRIC_EX_RAWINT_LABELS = {METRIC_EX_RAWINT_A, METRIC_EX_RAWINT_C, METRIC_EX_RAWINT_G, METRIC_EX_RAWINT_T};
+  public static final String[] METRIC_VAR_FWHM_LABELS = {METRIC_VAR_FWHM_A, METRIC_VAR_FWHM_C, METRIC_VAR_FWHM_G, METRIC_VAR_FWHM_T};
+  public static final String[] METRIC_VAR_NUM_BCS_LABELS = {METRIC_VAR_NUM_BCS_A, METRIC_VAR_NUM_BCS_C, METRIC_VAR_NUM_BCS_G, METRIC_VAR_NUM_BCS_T, METRIC_VAR_NUM_BCS_NC};
+
   // InterOp metric codes
   public static final int TILE_CLUSTER_DENSITY = 100;
   public static final int TILE_CLUSTER_DENSITY_PF = 101;
@@ -114,6 +121,9 @@ public final class Constants {
   public static final String COM_PARSE = "PARSE";    // Force a parse of a sequencing run and store.
   
   public static final long METRIC_UPDATE_TIME = 7200000;    // Update every 120 minutes
+  public static final long METRIC_FULL_UPDATE_TIME = 21600000;    // Parse all tiles of preview runs every 6 hours
+  public static final int PREVIEW_SAMPLE_EVERY = 5;    // Preview parses decode every 5th tile of every swath
+  public static final int METRIC_EXACT_TILES = 512;    // Keep all tile values (exact quantiles) of lanes with up to 512 tiles
   public static final long ACTIVE_TIMEOUT = 86400000;    // Time out age of InterOp files while run is active. Default: 24 hours.
 
   private Constants() {
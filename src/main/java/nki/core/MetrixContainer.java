@@ -9,7 +9,16 @@ package nki.core;
 
 import java.io.*;
 import java.text.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import nki.objects.*;
@@ -21,18 +30,37 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import nki.constants.Constants;
 import nki.io.DataStore;
+import nki.io.RunArchive;
 import nki.parsers.illumina.QualityMetrics;
 import nki.parsers.illumina.TileMetrics;
 import nki.parsers.illumina.CorrectedIntensityMetrics;
 import nki.parsers.illumina.IndexMetrics;
 import nki.parsers.illumina.ErrorMetrics;
 import nki.parsers.illumina.ExtractionMetrics;
+import nki.parsers.illumina.ImageMetrics;
+import nki.parsers.illumina.ControlMetrics;
+import nki.parsers.illumina.GenericIlluminaParser;
+import nki.parsers.illumina.ParserCache;
+import nki.parsers.illumina.TileSampler;
 import nki.parsers.xml.XmlDriver;
 import nki.util.LoggerWrapper;
 
 public class MetrixContainer {
   protected static final Logger log = LoggerFactory.getLogger(MetrixContainer.class);
 
+  // Shared by all containers; bounds the number of InterOp files decoded at once.
+  private static final int PARSE_THREADS = Math.min(6, Runtime.getRuntime().availableProcessors());
+  private static final ExecutorService PARSE_EXECUTOR = Executors.newFixedThreadPool(PARSE_THREADS, new ThreadFactory() {
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "metrix-parse-" + threadNumber.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
   private Summary sum;
   private TileMetrics tm;
   private QualityMetrics qm;
@@ -65,10 +93,21 @@ public class MetrixContainer {
   private String intensityMetrics;
   private String indexMetrics;
   private String errorMetrics;
+  private String imageMetrics;
+  private String controlMetrics;
   private String runDir;
   
   private boolean timeCheck;
-  private boolean update = false;
+  // Set from the parse tasks.
+  private volatile boolean update = false;
+  // Contrast and focus are decoded by separate tasks and combined afterwards.
+  private volatile ImageDist contrastOut;
+  private volatile LaneCycleStats focusOut;
+  // ParserCache key suffix of the parsers of preview parses.
+  private static final String PREVIEW_KEY = "#preview";
+  // Set for preview parses, see previewSampler().
+  private boolean preview = false;
+  private TileSampler sampler;
   private boolean remote = false;
   private boolean force = false;
   
@@ -98,9 +137,19 @@ public class MetrixContainer {
    }
  
     public MetrixContainer(Summary summary, boolean remote, boolean force){
+      this(summary, remote, force, false);
+    }
+
+    /*
+    * MetrixContainer for the live views of running runs. With preview set, files
+    * without a cached parser are decoded for a subset of the tiles and their
+    * metrics are stored as estimates (see previewSampler()).
+    */
+    public MetrixContainer(Summary summary, boolean remote, boolean force, boolean preview){
       this.sum = summary;
       this.remote = remote;
       this.force = force;
+      this.preview = preview;
       
       if (sum != null) {
         runDir = sum.getRunDirectory();
@@ -119,9 +168,20 @@ public class MetrixContainer {
       }
   }  
   
+  /*
+  * Whether the run may still append to its InterOp files.
+  */
+  private boolean isActive() {
+    return !(sum.getHasFinished() ||
+             sum.getState() == Constants.STATE_FINISHED ||
+             sum.getState() == Constants.STATE_HANG);
+  }
+
   /*
   * MetrixContainer to support a standalone approach where the whole run directory
   * is parsed and formatted according to a set specification.
+  * runDir may also be a .zip, .tar, .tar.gz or .tgz archive of the run directory;
+  * RunInfo.xml and the InterOp files are then streamed from the archive.
   */
   public MetrixContainer(String runDir) {
     /*
@@ -166,7 +226,7 @@ public class MetrixContainer {
 
     log.debug("Processing Extraction Metrics");
     if (!exm.getFileMissing()) {
-      sum.setCurrentCycle(exm.getLastCycle());
+      sum.setCurrentCycle(exm.peekLastCycle());
     }
     else {
       log.error("Unable to process Extraction Metrics: " + Constants.EXTRACTION_METRICS + " file is missing.");
@@ -240,6 +300,9 @@ public class MetrixContainer {
         eDist = null;
       }
     }
+
+    // All files have been read from an archived run; drop its entry index.
+    RunArchive.release(runDir);
   }
 
   private void initPaths(String runDir){
@@ -249,6 +312,8 @@ public class MetrixContainer {
     this.intensityMetrics = runDir + "/InterOp/" + Constants.CORRECTED_INT_METRICS;
     this.indexMetrics = runDir + "/InterOp/" + Constants.INDEX_METRICS;
     this.errorMetrics = runDir + "/InterOp/" + Constants.ERROR_METRICS;
+    this.imageMetrics = runDir + "/InterOp/" + Constants.IMAGE_METRICS;
+    this.controlMetrics = runDir + "/InterOp/" + Constants.CONTROL_METRICS;
   }
   
   private void initSummary(){
@@ -276,129 +341,267 @@ public class MetrixContainer {
           pce.printStackTrace();
           log.error("Error in XML parser configuration: " + pce.getMessage());
         }
+      // The InterOp files are independent; decode them concurrently and
+      // join before the single database update below.
+      List<Callable<Void>> parseTasks = new ArrayList<>();
+      sampler = previewSampler();
+
       // Load TileMetrics
-        // Process Cluster Density and phasing / prephasing
-        if ((!sum.hasClusterDensity() ||
-            !sum.hasClusterDensityPF() ||
-            !sum.hasPhasing() ||
-            !sum.hasPrephasing() ||
-            timeCheck ||
-            force) && !this.remote
-            ) {
-               TileMetrics tm = new TileMetrics(tileMetrics, 0);
-              log.debug("Processing Tile Metrics");
+      // Process Cluster Density and phasing / prephasing
+      boolean tileStored = sum.hasClusterDensity() &&
+                           sum.hasClusterDensityPF() &&
+                           sum.hasPhasing() &&
+                           sum.hasPrephasing() &&
+                           sum.hasPercentAligned();
+      if (needsParse(tileStored, timeCheck || force, tileMetrics)) {
+        parseTasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            FileFingerprint fingerprint = FileFingerprint.read(tileMetrics);
+            // Tile metrics are small and hold cluster totals; always parse all tiles.
+            TileMetrics tm = ParserCache.getParser(TileMetrics.class, tileMetrics, 0);
+            log.debug("Processing Tile Metrics");
+            synchronized (tm) {
+              tm.ensureOpen();
+              tm.setExact(exactTileStats());
               //tm.digestData(rds);
               tm.digestData();
               sum.setClusterDensity(tm.getCDmap());
               sum.setClusterDensityPF(tm.getCDpfMap());
               sum.setPhasingMap(tm.getPhasingMap());              // Get all values for summary and populate
               sum.setPrephasingMap(tm.getPrephasingMap());
-
-              // Distribution present in ClusterDensity Object.
-              update = true;
+              sum.setPercentAlignedMap(tm.getPercentAlignedMap());
               tm.closeSourceStream();
-              tm = null;
-        }
-      
-        // Load QualityMetrics
-        // Process QScore Dist
-        log.debug("Checking Quality Metrics");
-        if ((!sum.hasQScores() || 
-             timeCheck ||
-             force) && !this.remote){
-           LoggerWrapper.log.fine("Processing Quality Metrics");
-           QualityMetrics qm = new QualityMetrics(qualityMetrics, 0);
-           //if (!qm.getFileMissing()) {
-           if((!sum.hasQScoreDist() && !qm.getFileMissing()) || this.force){
-             QualityScores qsOut = qm.digestData();
-             //sum.setQScores(qsOut);
-             // Calculate and set distributions
-             sum.setQScoreDist(qsOut.getQScoreDistribution());
-             sum.setQScoreDistByLane(qsOut.getQScoreDistributionByLane());
-             sum.setQScoreDistByCycle(qsOut.getQScoreDistributionByCycle());
-             
-             update = true;
-           }
-           qm.closeSourceStream();
-           qm = null; // Manual GC
-         }        
-        
-        // Load CorrectedIntensityMetrics
-        // Process Corrected Intensities (+ Avg Cor Int Called Clusters)
-        log.debug("Checking Corrected Intensity Metrics");
-        CorrectedIntensityMetrics cim = new CorrectedIntensityMetrics(intensityMetrics, 0);
-        if ((( !sum.hasIntensityDistAvg() || 
-                !sum.hasIntensityDistCCAvg() || 
-                !sum.hasIntensityDistRaw()) || 
-                timeCheck || 
-                force) && !this.remote) {
+            }
+            markParsed(tileMetrics, fingerprint, tm);
+
+            // Distribution present in ClusterDensity Object.
+            update = true;
+            return null;
+          }
+        });
+      }
+
+      // Load QualityMetrics
+      // Process QScore Dist
+      log.debug("Checking Quality Metrics");
+      if (needsParse(sum.hasQScoreDist(), timeCheck || force, qualityMetrics)) {
+        parseTasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            LoggerWrapper.log.fine("Processing Quality Metrics");
+            FileFingerprint fingerprint = FileFingerprint.read(qualityMetrics);
+            QualityMetrics qm = openParser(QualityMetrics.class, qualityMetrics);
+            synchronized (qm) {
+              qm.ensureOpen();
+              //if (!qm.getFileMissing()) {
+              boolean estimated = sum.getEstimate(Constants.QMETRICS_METRICS) != null && sampler == null;
+              if(((!sum.hasQScoreDist() || estimated) && !qm.getFileMissing()) || force){
+                // Only the distributions are stored; build them while decoding.
+                QScoreDistAccumulator qsAcc = qm.getAccumulator(QScoreDistAccumulator.class);
+                if (qsAcc == null) {
+                  qsAcc = new QScoreDistAccumulator();
+                  qm.addAccumulator(qsAcc);
+                }
+                qm.setStreaming(true);
+                qm.digestData();
+                //sum.setQScores(qsOut);
+                // Set distributions; cluster counts of sampled tiles are scaled to all tiles.
+                double scale = sampleScale(qm);
+                Map<Integer, QScoreDist> laneDist = qsAcc.getQScoreDistributionByLane();
+                for (Map.Entry<Integer, QScoreDist> entry : laneDist.entrySet()) {
+                  entry.setValue(entry.getValue().scale(scale));
+                }
+                sum.setQScoreDist(qsAcc.getQScoreDistribution().scale(scale));
+                sum.setQScoreDistByLane(laneDist);
+                sum.setQScoreDistByCycle(qsAcc.getQScoreDistributionByCycle());
+                markParsed(qualityMetrics, fingerprint, qm);
+
+                update = true;
+              }
+              qm.closeSourceStream();
+            }
+            return null;
+          }
+        });
+      }
+
+      // Load CorrectedIntensityMetrics
+      // Process Corrected Intensities (+ Avg Cor Int Called Clusters)
+      log.debug("Checking Corrected Intensity Metrics");
+      boolean intensityStored = sum.hasIntensityDistAvg() &&
+                                sum.hasIntensityDistCCAvg() &&
+                                sum.hasIntensityDistRaw();
+      if (needsParse(intensityStored, timeCheck || force, intensityMetrics)) {
+        parseTasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            FileFingerprint fingerprint = FileFingerprint.read(intensityMetrics);
+            CorrectedIntensityMetrics cim = openParser(CorrectedIntensityMetrics.class, intensityMetrics);
             log.debug("Processing Corrected Intensity Metrics");
-            if (!cim.getFileMissing()) {
-              IntensityScores isOut = cim.digestData();
-              //sum.setIScores(isOut);
-
-              // Calculate distribution
-              sum.setIntensityDistAvg(isOut.getAverageCorrectedIntensityDist());
-              sum.setIntensityDistCCAvg(isOut.getCalledClustersAverageCorrectedIntensityDist());
-              update = true;
-           }
-            cim.closeSourceStream();
-            cim = null; // Manual GC     
-        }
+            synchronized (cim) {
+              cim.ensureOpen();
+              if (!cim.getFileMissing()) {
+                IntensityScores isOut = cim.digestData();
+                //sum.setIScores(isOut);
+
+                // Calculate distribution
+                sum.setIntensityDistAvg(isOut.getAverageCorrectedIntensityDist());
+                sum.setIntensityDistCCAvg(isOut.getCalledClustersAverageCorrectedIntensityDist());
+                markParsed(intensityMetrics, fingerprint, cim);
+                update = true;
+              }
+              cim.closeSourceStream();
+            }
+            return null;
+          }
+        });
+      }
 
-        // Load ExtractionMetrics
-        // Process Raw Intensities
-        if((!sum.hasIntensityDistRaw() || 
-            timeCheck ||
-            force) && !this.remote) {
-            ExtractionMetrics eim = new ExtractionMetrics(extractionMetrics, 0);
-            if (!eim.getFileMissing()) {
-              eim.digestData();
-              IntensityScores risOut = eim.getIntensityScores();
-              FWHMScores fsOut = eim.getFWHMScores();
-
-              // Calculate distribution
-              sum.setIntensityDistRaw(risOut.getRawIntensityDist());
-              sum.setFWHMDist(fsOut.getAverageFWHMDist());
-              update = true;
+      // Load ExtractionMetrics
+      // Process Raw Intensities and focus (FWHM)
+      boolean extractionStored = sum.hasIntensityDistRaw() &&
+                                 sum.hasImageDist() &&
+                                 sum.getImageDist().hasFocus();
+      if (needsParse(extractionStored, timeCheck || force, extractionMetrics)) {
+        parseTasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            FileFingerprint fingerprint = FileFingerprint.read(extractionMetrics);
+            ExtractionMetrics eim = openParser(ExtractionMetrics.class, extractionMetrics);
+            synchronized (eim) {
+              eim.ensureOpen();
+              if (!eim.getFileMissing()) {
+                eim.digestData();
+                IntensityScores risOut = eim.getIntensityScores();
+                FWHMScores fsOut = eim.getFWHMScores();
+
+                // Calculate distribution
+                sum.setIntensityDistRaw(risOut.getRawIntensityDist());
+                sum.setFWHMDist(fsOut.getAverageFWHMDist());
+                focusOut = fsOut.getFocusStats();
+                markParsed(extractionMetrics, fingerprint, eim);
+                update = true;
+              }
+              eim.closeSourceStream();
             }
-        eim.closeSourceStream();
-        eim = null; // Manual GC
-        }        
-        
-        // Load IndexMetrics
-        if((!sum.hasSampleInfo() ||
-            force) && !this.remote){
-            IndexMetrics im = new IndexMetrics(indexMetrics, 0);
+            return null;
+          }
+        });
+      }
+
+      // Load IndexMetrics
+      if (needsParse(sum.hasSampleInfo(), force, indexMetrics)) {
+        parseTasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            FileFingerprint fingerprint = FileFingerprint.read(indexMetrics);
+            IndexMetrics im = ParserCache.getParser(IndexMetrics.class, indexMetrics, 0);
             log.debug("Processing Index Metrics");
-            Indices indices = im.digestData();
-            sum.setSampleInfo(indices);
+            synchronized (im) {
+              im.ensureOpen();
+              Indices indices = im.digestData();
+              sum.setSampleInfo(indices);
+              im.closeSourceStream();
+            }
+            markParsed(indexMetrics, fingerprint, im);
             update = true;
-            im.closeSourceStream();
-            im = null; // Manual GC
-        }
-        
+            return null;
+          }
+        });
+      }
+
       // Load ErrorMetrics
-      if((!sum.hasErrorDist() ||
-            force) && !this.remote){
+      if (needsParse(sum.hasErrorDist(), force, errorMetrics)) {
         if (sum.getCurrentCycle() > 52) {
-          log.debug("Processing Error Metrics");
-          ErrorMetrics em = new ErrorMetrics(errorMetrics, 0);
-          if (!em.getFileMissing()) {
-            ecOut = em.digestData();
-            eDist = ecOut.getErrorDistribution();
-            sum.setErrorDist(eDist);
-            update = true;
-          }
-          else {
-            log.error("Unable to process Error Metrics: "  + Constants.ERROR_METRICS + " file is missing.");
-            eDist = null;
-          }
+          parseTasks.add(new Callable<Void>() {
+            @Override
+            public Void call() {
+              log.debug("Processing Error Metrics");
+              FileFingerprint fingerprint = FileFingerprint.read(errorMetrics);
+              ErrorMetrics em = openParser(ErrorMetrics.class, errorMetrics);
+              synchronized (em) {
+                em.ensureOpen();
+                if (!em.getFileMissing()) {
+                  ecOut = em.digestData();
+                  eDist = ecOut.getErrorDistribution();
+                  sum.setErrorDist(eDist);
+                  markParsed(errorMetrics, fingerprint, em);
+                  update = true;
+                }
+                else {
+                  log.error("Unable to process Error Metrics: "  + Constants.ERROR_METRICS + " file is missing.");
+                  eDist = null;
+                }
+                em.closeSourceStream();
+              }
+              return null;
+            }
+          });
         }else{
             log.debug("Run: " + sum.getRunId() + " has not passed cycle 52 yet.");
-        }          
+        }
+      }
+
+      // Load ImageMetrics
+      // Process contrast per lane and cycle
+      boolean contrastStored = sum.hasImageDist() && sum.getImageDist().hasContrast();
+      if (needsParse(contrastStored, timeCheck || force, imageMetrics)) {
+        parseTasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            FileFingerprint fingerprint = FileFingerprint.read(imageMetrics);
+            ImageMetrics imm = openParser(ImageMetrics.class, imageMetrics);
+            log.debug("Processing Image Metrics");
+            synchronized (imm) {
+              imm.ensureOpen();
+              if (!imm.getFileMissing()) {
+                // The parser keeps adding to its aggregate on later refreshes.
+                contrastOut = imm.digestData().copy();
+                markParsed(imageMetrics, fingerprint, imm);
+                update = true;
+              }
+              imm.closeSourceStream();
+            }
+            return null;
+          }
+        });
+      }
+
+      // Load ControlMetrics
+      if (needsParse(sum.hasControlCounts(), force, controlMetrics)) {
+        parseTasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            FileFingerprint fingerprint = FileFingerprint.read(controlMetrics);
+            ControlMetrics cm = ParserCache.getParser(ControlMetrics.class, controlMetrics, 0);
+            log.debug("Processing Control Metrics");
+            synchronized (cm) {
+              cm.ensureOpen();
+              if (!cm.getFileMissing()) {
+                sum.setControlCounts(cm.digestData());
+                markParsed(controlMetrics, fingerprint, cm);
+                update = true;
+              }
+              cm.closeSourceStream();
+            }
+            return null;
+          }
+        });
+      }
+
+      runParseTasks(parseTasks);
+      // The parse tasks are done with an archived run; drop its entry index.
+      RunArchive.release(runDir);
+      storeImageDist();
+      if (!isActive()) {
+        // Only runs that still append to their InterOp files keep cached parsers.
+        ParserCache.evict(runDir);
       }
-        
+      if (update && sampler == null) {
+        sum.setLastFullUpdated(System.currentTimeMillis());
+      }
+
       if ((update == true ||
             force) && !this.remote) {
           try {
@@ -421,6 +624,157 @@ public class MetrixContainer {
       }
   }
   
+  /*
+   * Combine the contrast and focus decoded by the parse tasks with the
+   * ImageDist stored in the Summary.
+   */
+  private void storeImageDist() {
+    if (contrastOut == null && focusOut == null) {
+      return;
+    }
+
+    ImageDist stored = sum.getImageDist();
+    ImageDist imageDist = contrastOut != null ? contrastOut : (stored != null ? stored : new ImageDist());
+    if (focusOut != null) {
+      imageDist.setFocusStats(focusOut);
+    }
+    else if (stored != null) {
+      imageDist.setFocusStats(stored.getFocusStats());
+    }
+    sum.setImageDist(imageDist);
+  }
+
+  /*
+   * Sampler of a preview parse, or null when all tiles are parsed: without
+   * preview, on a forced parse, for finished runs and when the last parse of
+   * all tiles is older than Constants.METRIC_FULL_UPDATE_TIME. Running runs
+   * that were never parsed in full start with preview parses; their first
+   * full parse is due that long after the first estimate.
+   */
+  private TileSampler previewSampler() {
+    if (!preview || force || sum.getHasFinished() || sum.getState() == Constants.STATE_FINISHED) {
+      return null;
+    }
+    long lastFull = sum.getLastFullUpdated();
+    if (lastFull == 0) {
+      lastFull = sum.hasEstimates() ? sum.getEstimatedSince() : System.currentTimeMillis();
+    }
+    if (System.currentTimeMillis() - lastFull > Constants.METRIC_FULL_UPDATE_TIME) {
+      return null;
+    }
+    return new TileSampler(Constants.PREVIEW_SAMPLE_EVERY);
+  }
+
+  /*
+   * The cached parser of source. Once all tiles of source have been parsed
+   * its cached parser only decodes appended records and stays exact, so it is
+   * used for previews as well and the sampled parser is dropped. Otherwise a
+   * preview uses the sampled parser, cached under its own key so it resumes
+   * incrementally too.
+   */
+  private <T extends GenericIlluminaParser> T openParser(Class<T> c, String source) {
+    if (sampler == null || ParserCache.isCached(source)) {
+      T parser = ParserCache.getParser(c, source, 0);
+      ParserCache.remove(source + PREVIEW_KEY);
+      return parser;
+    }
+    return ParserCache.getParser(c, source + PREVIEW_KEY, source, 0, sampler);
+  }
+
+  /*
+   * True when the tiles per lane of the RunInfo flowcell layout are few enough
+   * (e.g. MiSeq) to keep all tile values for exact quantiles.
+   */
+  private boolean exactTileStats() {
+    int tilesPerLane = sum.getSurfaceCount() * sum.getSwathCount() * sum.getTileCount();
+    return tilesPerLane > 0 && tilesPerLane <= Constants.METRIC_EXACT_TILES;
+  }
+
+  // Factor that scales sums decoded by parser to all tiles; 1 for exact parsers.
+  private double sampleScale(GenericIlluminaParser parser) {
+    TileSampler tileSampler = parser.getTileSampler();
+    return tileSampler == null ? 1.0 : newEstimate(tileSampler, 0).getScale();
+  }
+
+  /*
+   * Estimate of metrics decoded by sampler, sized from the flowcell layout.
+   * since is the time of the estimate it refreshes, or 0 for a first estimate.
+   */
+  private Estimate newEstimate(TileSampler tileSampler, long since) {
+    int swaths = sum.getLaneCount() * sum.getSurfaceCount() * sum.getSwathCount();
+    int tilesPerSwath = sum.getTileCount();
+    long created = since > 0 ? since : System.currentTimeMillis();
+    return new Estimate(tileSampler.getEvery(), swaths * tileSampler.getSampledTiles(tilesPerSwath), swaths * tilesPerSwath, created);
+  }
+
+  /*
+   * True when an InterOp file has to be parsed: its metrics are not stored in
+   * the Summary yet, or a refresh is due and the file changed since its
+   * metrics were stored. Unchanged files keep the stored metrics.
+   */
+  private boolean needsParse(boolean stored, boolean refresh, String file) {
+    if (remote) {
+      return false;
+    }
+    if (!stored) {
+      return true;
+    }
+    // Estimates are replaced once all tiles are parsed again.
+    if (sampler == null && sum.getEstimate(new File(file).getName()) != null) {
+      return true;
+    }
+    if (!refresh) {
+      return false;
+    }
+
+    FileFingerprint parsed = sum.getParsedFingerprint(new File(file).getName());
+    if (parsed != null && parsed.equals(FileFingerprint.read(file))) {
+      log.debug("Skipping unchanged " + file + " (" + parsed + ")");
+      return false;
+    }
+    return true;
+  }
+
+  /*
+   * Store the fingerprint taken before the file was parsed, and whether the
+   * stored metrics are estimated from the tiles sampled by parser.
+   */
+  private void markParsed(String file, FileFingerprint fingerprint, GenericIlluminaParser parser) {
+    String name = new File(file).getName();
+    if (fingerprint != null) {
+      sum.setParsedFingerprint(name, fingerprint);
+    }
+    TileSampler tileSampler = parser.getTileSampler();
+    Estimate previous = sum.getEstimate(name);
+    sum.setEstimate(name, tileSampler == null ? null : newEstimate(tileSampler, previous == null ? 0 : previous.getCreated()));
+  }
+
+  /*
+   * Run the parse tasks on the shared parse executor and wait for all of them.
+   * A failing task is logged; the results of the other tasks are kept.
+   */
+  private void runParseTasks(List<Callable<Void>> parseTasks) {
+    if (parseTasks.isEmpty()) {
+      return;
+    }
+
+    try {
+      List<Future<Void>> results = PARSE_EXECUTOR.invokeAll(parseTasks);
+      for (Future<Void> result : results) {
+        try {
+          result.get();
+        }
+        catch (ExecutionException ee) {
+          LoggerWrapper.log.log(Level.SEVERE, "Error while parsing metrics of {0}: {1}", new Object[]{runDir, ee.getCause().toString()});
+        }
+      }
+    }
+    catch (InterruptedException ie) {
+      LoggerWrapper.log.log(Level.WARNING, "Interrupted while parsing metrics of {0}", runDir);
+      Thread.currentThread().interrupt();
+    }
+  }
+
   public Summary getSummary() {
     return sum;
   }
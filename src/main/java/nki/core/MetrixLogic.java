@@ -173,7 +173,7 @@ public class MetrixLogic {
             }
           }
 
-          int currentCycle = em.getLastCycle();
+          int currentCycle = em.peekLastCycle();
 
           if (summary.getRunType().equals("Paired End") && currentCycle == summary.getTurnCycle()) {
             summary.setState(Constants.STATE_TURN);
@@ -275,6 +275,8 @@ public class MetrixLogic {
       MetrixContainer mc = new MetrixContainer(summary, false, true);
       metrixLogger.log.info("Finished parsing " + summary.getRunId());
       mc=null;
+      // No more appends for this run; release the incremental parse state.
+      ParserCache.evict(path);
       tmpDS.closeAll();
       if (tmpDS != null) {
         tmpDS = null;
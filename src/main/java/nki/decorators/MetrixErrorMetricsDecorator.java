@@ -4,13 +4,10 @@ import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import nki.objects.ErrorCollection;
 import nki.objects.ErrorDist;
-import nki.util.ArrayUtils;
 
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
-import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 /**
  * Decorator to output objects contained within a MetrixContainer to TSV, CSV and JSON
@@ -38,25 +35,28 @@ public class MetrixErrorMetricsDecorator {
     if(this.eDist != null){
         DecimalFormat df = new DecimalFormat("0.00", new DecimalFormatSymbols(Locale.US));
         JSONArray rates = new JSONArray();
-        for (int lane : eDist.getRunErrorDistribution().keySet()) {
+        for (int lane : eDist.getLanes()) {
           JSONObject lerr = new JSONObject();
           lerr.put("lane", lane);
-          lerr.put("meanError", df.format(ArrayUtils.mean(eDist.getRunErrorDistribution().get(lane))));
-          lerr.put("errorSD", df.format(ArrayUtils.sd(eDist.getRunErrorDistribution().get(lane))));
+          lerr.put("meanError", df.format(eDist.getMeanErrorRate(lane)));
+          lerr.put("errorSD", df.format(eDist.getErrorRateSD(lane)));
           rates.add(lerr);
         }
         json.put("rates", rates);
 
         JSONArray lanes = new JSONArray();
-        for (int lane : eDist.getRunErrorDistributionByLane().keySet()) {
+        for (int lane : eDist.getLanes()) {
           JSONObject lerr = new JSONObject();
           lerr.put("lane", lane);
-          Map<Integer, List<Double>> errorMap = eDist.getRunErrorDistributionByLane().get(lane);
           JSONArray errors = new JSONArray();
-          for (int numErrors : errorMap.keySet()) {
+          for (int numErrors = 0; numErrors <= ErrorDist.MAX_ERRORS; numErrors++) {
+            double meanReads = eDist.getMeanReadsByLane(lane, numErrors);
+            if (Double.isNaN(meanReads)) {
+              continue;
+            }
             JSONObject err = new JSONObject();
             err.put("num", numErrors);
-            err.put("meanError", df.format(ArrayUtils.mean(errorMap.get(numErrors))));
+            err.put("meanError", df.format(meanReads));
             errors.add(err);
           }
           lerr.put("errors", errors);
@@ -68,15 +68,14 @@ public class MetrixErrorMetricsDecorator {
     }
     /*
     JSONArray cycles = new JSONArray();
-    for (int cycle : eDist.getRunErrorDistributionByCycle().keySet()) {
+    for (int cycle : eDist.getCycles()) {
       JSONObject lerr = new JSONObject();
       lerr.put("cycle", cycle);
-      Map<Integer, List<Double>> errorMap = eDist.getRunErrorDistributionByCycle().get(cycle);
       JSONArray errors = new JSONArray();
-      for (int numErrors : errorMap.keySet()) {
+      for (int numErrors = 0; numErrors <= ErrorDist.MAX_ERRORS; numErrors++) {
         JSONObject err = new JSONObject();
         err.put("num", numErrors);
-        err.put("meanError", Math.floor(ArrayUtils.mean(errorMap.get(numErrors))));
+        err.put("meanError", Math.floor(eDist.getMeanReadsByCycle(cycle, numErrors)));
         errors.add(err);
       }
       lerr.put("errors", errors);
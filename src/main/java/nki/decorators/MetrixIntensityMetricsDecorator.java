@@ -1,17 +1,12 @@
 package nki.decorators;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.TreeMap;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import nki.constants.Constants;
+import nki.constants.Channel;
 import nki.objects.IntensityDist;
 import nki.objects.IntensityScores;
-import nki.objects.MutableInt;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -69,31 +64,19 @@ public class MetrixIntensityMetricsDecorator {
   private JSONArray generateJSON(IntensityDist id){
     JSONArray averages = new JSONArray();
 
-    for (int lane : id.getIntensities().keySet()) {
+    for (int lane : id.getLanes()) {
       JSONObject l = new JSONObject();
-      Map<Integer, Map<String, MutableInt>> cycleContent = new TreeMap<>(id.getIntensities().get(lane));
 
       JSONArray cyclesA = new JSONArray();
       JSONArray cyclesC = new JSONArray();
       JSONArray cyclesT = new JSONArray();
       JSONArray cyclesG = new JSONArray();
 
-      for (int cycle : cycleContent.keySet()) {
-        Map<String, MutableInt> cycleIntensities = cycleContent.get(cycle);
-        for (String intensity : cycleIntensities.keySet()) {
-          if (intensity.equals(Constants.METRIC_VAR_ACI_A) || intensity.equals(Constants.METRIC_VAR_ACICC_A)) {
-            cyclesA.add(cycleIntensities.get(intensity).get());
-          }
-          if (intensity.equals(Constants.METRIC_VAR_ACI_C) || intensity.equals(Constants.METRIC_VAR_ACICC_C)) {
-            cyclesC.add(cycleIntensities.get(intensity).get());
-          }
-          if (intensity.equals(Constants.METRIC_VAR_ACI_T) || intensity.equals(Constants.METRIC_VAR_ACICC_T)) {
-            cyclesT.add(cycleIntensities.get(intensity).get());
-          }
-          if (intensity.equals(Constants.METRIC_VAR_ACI_G) || intensity.equals(Constants.METRIC_VAR_ACICC_G)) {
-            cyclesG.add(cycleIntensities.get(intensity).get());
-          }
-        }
+      for (int cycle : id.getCycles(lane)) {
+        cyclesA.add(id.getIntensity(lane, cycle, Channel.A));
+        cyclesC.add(id.getIntensity(lane, cycle, Channel.C));
+        cyclesT.add(id.getIntensity(lane, cycle, Channel.T));
+        cyclesG.add(id.getIntensity(lane, cycle, Channel.G));
       }
 
       l.put("lane", lane);
@@ -136,48 +119,20 @@ public class MetrixIntensityMetricsDecorator {
     return root;
   }
     
-  @SuppressWarnings("unchecked")
   public Element generateXML(Element sumXml, Document xmlDoc, IntensityDist id) {
-    Iterator lit = id.getIntensities().entrySet().iterator();
-    /*
-    * Key   = Lane	- Integer
-    * Value = CycleMap 	- HashMap<Integer, HashMap<String, Object>>
-    */
-    while (lit.hasNext()) {
+    for (int lane : id.getLanes()) {
       Element laneEle = xmlDoc.createElement("Lane");
-      Map.Entry lanePairs = (Map.Entry) lit.next();
-      int lane = (Integer) lanePairs.getKey();
       laneEle.setAttribute("lane", Integer.toString(lane));
 
-      HashMap<Integer, HashMap<String, MutableInt>> cycleContent;
-      cycleContent = (HashMap<Integer, HashMap<String, MutableInt>>) lanePairs.getValue();
-      // Cycle Iterator
-      Iterator cit = (Iterator) cycleContent.entrySet().iterator();
-
-      while (cit.hasNext()) {
+      for (int cycle : id.getCycles(lane)) {
         Element cycleEle = xmlDoc.createElement("Cycle");
-        Map.Entry cycleEntries = (Map.Entry) cit.next();
-        int cycle = (Integer) cycleEntries.getKey();
         cycleEle.setAttribute("num", Integer.toString(cycle));
 
-        // Nested Intensities HashMap
-        HashMap<String, MutableInt> cycleInt = (HashMap<String, MutableInt>) cycleEntries.getValue();
-
-        Iterator iit = (Iterator) cycleInt.entrySet().iterator();
-
         Element intEle = xmlDoc.createElement("Intensities");
-        while (iit.hasNext()) {
-          Map.Entry intensityPairs = (Map.Entry) iit.next();
-          String constName = (String) intensityPairs.getKey();
-          MutableInt intValue = (MutableInt) intensityPairs.getValue();
-
-          if (intValue instanceof MutableInt) {
-            MutableInt in = (MutableInt) intValue;
-            intEle.setAttribute(constName, Integer.toString(in.get()));
-          }
-
-          cycleEle.appendChild(intEle);
+        for (int ch = 0; ch < id.getNumChannels(); ch++) {
+          intEle.setAttribute(id.getChannelName(ch), Integer.toString(id.getIntensity(lane, cycle, ch)));
         }
+        cycleEle.appendChild(intEle);
         laneEle.appendChild(cycleEle);
       }
       sumXml.appendChild(laneEle);
@@ -198,18 +153,14 @@ public class MetrixIntensityMetricsDecorator {
       return allTab;
   }
   
-  @SuppressWarnings("unchecked")
   public String generateTab(IntensityDist id) {
     String out = "";
-    for (Integer lane : id.getIntensities().keySet()) {
-      Map<Integer, Map<String, MutableInt>> cycleContent = id.getIntensities().get(lane);
-      for (Integer cycle : cycleContent.keySet()) {
-        Map<String, MutableInt> cycleInt = cycleContent.get(cycle);
+    for (int lane : id.getLanes()) {
+      for (int cycle : id.getCycles(lane)) {
         out += lane + "\t" + cycle;
 
-        for (String constName : cycleInt.keySet()) {
-          MutableInt intValue = cycleInt.get(constName);
-          out += "\t" + constName + ":" + intValue;
+        for (int ch = 0; ch < id.getNumChannels(); ch++) {
+          out += "\t" + id.getChannelName(ch) + ":" + id.getIntensity(lane, cycle, ch);
         }
 
         out += "\n";
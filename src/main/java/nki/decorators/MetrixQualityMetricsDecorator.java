@@ -9,7 +9,6 @@ import nki.core.MetrixLogic;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import nki.objects.Metric;
-import nki.objects.MutableLong;
 import nki.objects.QScoreDist;
 import nki.objects.QualityScores;
 import nki.objects.Summary;
@@ -72,9 +71,9 @@ public class MetrixQualityMetricsDecorator {
     }
 
     JSONArray combA = new JSONArray();
-    Map<Integer, MutableLong> combDist = qScoreDist.getQualityScoreDist();
-    for (Integer i : combDist.keySet()) {
-      combA.add(i-1,  Double.valueOf(df.format(combDist.get(i).get())));
+    // Raw counts of QScore 1 .. max; QScores without clusters (e.g. between bins) are 0.
+    for (int q = 1; q <= qScoreDist.getMaxQScore(); q++) {
+      combA.add(Double.valueOf(df.format(qScoreDist.getClusters(q))));
     }
     combQs.put("raw", combA);
 
@@ -87,9 +86,8 @@ public class MetrixQualityMetricsDecorator {
       QScoreDist dist = qScoreDistByLane.get(lane);
       lqLane.put("lane", lane);
       JSONArray a = new JSONArray();
-      Map<Integer, MutableLong> sDist = dist.getQualityScoreDist();
-      for (Integer i : sDist.keySet()) {
-        a.add(i-1,  Double.valueOf(df.format(sDist.get(i).get())));
+      for (int q = 1; q <= dist.getMaxQScore(); q++) {
+        a.add(Double.valueOf(df.format(dist.getClusters(q))));
       }
       lqLane.put("raw", a);
       lqLane.put(">Q20", dist.aboveQ(20));
@@ -107,7 +105,7 @@ public class MetrixQualityMetricsDecorator {
 
       Metric locMetric = qScoreDistByCycle.get(cycle);
       try{
-        if (locMetric != null && !locMetric.getTileScores().isEmpty()) {
+        if (locMetric != null && !locMetric.getTileStats().isEmpty()) {
           qCycle.put("qMedian", Double.valueOf(df.format(locMetric.calcMedian())));
           qCycle.put("qMax", Double.valueOf(df.format(locMetric.calcMax())));
           qCycle.put("qMin", Double.valueOf(df.format(locMetric.calcMin())));
@@ -65,7 +65,8 @@ public class MetrixSummaryCollectionDecorator {
             if(sum.getState() == Constants.STATE_FINISHED || sum.getState() == Constants.STATE_HANG){
                 summary = new MetrixSummaryDecorator(sum).toJSON();
             }else{
-                MetrixContainer mc = new MetrixContainer(sum, isRemote);
+                // Live overview of a running run; sampled tiles are sufficient.
+                MetrixContainer mc = new MetrixContainer(sum, isRemote, false, true);
                 summary = new MetrixSummaryDecorator(mc.getSummary()).toJSON();
             }
             metrixJson.put("summary", summary);
@@ -37,6 +37,9 @@ public class MetrixSummaryDecorator {
 
     json.put("flowcellId", summary.getFlowcellID());
     json.put("numLanes", summary.getLaneCount());
+    // Metrics of preview parses are estimated from a subset of the tiles.
+    json.put("estimated", summary.hasEstimates());
+    json.put("confidence", summary.getEstimateConfidence());
 
     return json;
   }
@@ -26,6 +26,7 @@ public class MetrixTileMetricsDecorator {
   private ClusterDensity clusterDensityPassingFilter;
   private PhasingCollection phasingMap;
   private PhasingCollection prephasingMap;
+  private PhasingCollection percentAlignedMap;
   
   public MetrixTileMetricsDecorator(TileMetrics tileMetrics, Reads reads) {
     this.tileMetrics = tileMetrics;
@@ -49,6 +50,7 @@ public class MetrixTileMetricsDecorator {
       this.clusterDensityPassingFilter = sum.getClusterDensityPF();
       this.phasingMap = sum.getPhasingMap();
       this.prephasingMap = sum.getPrephasingMap();
+      this.percentAlignedMap = sum.getPercentAlignedMap();
       this.reads = sum.getReads();
   }
   
@@ -86,6 +88,13 @@ public class MetrixTileMetricsDecorator {
         cdLane.put("densityPassingFilterSD", Double.valueOf(df.format(extMetric.calcSD() / 1000)));
         cdLane.put("densityPercentPassed", Double.valueOf(dfTwo.format(((extMetric.calcMean() / 1000) / (locMetric.calcMean() / 1000)) * 100)));
         cdLane.put("units", "K/mm2");
+        Metric numClusters = clusterDensity.getClusterCount(lane);
+        Metric numClustersPF = clusterDensityPassingFilter.getClusterCount(lane);
+        if (numClusters != null && numClustersPF != null) {
+          cdLane.put("clusters", numClusters.calcSum().longValue());
+          cdLane.put("clustersPassingFilter", numClustersPF.calcSum().longValue());
+        }
+        cdLane.put("controlLane", clusterDensity.isControlLane(lane));
         clusterDensities.add(cdLane);
       }
     }
@@ -98,6 +107,7 @@ public class MetrixTileMetricsDecorator {
     if(phasingMap == null || prephasingMap == null){
         phasingMap = tileMetrics.getPhasingMap();
         prephasingMap = tileMetrics.getPrephasingMap();
+        percentAlignedMap = tileMetrics.getPercentAlignedMap();
     }
         
     JSONArray phasingMetrics = new JSONArray();
@@ -109,6 +119,10 @@ public class MetrixTileMetricsDecorator {
         JSONObject pRead = new JSONObject();
         pRead.put("phasing", phasingDf.format(phasingMap.getPhasing(lane, readNum).getPhasing()));
         pRead.put("prephasing", phasingDf.format(prephasingMap.getPhasing(lane, readNum).getPhasing()));
+        if (percentAlignedMap != null && percentAlignedMap.toObj().containsKey(lane)
+            && percentAlignedMap.toObj().get(lane).containsKey(readNum)) {
+          pRead.put("percentAligned", dfTwo.format(percentAlignedMap.getPhasing(lane, readNum).getLaneAvg()));
+        }
         if (reads.isIndexedRead(readNum)) {
           pLane.put("Index", pRead);
         }
@@ -8,9 +8,13 @@
 package nki.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 
 public class LittleEndianInputStream extends FilterInputStream {
+  // Holds the last record read by readRecord().
+  private ByteBuffer record = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
 
   public LittleEndianInputStream(InputStream in) {
     super(in);
@@ -80,7 +84,6 @@ public class LittleEndianInputStream extends FilterInputStream {
            + ((byte1 << 24) >>> 24);
   }
 
-  //TODO testing for IndexMetrics num clusters
   public long readUint32() throws IOException {
     long byte1 = in.read();
     long byte2 = in.read();
@@ -90,10 +93,10 @@ public class LittleEndianInputStream extends FilterInputStream {
       throw new EOFException();
     }
 
-    return (byte1&0XFF << 24) |
-           (byte2&0XFF << 16) |
-           (byte3&0XFF << 8)  |
-           (byte4&0xFF);
+    return (byte4 << 24) |
+           (byte3 << 16) |
+           (byte2 << 8)  |
+           byte1;
   }
 
   public long readLong() throws IOException {
@@ -118,13 +121,20 @@ public class LittleEndianInputStream extends FilterInputStream {
            + ((byte1 << 56) >>> 56);
   }
 
-  public final String readUTF8String(int numBytes) throws IOException {
-    byte[] bytes = new byte[numBytes];
-
-    for (int i = 0; i < numBytes; i++) {
-      bytes[i] = (byte) in.read();
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int n = in.read(b, off, len);
+      if (n == -1) {
+        throw new EOFException();
+      }
+      off += n;
+      len -= n;
     }
+  }
 
+  public String readUTF8String(int numBytes) throws IOException {
+    byte[] bytes = new byte[numBytes];
+    readFully(bytes, 0, numBytes);
     return new String(bytes, "UTF-8");
   }
 
@@ -136,8 +146,35 @@ public class LittleEndianInputStream extends FilterInputStream {
     return Float.intBitsToFloat(this.readInt());
   }
 
-  public final int skipBytes(int n) throws IOException {
-    for (int i = 0; i < n; i += (int) skip(n - i)) ;
+  /*
+   * Read the next length bytes as one record. Returns the index of its first
+   * byte in recordBuffer(), from which the fields are decoded by offset.
+   */
+  public int readRecord(int length) throws IOException {
+    if (record.capacity() < length) {
+      record = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    readFully(record.array(), 0, length);
+    return 0;
+  }
+
+  public ByteBuffer recordBuffer() {
+    return record;
+  }
+
+  public int skipBytes(int n) throws IOException {
+    int i = 0;
+    while (i < n) {
+      long skipped = skip(n - i);
+      if (skipped <= 0) {
+        // Streams may skip nothing at their end; read to tell EOF apart.
+        if (read() == -1) {
+          throw new EOFException();
+        }
+        skipped = 1;
+      }
+      i += (int) skipped;
+    }
     return n;
   }
 }
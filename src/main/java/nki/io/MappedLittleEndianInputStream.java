@@ -0,0 +1,253 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * LittleEndianInputStream backed by a memory mapped window of the source file.
+ * Values are decoded straight from a little endian MappedByteBuffer instead of
+ * one read() call per byte.
+ *
+ * The window is remapped whenever it is exhausted. Remapping re-reads the size
+ * of the channel, so InterOp files that are still being appended to by the
+ * sequencer are followed up to their current end.
+ */
+public class MappedLittleEndianInputStream extends LittleEndianInputStream {
+  // Maximum number of bytes mapped at once.
+  private static final long WINDOW_SIZE = 64L * 1024L * 1024L;
+
+  private final FileChannel channel;
+  private final long end;
+  private ByteBuffer buffer;
+  private long windowStart;
+
+  public MappedLittleEndianInputStream(FileInputStream in) throws IOException {
+    super(in);
+    this.channel = in.getChannel();
+    this.end = -1;
+    this.windowStart = 0;
+    // Map eagerly so an unsupported file system is detected by the caller.
+    remap(0, 0);
+  }
+
+  /*
+   * Read a fixed region [start, end) of a shared channel. Used when a single
+   * file is decoded by several readers at once. Closing this stream does not
+   * close the channel.
+   */
+  public MappedLittleEndianInputStream(FileChannel channel, long start, long end) throws IOException {
+    super(null);
+    this.channel = channel;
+    this.end = end;
+    this.windowStart = start;
+    remap(start, 0);
+  }
+
+  public long position() {
+    if (buffer == null) {
+      return windowStart;
+    }
+    return windowStart + buffer.position();
+  }
+
+  public void position(long newPosition) {
+    if (buffer != null && newPosition >= windowStart && newPosition <= windowStart + buffer.limit()) {
+      buffer.position((int) (newPosition - windowStart));
+    }
+    else {
+      // Map lazily on the next read.
+      buffer = null;
+      windowStart = newPosition;
+    }
+  }
+
+  public FileChannel getChannel() {
+    return channel;
+  }
+
+  public long size() throws IOException {
+    long size = channel.size();
+    if (end != -1 && end < size) {
+      return end;
+    }
+    return size;
+  }
+
+  private void remap(long pos, int required) throws IOException {
+    long length = Math.min(WINDOW_SIZE, size() - pos);
+    if (length < required) {
+      throw new EOFException();
+    }
+    if (length <= 0) {
+      buffer = ByteBuffer.allocate(0);
+    }
+    else {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    windowStart = pos;
+  }
+
+  private void ensure(int n) throws IOException {
+    if (buffer == null || buffer.remaining() < n) {
+      remap(position(), n);
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (buffer == null || !buffer.hasRemaining()) {
+      if (size() <= position()) {
+        return -1;
+      }
+      remap(position(), 1);
+    }
+    return buffer.get() & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    int avail = available();
+    if (avail <= 0) {
+      return -1;
+    }
+    int n = Math.min(len, avail);
+    readFully(b, off, n);
+    return n;
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      ensure(1);
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      off += n;
+      len -= n;
+    }
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = Math.max(0, Math.min(n, size() - position()));
+    position(position() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public int skipBytes(int n) throws IOException {
+    position(position() + n);
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (int) Math.min(Integer.MAX_VALUE, Math.max(0, size() - position()));
+  }
+
+  @Override
+  public ArrayList<Byte> readByteArray(int n) throws IOException {
+    ArrayList<Byte> arr = new ArrayList<>(n);
+    ensure(n);
+    for (int i = 0; i < n; i++) {
+      arr.add(buffer.get());
+    }
+    return arr;
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    ensure(1);
+    return buffer.get() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    ensure(1);
+    return buffer.get();
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    ensure(1);
+    return buffer.get() & 0xFF;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    ensure(2);
+    return buffer.getShort();
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    ensure(2);
+    return buffer.getShort() & 0xFFFF;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    ensure(2);
+    return buffer.getChar();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    ensure(4);
+    return buffer.getInt();
+  }
+
+  @Override
+  public long readUint32() throws IOException {
+    ensure(4);
+    return buffer.getInt() & 0xFFFFFFFFL;
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    ensure(8);
+    return buffer.getLong();
+  }
+
+  // Records are decoded in place from the mapped window.
+  @Override
+  public int readRecord(int length) throws IOException {
+    ensure(length);
+    int base = buffer.position();
+    buffer.position(base + length);
+    return base;
+  }
+
+  @Override
+  public ByteBuffer recordBuffer() {
+    return buffer;
+  }
+
+  @Override
+  public String readUTF8String(int numBytes) throws IOException {
+    byte[] bytes = new byte[numBytes];
+    readFully(bytes, 0, numBytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  @Override
+  public void close() throws IOException {
+    buffer = null;
+    if (in != null) {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,430 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.io;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read access to the files of run directories that have been archived as
+ * .zip, .tar, .tar.gz or .tgz files. The archive is addressed as if it was
+ * the run directory, e.g. /data/140101_SN1_0001_AC1.tar.gz/InterOp/TileMetricsOut.bin.
+ * Within the archive the run directory is either the root or its single
+ * top-level directory.
+ *
+ * Zip entries are opened through the JDK zip FileSystem. Tar archives are
+ * read once per archive version into an index of the names and data offsets
+ * of their entries: entries of uncompressed tar files are opened by seeking
+ * to their data, entries of compressed tar files are streamed by
+ * decompressing up to their offset. No entry data is kept in memory and
+ * nothing is extracted to disk. The index is kept until release() is called
+ * for the archive, e.g. when a MetrixContainer has parsed it.
+ */
+public class RunArchive {
+  private static final String[] EXTENSIONS = {".zip", ".tar", ".tar.gz", ".tgz"};
+  private static final int TAR_BLOCK = 512;
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  // Tar indexes by archive path, until the archive is released.
+  private static final Map<String, TarIndex> tarIndexes = new HashMap<>();
+
+  private RunArchive() {
+  }
+
+  // True when path is an archive file that can be read as a run directory.
+  public static boolean isArchive(String path) {
+    return extension(path) != null && new File(path).isFile();
+  }
+
+  // True when path points into a run archive.
+  public static boolean isArchivePath(String path) {
+    return split(path) != null;
+  }
+
+  // The archive file of path, or null when path does not point into an archive.
+  public static String getArchive(String path) {
+    String[] parts = split(path);
+    return parts == null ? null : parts[0];
+  }
+
+  /*
+   * Open the file path points to within its archive. Throws a
+   * FileNotFoundException when the archive or the entry does not exist.
+   */
+  public static EntryInputStream open(String path) throws IOException {
+    String[] parts = split(path);
+    if (parts == null) {
+      throw new FileNotFoundException(path);
+    }
+
+    String archive = parts[0];
+    String entry = parts[1];
+    if (".zip".equals(extension(archive))) {
+      return openZipEntry(archive, entry);
+    }
+    return openTarEntry(archive, entry, !".tar".equals(extension(archive)));
+  }
+
+  /*
+   * Drop the index of the archive path is or points into. The archive is
+   * indexed again when it is opened after this.
+   */
+  public static synchronized void release(String path) {
+    while (path.endsWith("/")) {
+      path = path.substring(0, path.length() - 1);
+    }
+    tarIndexes.remove(isArchive(path) ? path : getArchive(path));
+  }
+
+  /*
+   * Split path into { archive, path within the run directory } at the first
+   * path component that is an archive file.
+   */
+  private static String[] split(String path) {
+    int pos = path.indexOf('/', 1);
+    while (pos != -1) {
+      String prefix = path.substring(0, pos);
+      if (isArchive(prefix)) {
+        String entry = path.substring(pos + 1);
+        while (entry.startsWith("/")) {
+          entry = entry.substring(1);
+        }
+        return new String[]{prefix, entry};
+      }
+      pos = path.indexOf('/', pos + 1);
+    }
+    return null;
+  }
+
+  private static String extension(String path) {
+    String lower = path.toLowerCase();
+    for (String ext : EXTENSIONS) {
+      if (lower.endsWith(ext)) {
+        return ext;
+      }
+    }
+    return null;
+  }
+
+  // Tar entry name without leading "./" and "/".
+  private static String normalize(String name) {
+    while (name.startsWith("./") || name.startsWith("/")) {
+      name = name.substring(name.startsWith("./") ? 2 : 1);
+    }
+    return name;
+  }
+
+  // Name within the single top-level directory, or null.
+  private static String nested(String name) {
+    int slash = name.indexOf('/');
+    return slash > 0 ? name.substring(slash + 1) : null;
+  }
+
+  private static EntryInputStream openZipEntry(String archive, String entry) throws IOException {
+    final FileSystem fs = FileSystems.newFileSystem(Paths.get(archive), (ClassLoader) null);
+    try {
+      Path path = fs.getPath("/", entry);
+      if (!Files.isRegularFile(path)) {
+        path = null;
+        try (DirectoryStream<Path> roots = Files.newDirectoryStream(fs.getPath("/"))) {
+          for (Path dir : roots) {
+            Path candidate = dir.resolve(entry);
+            if (Files.isDirectory(dir) && Files.isRegularFile(candidate)) {
+              path = candidate;
+              break;
+            }
+          }
+        }
+      }
+      if (path == null) {
+        throw new FileNotFoundException(archive + "/" + entry);
+      }
+
+      // Closing the entry closes the zip FileSystem.
+      InputStream in = new FilterInputStream(Files.newInputStream(path)) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          }
+          finally {
+            fs.close();
+          }
+        }
+      };
+      return new EntryInputStream(in, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+    }
+    catch (IOException ioe) {
+      fs.close();
+      throw ioe;
+    }
+  }
+
+  /*
+   * Open entry through the index of the tar archive. Entries are looked up in
+   * the archive root first, then in a single top-level directory.
+   */
+  private static EntryInputStream openTarEntry(String archive, String entry, boolean gzip) throws IOException {
+    TarIndex index = tarIndex(archive, gzip);
+    TarEntry tarEntry = index.entries.get(entry);
+    if (tarEntry == null) {
+      tarEntry = index.nestedEntries.get(entry);
+    }
+    if (tarEntry == null) {
+      throw new FileNotFoundException(archive + "/" + entry);
+    }
+
+    InputStream in = new BufferedInputStream(new FileInputStream(archive), 64 * 1024);
+    try {
+      if (gzip) {
+        in = new GZIPInputStream(in, 64 * 1024);
+      }
+      skipFully(in, tarEntry.offset);
+      return new EntryInputStream(in, tarEntry.size, tarEntry.lastModified);
+    }
+    catch (IOException ioe) {
+      in.close();
+      throw ioe;
+    }
+  }
+
+  /*
+   * Index of the archive, read again when the archive was replaced. Parsers
+   * of the same archive wait for the index instead of reading it as well.
+   */
+  private static synchronized TarIndex tarIndex(String archive, boolean gzip) throws IOException {
+    File file = new File(archive);
+    TarIndex index = tarIndexes.get(archive);
+    if (index == null || index.length != file.length() || index.lastModified != file.lastModified()) {
+      tarIndexes.remove(archive);
+      index = readTarIndex(file, gzip);
+      tarIndexes.put(archive, index);
+    }
+    return index;
+  }
+
+  /*
+   * Read all tar headers in one pass. GNU long names ('L' entries) are
+   * supported; other extended headers are skipped.
+   */
+  private static TarIndex readTarIndex(File archive, boolean gzip) throws IOException {
+    TarIndex index = new TarIndex(archive.length(), archive.lastModified());
+    try (InputStream file = new BufferedInputStream(new FileInputStream(archive), 64 * 1024)) {
+      InputStream in = gzip ? new GZIPInputStream(file, 64 * 1024) : file;
+
+      byte[] header = new byte[TAR_BLOCK];
+      String longName = null;
+      long offset = 0;
+      while (readBlock(in, header)) {
+        offset += TAR_BLOCK;
+        if (header[0] == 0) {
+          // End of archive marker.
+          break;
+        }
+
+        long size = parseOctal(header, 124, 12);
+        long padded = (size + TAR_BLOCK - 1) / TAR_BLOCK * TAR_BLOCK;
+        char type = (char) header[156];
+
+        if (type == 'L') {
+          byte[] name = new byte[(int) size];
+          readFully(in, name);
+          skipFully(in, padded - size);
+          offset += padded;
+          longName = cString(name, 0, name.length);
+          continue;
+        }
+
+        String name = normalize(longName != null ? longName : tarName(header));
+        longName = null;
+        if (type == '0' || type == 0) {
+          TarEntry entry = new TarEntry(offset, size, parseOctal(header, 136, 12) * 1000);
+          String nestedName = nested(name);
+          skipFully(in, padded);
+          if (!index.entries.containsKey(name)) {
+            index.entries.put(name, entry);
+          }
+          if (nestedName != null && !index.nestedEntries.containsKey(nestedName)) {
+            index.nestedEntries.put(nestedName, entry);
+          }
+        }
+        else {
+          skipFully(in, padded);
+        }
+        offset += padded;
+      }
+    }
+    return index;
+  }
+
+  // Name of a ustar header, including the ustar prefix.
+  private static String tarName(byte[] header) {
+    String name = cString(header, 0, 100);
+    String prefix = cString(header, 345, 155);
+    // POSIX "ustar\0"; the GNU "ustar " format uses the prefix field for other data.
+    boolean ustar = header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a' && header[261] == 'r' && header[262] == 0;
+    return ustar && prefix.length() > 0 ? prefix + "/" + name : name;
+  }
+
+  private static String cString(byte[] bytes, int off, int len) {
+    int end = off;
+    while (end < off + len && bytes[end] != 0) {
+      end++;
+    }
+    return new String(bytes, off, end - off, ASCII);
+  }
+
+  private static long parseOctal(byte[] bytes, int off, int len) {
+    long value = 0;
+    for (int i = off; i < off + len; i++) {
+      byte b = bytes[i];
+      if (b >= '0' && b <= '7') {
+        value = value * 8 + (b - '0');
+      }
+      else if (value > 0 || (b != ' ' && b != 0)) {
+        break;
+      }
+    }
+    return value;
+  }
+
+  private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+    int read = 0;
+    while (read < block.length) {
+      int n = in.read(block, read, block.length - read);
+      if (n == -1) {
+        return false;
+      }
+      read += n;
+    }
+    return true;
+  }
+
+  private static void readFully(InputStream in, byte[] bytes) throws IOException {
+    if (!readBlock(in, bytes)) {
+      throw new EOFException();
+    }
+  }
+
+  private static void skipFully(InputStream in, long n) throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        if (in.read() == -1) {
+          throw new EOFException();
+        }
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+
+  // Entries of one version of a tar archive, by name within the archive.
+  private static class TarIndex {
+    private final long length;
+    private final long lastModified;
+    private final Map<String, TarEntry> entries = new HashMap<>();
+    // Entries by name within their top-level directory.
+    private final Map<String, TarEntry> nestedEntries = new HashMap<>();
+
+    private TarIndex(long length, long lastModified) {
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+  }
+
+  // Data offset in the (uncompressed) tar stream.
+  private static class TarEntry {
+    private final long offset;
+    private final long size;
+    private final long lastModified;
+
+    private TarEntry(long offset, long size, long lastModified) {
+      this.offset = offset;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+  }
+
+  /**
+   * Data of one archive entry. Reads stop at the end of the entry, and
+   * available() reports the bytes left in the entry.
+   */
+  public static class EntryInputStream extends FilterInputStream {
+    private final long size;
+    private final long lastModified;
+    private long remaining;
+
+    EntryInputStream(InputStream in, long size, long lastModified) {
+      super(in);
+      this.size = size;
+      this.lastModified = lastModified;
+      this.remaining = size;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int b = in.read();
+      if (b != -1) {
+        remaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int n = in.read(b, off, (int) Math.min(len, remaining));
+      if (n > 0) {
+        remaining -= n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = in.skip(Math.min(n, remaining));
+      if (skipped > 0) {
+        remaining -= skipped;
+      }
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
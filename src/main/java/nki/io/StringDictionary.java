@@ -0,0 +1,103 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.io;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Interns UTF-8 encoded strings keyed on their raw bytes.
+ * Decoding the same bytes again returns the String instance created the first
+ * time, without decoding or allocating. Used for the index, sample and project
+ * names that are repeated for every lane and tile in IndexMetricsOut.bin.
+ */
+public class StringDictionary {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private byte[][] keys = new byte[64][];
+  private String[] values = new String[64];
+  private int size = 0;
+  // Scratch buffer the bytes of the next string are read into.
+  private byte[] buffer = new byte[256];
+
+  public int size() {
+    return size;
+  }
+
+  /*
+   * Read numBytes of UTF-8 from in and return the interned String.
+   */
+  public String read(LittleEndianInputStream in, int numBytes) throws IOException {
+    if (numBytes > buffer.length) {
+      buffer = new byte[Math.max(numBytes, buffer.length * 2)];
+    }
+    in.readFully(buffer, 0, numBytes);
+    return intern(buffer, 0, numBytes);
+  }
+
+  public String intern(byte[] bytes, int off, int len) {
+    int mask = keys.length - 1;
+    int pos = hash(bytes, off, len) & mask;
+
+    while (keys[pos] != null) {
+      if (equalBytes(keys[pos], bytes, off, len)) {
+        return values[pos];
+      }
+      pos = (pos + 1) & mask;
+    }
+
+    byte[] key = Arrays.copyOfRange(bytes, off, off + len);
+    String value = new String(key, UTF8);
+    keys[pos] = key;
+    values[pos] = value;
+    if (++size * 2 > keys.length) {
+      rehash();
+    }
+    return value;
+  }
+
+  private void rehash() {
+    byte[][] oldKeys = keys;
+    String[] oldValues = values;
+    keys = new byte[oldKeys.length * 2][];
+    values = new String[oldValues.length * 2];
+    int mask = keys.length - 1;
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        int pos = hash(oldKeys[i], 0, oldKeys[i].length) & mask;
+        while (keys[pos] != null) {
+          pos = (pos + 1) & mask;
+        }
+        keys[pos] = oldKeys[i];
+        values[pos] = oldValues[i];
+      }
+    }
+  }
+
+  private static int hash(byte[] bytes, int off, int len) {
+    int h = 1;
+    for (int i = off; i < off + len; i++) {
+      h = 31 * h + bytes[i];
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean equalBytes(byte[] key, byte[] bytes, int off, int len) {
+    if (key.length != len) {
+      return false;
+    }
+    for (int i = 0; i < len; i++) {
+      if (key[i] != bytes[off + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
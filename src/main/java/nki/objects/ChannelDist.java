@@ -0,0 +1,202 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.objects;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collection;
+
+import nki.constants.Constants;
+
+/**
+ * Per lane, cycle and channel values in dense arrays. Lanes and cycles start
+ * at 1; the channel values of (lane, cycle) are at index
+ * ((lane - 1) * numCycles + cycle - 1) * numChannels + channel of the value
+ * array of the subclass. Channels are identified by index and labelled with
+ * the names given at construction, e.g. Constants.METRIC_VAR_ACI_A .. T.
+ */
+public abstract class ChannelDist implements Serializable {
+
+  public static final long serialVersionUID = 42L;
+  // Channel labels of the distributions stored before ChannelDist, see restoreChannels.
+  private static final String[][] KNOWN_CHANNELS = {
+      Constants.METRIC_VAR_ACI_LABELS,
+      Constants.METRIC_VAR_ACICC_LABELS,
+      Constants.METRIC_EX_RAWINT_LABELS,
+      Constants.METRIC_VAR_FWHM_LABELS
+  };
+
+  private String[] channels;
+  private int numLanes;
+  private int numCycles;
+  // Cells (lane, cycle) that were set.
+  private boolean[] present;
+
+  protected ChannelDist(String[] channels, int numLanes, int numCycles) {
+    this.channels = channels;
+    this.numLanes = numLanes;
+    this.numCycles = numCycles;
+    this.present = new boolean[numLanes * numCycles];
+  }
+
+  public int getNumChannels() {
+    return channels.length;
+  }
+
+  public String getChannelName(int channel) {
+    return channels[channel];
+  }
+
+  // Index of the channel labelled name, or -1.
+  public int getChannel(String name) {
+    for (int ch = 0; ch < channels.length; ch++) {
+      if (channels[ch].equals(name)) {
+        return ch;
+      }
+    }
+    return -1;
+  }
+
+  public boolean isEmpty() {
+    for (boolean p : present) {
+      if (p) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean has(int lane, int cycle) {
+    return cell(lane, cycle) != -1;
+  }
+
+  // Sorted lanes with at least one cycle.
+  public int[] getLanes() {
+    int[] lanes = new int[numLanes];
+    int size = 0;
+    for (int l = 0; l < numLanes; l++) {
+      for (int c = 0; c < numCycles; c++) {
+        if (present[l * numCycles + c]) {
+          lanes[size++] = l + 1;
+          break;
+        }
+      }
+    }
+    return Arrays.copyOf(lanes, size);
+  }
+
+  // Sorted cycles of the lane.
+  public int[] getCycles(int lane) {
+    if (lane < 1 || lane > numLanes) {
+      return new int[0];
+    }
+    int[] cycles = new int[numCycles];
+    int size = 0;
+    int base = (lane - 1) * numCycles;
+    for (int c = 0; c < numCycles; c++) {
+      if (present[base + c]) {
+        cycles[size++] = c + 1;
+      }
+    }
+    return Arrays.copyOf(cycles, size);
+  }
+
+  // Index of the first channel value of (lane, cycle), or -1 when it was not set.
+  protected int slot(int lane, int cycle) {
+    int cell = cell(lane, cycle);
+    return cell == -1 ? -1 : cell * channels.length;
+  }
+
+  /*
+   * Index of the first channel value of (lane, cycle), which is marked as set.
+   * The arrays are resized when lane or cycle is beyond the current size.
+   */
+  protected int slotFor(int lane, int cycle) {
+    if (lane < 1 || cycle < 1) {
+      throw new IllegalArgumentException("Lane and cycle start at 1: lane " + lane + ", cycle " + cycle);
+    }
+    if (lane > numLanes || cycle > numCycles) {
+      int newLanes = Math.max(lane, numLanes);
+      // Cycles are usually added one at a time while a run progresses.
+      int newCycles = cycle > numCycles ? Math.max(cycle, numCycles * 2) : numCycles;
+      resize(newLanes, newCycles);
+      present = relayout(present, newLanes, newCycles);
+      numLanes = newLanes;
+      numCycles = newCycles;
+    }
+    int cell = (lane - 1) * numCycles + cycle - 1;
+    present[cell] = true;
+    return cell * channels.length;
+  }
+
+  /*
+   * Distributions stored before ChannelDist have no ChannelDist data; they
+   * start empty and the subclass restores them from its old map.
+   */
+  private void readObjectNoData() throws ObjectStreamException {
+    channels = new String[0];
+    numLanes = 0;
+    numCycles = 0;
+    present = new boolean[0];
+  }
+
+  /*
+   * Set the channels of a restored distribution from the labels of its old
+   * per cycle maps. Known label sets keep their [A, C, G, T] order.
+   */
+  protected void restoreChannels(Collection<String> names) {
+    for (String[] known : KNOWN_CHANNELS) {
+      if (Arrays.asList(known).containsAll(names)) {
+        channels = known;
+        return;
+      }
+    }
+    channels = names.toArray(new String[names.size()]);
+    Arrays.sort(channels);
+  }
+
+  /*
+   * Resize the value array of the subclass to newLanes x newCycles, using
+   * one of the relayout methods.
+   */
+  protected abstract void resize(int newLanes, int newCycles);
+
+  protected int[] relayout(int[] values, int newLanes, int newCycles) {
+    int[] target = new int[newLanes * newCycles * channels.length];
+    int rowLength = numCycles * channels.length;
+    for (int l = 0; l < numLanes; l++) {
+      System.arraycopy(values, l * rowLength, target, l * newCycles * channels.length, rowLength);
+    }
+    return target;
+  }
+
+  protected double[] relayout(double[] values, int newLanes, int newCycles) {
+    double[] target = new double[newLanes * newCycles * channels.length];
+    int rowLength = numCycles * channels.length;
+    for (int l = 0; l < numLanes; l++) {
+      System.arraycopy(values, l * rowLength, target, l * newCycles * channels.length, rowLength);
+    }
+    return target;
+  }
+
+  private boolean[] relayout(boolean[] cells, int newLanes, int newCycles) {
+    boolean[] target = new boolean[newLanes * newCycles];
+    for (int l = 0; l < numLanes; l++) {
+      System.arraycopy(cells, l * numCycles, target, l * newCycles, numCycles);
+    }
+    return target;
+  }
+
+  private int cell(int lane, int cycle) {
+    if (lane < 1 || lane > numLanes || cycle < 1 || cycle > numCycles) {
+      return -1;
+    }
+    int cell = (lane - 1) * numCycles + cycle - 1;
+    return present[cell] ? cell : -1;
+  }
+}
@@ -24,8 +24,18 @@ public class ClusterDensity implements Serializable {
   public long totalClusters = 0;
 
   public Map<Integer, Metric> clusterDensity = new HashMap<>();
+  // Lane -> Number of clusters per tile
+  public Map<Integer, Metric> clusterCounts = new HashMap<>();
+  // Lane -> Control lane flag
+  public Map<Integer, Boolean> controlLanes = new HashMap<>();
 
   public String type = "";
+  // Keep all tile values of new lanes, see Metric(boolean).
+  private boolean exact = false;
+
+  public void setExact(boolean exact) {
+    this.exact = exact;
+  }
 
   public void setMetric(int lane, Double metricScore) {
     Metric m;
@@ -34,7 +44,7 @@ public class ClusterDensity implements Serializable {
       m.incrementMetric(metricScore);
     }
     else {
-      m = new Metric();
+      m = new Metric(exact);
       m.setMetric(metricScore);
     }
     this.clusterDensity.put(lane, m);
@@ -44,6 +54,51 @@ public class ClusterDensity implements Serializable {
     return this.clusterDensity.get(lane);
   }
 
+  // Add the number of clusters of a tile; also counted in the total.
+  public void setClusterCount(int lane, double count) {
+    if (clusterCounts == null) {  // Deserialized from an older version.
+      clusterCounts = new HashMap<>();
+    }
+    Metric m = clusterCounts.get(lane);
+    if (m != null) {
+      m.incrementMetric(count);
+    }
+    else {
+      m = new Metric(exact);
+      m.setMetric(count);
+      clusterCounts.put(lane, m);
+    }
+    incrementTotalClusters((long) count);
+  }
+
+  public Metric getClusterCount(int lane) {
+    if (clusterCounts == null) {
+      return null;
+    }
+    return clusterCounts.get(lane);
+  }
+
+  public boolean hasClusterCounts() {
+    return clusterCounts != null && !clusterCounts.isEmpty();
+  }
+
+  public void setControlLane(int lane, boolean controlLane) {
+    if (controlLanes == null) {
+      controlLanes = new HashMap<>();
+    }
+    // A lane is a control lane when any of its tiles is flagged.
+    Boolean current = controlLanes.get(lane);
+    controlLanes.put(lane, controlLane || (current != null && current));
+  }
+
+  public boolean isControlLane(int lane) {
+    if (controlLanes == null) {
+      return false;
+    }
+    Boolean controlLane = controlLanes.get(lane);
+    return controlLane != null && controlLane;
+  }
+
   public void incrementTotalClusters(long metric) {
     this.totalClusters += metric;
   }
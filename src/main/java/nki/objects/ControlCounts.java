@@ -0,0 +1,119 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.objects;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Number of clusters identified as control per lane, read and control name,
+ * summed over the tiles. Counts are kept in a flat array; the control names
+ * are numbered in order of appearance.
+ */
+public class ControlCounts implements Serializable {
+
+  public static final long serialVersionUID = 42L;
+  private static final int INITIAL_CELLS = 64;
+
+  private final List<String> controlNames = new ArrayList<>();
+  private int numCells = 0;
+  private int[] lanes = new int[INITIAL_CELLS];
+  private int[] reads = new int[INITIAL_CELLS];
+  private long[] counts = new long[INITIAL_CELLS];
+  // (lane, control number, read) --> cell
+  private RecordIndex index = new RecordIndex(INITIAL_CELLS);
+
+  public boolean isEmpty() {
+    return numCells == 0;
+  }
+
+  /*
+   * Add the clusters of one tile record.
+   */
+  public void addCount(int lane, int readNum, String controlName, long numClusters) {
+    int control = controlNumber(controlName);
+    int cell = index.get(lane, control, readNum);
+    if (cell == -1) {
+      if (numCells == lanes.length) {
+        grow();
+      }
+      cell = numCells++;
+      lanes[cell] = lane;
+      reads[cell] = readNum;
+      index.put(lane, control, readNum, cell);
+    }
+    counts[cell] += numClusters;
+  }
+
+  public List<String> getControlNames() {
+    return new ArrayList<>(controlNames);
+  }
+
+  // Sorted lanes with at least one control record.
+  public int[] getLanes() {
+    return distinct(lanes);
+  }
+
+  // Sorted read numbers with at least one control record.
+  public int[] getReads() {
+    return distinct(reads);
+  }
+
+  public long getCount(int lane, int readNum, String controlName) {
+    int control = controlNames.indexOf(controlName);
+    if (control == -1) {
+      return 0;
+    }
+    int cell = index.get(lane, control, readNum);
+    return cell == -1 ? 0 : counts[cell];
+  }
+
+  // Clusters of all controls in the lane for one read.
+  public long getLaneCount(int lane, int readNum) {
+    long total = 0;
+    for (int cell = 0; cell < numCells; cell++) {
+      if (lanes[cell] == lane && reads[cell] == readNum) {
+        total += counts[cell];
+      }
+    }
+    return total;
+  }
+
+  private int controlNumber(String controlName) {
+    // Few distinct controls per run; names are interned by the parser.
+    for (int control = 0; control < controlNames.size(); control++) {
+      String name = controlNames.get(control);
+      if (name == controlName || name.equals(controlName)) {
+        return control;
+      }
+    }
+    controlNames.add(controlName);
+    return controlNames.size() - 1;
+  }
+
+  private int[] distinct(int[] keys) {
+    int[] sorted = Arrays.copyOf(keys, numCells);
+    Arrays.sort(sorted);
+    int size = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (size == 0 || sorted[size - 1] != sorted[i]) {
+        sorted[size++] = sorted[i];
+      }
+    }
+    return Arrays.copyOf(sorted, size);
+  }
+
+  private void grow() {
+    int capacity = lanes.length * 2;
+    lanes = Arrays.copyOf(lanes, capacity);
+    reads = Arrays.copyOf(reads, capacity);
+    counts = Arrays.copyOf(counts, capacity);
+  }
+}
@@ -8,6 +8,7 @@
 package nki.objects;
 
 import java.io.*;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -22,7 +23,8 @@ public class ErrorCollection implements Serializable {
 
   // Lane - Cycle - ErrorMap
   public Map<Integer, Map<Integer, ErrorMap>> eScores = new HashMap<>();
-  private ErrorDist eDist = new ErrorDist();
+  // Error rate and reads per number of errors, accumulated per lane and cycle while decoding.
+  private LaneCycleStats errorStats = new LaneCycleStats(ErrorDist.NUM_VALUES);
 
   public void setVersion(int version) {
     this.version = version;
@@ -66,7 +68,30 @@ public class ErrorCollection implements Serializable {
     return eScores.get(lanenr);
   }
 
+  /*
+   * Add the error rate and the number of reads with 0 .. ErrorDist.MAX_ERRORS
+   * errors of one tile record.
+   */
+  public void addRecord(int lane, int cycle, double[] values) {
+    errorStats.add(lane, cycle, values);
+  }
+
+  public void setErrorStats(LaneCycleStats errorStats) {
+    this.errorStats = errorStats;
+  }
+
+  public LaneCycleStats getErrorStats() {
+    return errorStats;
+  }
+
   public ErrorDist getErrorDistribution() {
+    if (errorStats != null && !errorStats.isEmpty()) {
+      return new ErrorDist(errorStats.copy());
+    }
+
+    // Rebuilt on every call; the error scores may have grown since the last call.
+    LaneCycleStats stats = new LaneCycleStats(ErrorDist.NUM_VALUES);
+    double[] values = new double[ErrorDist.NUM_VALUES];
     for (int lane : eScores.keySet()) {
       Map<Integer, ErrorMap> laneScores = eScores.get(lane);
 
@@ -75,22 +100,21 @@ public class ErrorCollection implements Serializable {
 
         for (int tile : emap.getErrorMappings().keySet()) {
           Map<Integer, Double> emetricMap = emap.getErrorMappings().get(tile);
+          Arrays.fill(values, 0);
 
           for (int numErrors : emetricMap.keySet()) {
-            double numReads = emetricMap.get(numErrors);
-
             if (numErrors == -1) {    // Error rate
-              eDist.setRunDistScore(lane, numReads);
+              values[ErrorDist.ERROR_RATE] = emetricMap.get(numErrors);
             }
-            else {            // Number of reads with num errors
-              eDist.setRunDistScoreByCycle(cycle, numErrors, numReads);
-              eDist.setRunDistScoreByLane(lane, numErrors, numReads);
+            else if (numErrors <= ErrorDist.MAX_ERRORS) {            // Number of reads with num errors
+              values[ErrorDist.readsSlot(numErrors)] = emetricMap.get(numErrors);
             }
           }
+          stats.add(lane, cycle, values);
         }
       }
     }
 
-    return eDist;
+    return new ErrorDist(stats);
   }
 }
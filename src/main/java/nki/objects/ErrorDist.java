@@ -8,103 +8,73 @@
 package nki.objects;
 
 import java.io.*;
-import java.util.*;
 import java.text.*;
 
-import nki.util.ArrayUtils;
-
-import org.w3c.dom.*;
-
-import javax.xml.parsers.*;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.*;
-import javax.xml.transform.stream.*;
-
+/**
+ * Error rate and number of reads with 0 .. MAX_ERRORS errors per lane and
+ * cycle, averaged over the tiles. Backed by the primitive LaneCycleStats of
+ * the ErrorMetrics parse.
+ */
 public class ErrorDist implements Serializable {
 
   public static final long serialVersionUID = 42L;
+  public static final int MAX_ERRORS = 4;
+  // Value slots of the per lane / cycle statistics: the error rate, then the
+  // number of reads with 0 .. MAX_ERRORS errors.
+  public static final int ERROR_RATE = 0;
+  public static final int NUM_VALUES = MAX_ERRORS + 2;
 
-  // Num Errors - Error rate
-  private Map<Integer, List<Double>> eScoreDistRun = new HashMap<>();
+  private LaneCycleStats stats;
 
-  // Lane - Num Errors - Num Reads with Error
-  private Map<Integer, Map<Integer, List<Double>>> eScoreDistLane = new HashMap<>();
-
-  // Cycle - Num Errors - Num Reads with Error
-  private Map<Integer, Map<Integer, List<Double>>> eScoreDistCycle = new HashMap<>();
+  public ErrorDist(LaneCycleStats stats) {
+    this.stats = stats;
+  }
 
-  public void setRunDistScore(int lane, double score) {
-    if (eScoreDistRun.containsKey(lane)) {
-      (eScoreDistRun.get(lane)).add(score);
-    }
-    else {
-      List<Double> scores = new ArrayList<>();
-      scores.add(score);
-      eScoreDistRun.put(lane, scores);
+  /*
+   * Distributions stored before LaneCycleStats kept per lane and per cycle
+   * lists that can not be combined into lane / cycle cells; they are read
+   * as empty and parsed again, see Summary.hasErrorDist().
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (stats == null) {
+      stats = new LaneCycleStats(NUM_VALUES);
     }
   }
 
-  public Map<Integer, List<Double>> getRunErrorDistribution() {
-    return eScoreDistRun;
+  public static int readsSlot(int numErrors) {
+    return numErrors + 1;
   }
 
-  public void setRunDistScoreByLane(int lane, int numErrors, double score) {
-    if (eScoreDistLane.containsKey(lane)) {
-      if ((eScoreDistLane.get(lane)).containsKey(numErrors)) {
-        ((eScoreDistLane.get(lane)).get(numErrors)).add(score);
-      }
-    }
-    else {
-      List<Double> l = new ArrayList<>();
-      l.add(score);
-      Map<Integer, List<Double>> cycleM = new HashMap<>();
-      cycleM.put(numErrors, l);
-      eScoreDistLane.put(lane, cycleM);
-    }
+  public boolean isEmpty() {
+    return stats.isEmpty();
   }
 
-  public Map<Integer, Map<Integer, List<Double>>> getRunErrorDistributionByLane() {
-    return eScoreDistLane;
+  public int[] getLanes() {
+    return stats.getLanes();
   }
 
-  public void setRunDistScoreByCycle(int cycle, int numErrors, double score) {
-    if (eScoreDistCycle.containsKey(cycle)) {
-
-		/*
-			if((eScoreDistCycle.get(cycle)).containsKey(numErrors)){
-				((eScoreDistCycle.get(cycle)).get(numErrors)).add(score);
-			}else{
-				HashMap<Integer, List<Float>> eMap = eScoreDistCycle.get(cycle);
-				List<Float> l = new ArrayList<Float>();
-				l.add(score);
-				eMap.put(numErrors, l);
-				eScoreDistCycle.put(cycle, eMap);
-			}
-		*/
-      Map<Integer, List<Double>> eMap = eScoreDistCycle.get(cycle);
-
-      List<Double> l;
-      if ((eScoreDistCycle.get(cycle)).containsKey(numErrors)) {
-        l = (eScoreDistCycle.get(cycle)).get(numErrors);
-      }
-      else {
-        l = new ArrayList<>();
-      }
-      l.add(score);
-      eMap.put(numErrors, l);
-      eScoreDistCycle.put(cycle, eMap);
-    }
-    else {
-      List<Double> l = new ArrayList<>();
-      l.add(score);
-      Map<Integer, List<Double>> cycleM = new HashMap<>();
-      cycleM.put(numErrors, l);
-      eScoreDistCycle.put(cycle, cycleM);
-    }
+  public int[] getCycles() {
+    return stats.getCycles();
+  }
+
+  // Average error rate of the lane over all tiles and cycles.
+  public double getMeanErrorRate(int lane) {
+    return stats.getLaneMean(lane, ERROR_RATE);
+  }
+
+  public double getErrorRateSD(int lane) {
+    return stats.getLaneSD(lane, ERROR_RATE);
+  }
+
+  // Average number of reads with numErrors errors per tile and cycle of the lane; NaN if unknown.
+  public double getMeanReadsByLane(int lane, int numErrors) {
+    return stats.getLaneMean(lane, readsSlot(numErrors));
   }
 
-  public Map<Integer, Map<Integer, List<Double>>> getRunErrorDistributionByCycle() {
-    return eScoreDistCycle;
+  // Average number of reads with numErrors errors per tile of the cycle; NaN if unknown.
+  public double getMeanReadsByCycle(int cycle, int numErrors) {
+    return stats.getCycleMean(cycle, readsSlot(numErrors));
   }
 
   public String toTab(String source) {
@@ -112,26 +82,30 @@ public class ErrorDist implements Serializable {
     DecimalFormat df = new DecimalFormat("0.00");
     // Avg error rate per lane
     if (source.equals("rate")) {
-      for (int lane : eScoreDistRun.keySet()) {
-        out += lane + "\t" + df.format(ArrayUtils.mean(eScoreDistRun.get(lane))) + "\t(+/- " + df.format(ArrayUtils.sd(eScoreDistRun.get(lane))) + ")\n";
+      for (int lane : getLanes()) {
+        out += lane + "\t" + df.format(getMeanErrorRate(lane)) + "\t(+/- " + df.format(getErrorRateSD(lane)) + ")\n";
       }
     }
     else if (source.equals("lane")) {
-      for (int lane : eScoreDistLane.keySet()) {
+      for (int lane : getLanes()) {
         out += lane;
-        Map<Integer, List<Double>> errorMap = eScoreDistLane.get(lane);
-        for (int numErrors : errorMap.keySet()) {
-          out += "\t" + ArrayUtils.mean(errorMap.get(numErrors));
+        for (int numErrors = 0; numErrors <= MAX_ERRORS; numErrors++) {
+          double mean = getMeanReadsByLane(lane, numErrors);
+          if (!Double.isNaN(mean)) {
+            out += "\t" + mean;
+          }
         }
         out += "\n";
       }
     }
     else if (source.equals("cycle")) {
-      for (int cycle : eScoreDistCycle.keySet()) {
+      for (int cycle : getCycles()) {
         out += cycle;
-        Map<Integer, List<Double>> errorMap = eScoreDistCycle.get(cycle);
-        for (int numErrors : errorMap.keySet()) {
-          out += "\t" + Math.floor(ArrayUtils.mean(errorMap.get(numErrors)));
+        for (int numErrors = 0; numErrors <= MAX_ERRORS; numErrors++) {
+          double mean = getMeanReadsByCycle(cycle, numErrors);
+          if (!Double.isNaN(mean)) {
+            out += "\t" + Math.floor(mean);
+          }
         }
         out += "\n";
       }
@@ -0,0 +1,92 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.objects;
+
+import java.io.*;
+
+/**
+ * Marks the metrics of an InterOp file as estimated from a subset of the
+ * tiles. Means over the sampled tiles estimate the means over all tiles;
+ * their standard error relative to the tile standard deviation is
+ * sqrt((1 - f) / n) for n sampled tiles out of a fraction f of the tiles.
+ * The confidence is 1 minus that relative error.
+ */
+public class Estimate implements Serializable {
+
+  public static final long serialVersionUID = 42L;
+
+  private final int sampleEvery;
+  private final int sampledTiles;
+  private final int totalTiles;
+  private final long created;
+
+  /*
+   * Every sampleEvery-th tile of every swath was decoded. totalTiles is 0
+   * when the flowcell layout is not known.
+   */
+  public Estimate(int sampleEvery, int sampledTiles, int totalTiles) {
+    this(sampleEvery, sampledTiles, totalTiles, System.currentTimeMillis());
+  }
+
+  /*
+   * Estimate that refreshes an earlier estimate of the same file; created is
+   * the time of the first estimate since the last parse of all tiles.
+   */
+  public Estimate(int sampleEvery, int sampledTiles, int totalTiles, long created) {
+    this.sampleEvery = sampleEvery;
+    this.sampledTiles = sampledTiles;
+    this.totalTiles = totalTiles;
+    this.created = created;
+  }
+
+  public int getSampleEvery() {
+    return sampleEvery;
+  }
+
+  public int getSampledTiles() {
+    return sampledTiles;
+  }
+
+  public int getTotalTiles() {
+    return totalTiles;
+  }
+
+  public long getCreated() {
+    return created;
+  }
+
+  // Fraction of the tiles that was decoded.
+  public double getCoverage() {
+    if (totalTiles > 0) {
+      return Math.min(1.0, sampledTiles / (double) totalTiles);
+    }
+    return 1.0 / sampleEvery;
+  }
+
+  // Factor that scales sums over the sampled tiles to all tiles.
+  public double getScale() {
+    return 1.0 / getCoverage();
+  }
+
+  // Between 0 and 1; 1 when all tiles were decoded.
+  public double getConfidence() {
+    double coverage = getCoverage();
+    if (coverage >= 1.0) {
+      return 1.0;
+    }
+    if (sampledTiles <= 0) {
+      return 0;
+    }
+    return Math.max(0, 1 - Math.sqrt((1 - coverage) / sampledTiles));
+  }
+
+  @Override
+  public String toString() {
+    return "estimate from " + sampledTiles + " of " + totalTiles + " tiles (confidence " + Math.round(getConfidence() * 100) + "%)";
+  }
+}
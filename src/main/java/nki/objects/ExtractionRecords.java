@@ -0,0 +1,230 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.objects;
+
+import java.io.*;
+import java.util.Arrays;
+
+import nki.constants.Constants;
+
+/**
+ * Columnar store of the ExtractionMetrics records.
+ * Lane, tile and cycle are kept in parallel int arrays. The four FWHM values
+ * and raw intensities [A, C, G, T] of record i are at index i * 4 .. i * 4 + 3
+ * of the fwhm and rawInt arrays. Values are written straight into these
+ * columns with addRecord() and the per channel setters. The focus statistics
+ * are accumulated over the records added since the previous call of
+ * getFocusStats(); they are only rebuilt from all records after a record that
+ * was already accumulated is overwritten.
+ */
+public class ExtractionRecords implements Serializable {
+
+  public static final long serialVersionUID = 42L;
+  public static final int NUM_CHANNELS = 4;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private int numRecords = 0;
+  private int[] lanes = new int[INITIAL_CAPACITY];
+  private int[] tiles = new int[INITIAL_CAPACITY];
+  private int[] cycles = new int[INITIAL_CAPACITY];
+  private float[] fwhm = new float[INITIAL_CAPACITY * NUM_CHANNELS];
+  private int[] rawInt = new int[INITIAL_CAPACITY * NUM_CHANNELS];
+  private RecordIndex index = new RecordIndex(INITIAL_CAPACITY);
+  // Null when a record was overwritten and the focus has to be rebuilt.
+  private LaneCycleStats focus = new LaneCycleStats(NUM_CHANNELS);
+  // Records [0, focusRecords) are accumulated in focus.
+  private int focusRecords = 0;
+
+  public boolean isEmpty() {
+    return numRecords == 0;
+  }
+
+  public int getNumRecords() {
+    return numRecords;
+  }
+
+  public int getLane(int record) {
+    return lanes[record];
+  }
+
+  public int getTile(int record) {
+    return tiles[record];
+  }
+
+  public int getCycle(int record) {
+    return cycles[record];
+  }
+
+  public float getFWHM(int record, int channel) {
+    return fwhm[record * NUM_CHANNELS + channel];
+  }
+
+  public int getRawIntensity(int record, int channel) {
+    return rawInt[record * NUM_CHANNELS + channel];
+  }
+
+  /*
+   * Record number of (lane, tile, cycle); a new record is added when none is
+   * stored yet. The values of the record are then set per channel, replacing
+   * the values of a record that was already stored.
+   */
+  public int addRecord(int lane, int tile, int cycle) {
+    int record = index.get(lane, tile, cycle);
+    if (record == -1) {
+      return newRecord(lane, tile, cycle);
+    }
+    if (record < focusRecords) {
+      focus = null;
+    }
+    return record;
+  }
+
+  public void setFWHM(int record, int channel, float value) {
+    fwhm[record * NUM_CHANNELS + channel] = value;
+  }
+
+  public void setRawIntensity(int record, int channel, int value) {
+    rawInt[record * NUM_CHANNELS + channel] = value;
+  }
+
+  /*
+   * Add all records of other, in order, as if they were added one by one.
+   */
+  public void addAll(ExtractionRecords other) {
+    for (int record = 0; record < other.numRecords; record++) {
+      int target = addRecord(other.lanes[record], other.tiles[record], other.cycles[record]);
+      System.arraycopy(other.fwhm, record * NUM_CHANNELS, fwhm, target * NUM_CHANNELS, NUM_CHANNELS);
+      System.arraycopy(other.rawInt, record * NUM_CHANNELS, rawInt, target * NUM_CHANNELS, NUM_CHANNELS);
+    }
+  }
+
+  private int newRecord(int lane, int tile, int cycle) {
+    if (numRecords == lanes.length) {
+      grow();
+    }
+
+    int record = numRecords++;
+    lanes[record] = lane;
+    tiles[record] = tile;
+    cycles[record] = cycle;
+    index.put(lane, tile, cycle, record);
+    return record;
+  }
+
+  private void grow() {
+    int capacity = lanes.length * 2;
+    lanes = Arrays.copyOf(lanes, capacity);
+    tiles = Arrays.copyOf(tiles, capacity);
+    cycles = Arrays.copyOf(cycles, capacity);
+    fwhm = Arrays.copyOf(fwhm, capacity * NUM_CHANNELS);
+    rawInt = Arrays.copyOf(rawInt, capacity * NUM_CHANNELS);
+  }
+
+  // Largest of the first n values, 0 if n is 0.
+  private static int max(int[] values, int n) {
+    int max = 0;
+    for (int i = 0; i < n; i++) {
+      max = Math.max(max, values[i]);
+    }
+    return max;
+  }
+
+  /*
+   * Group the records by (lane, cycle). Returns the group of every record and
+   * fills groupLanes / groupCycles with the lane and cycle of each group.
+   */
+  private int[] groupByLaneCycle(int[] groupLanes, int[] groupCycles, int[] groupCount) {
+    RecordIndex groups = new RecordIndex(Math.max(16, numRecords / 32));
+    int[] recordGroup = new int[numRecords];
+    int numGroups = 0;
+
+    for (int record = 0; record < numRecords; record++) {
+      int group = groups.get(lanes[record], 0, cycles[record]);
+      if (group == -1) {
+        group = numGroups++;
+        groups.put(lanes[record], 0, cycles[record], group);
+        groupLanes[group] = lanes[record];
+        groupCycles[group] = cycles[record];
+      }
+      recordGroup[record] = group;
+    }
+    groupCount[0] = numGroups;
+    return recordGroup;
+  }
+
+  // Average FWHM per lane and cycle over all tiles.
+  public FWHMDist getAverageFWHMDist() {
+    int[] groupLanes = new int[numRecords];
+    int[] groupCycles = new int[numRecords];
+    int[] groupCount = new int[1];
+    int[] recordGroup = groupByLaneCycle(groupLanes, groupCycles, groupCount);
+    int numGroups = groupCount[0];
+
+    double[] sums = new double[numGroups * NUM_CHANNELS];
+    int[] tileCount = new int[numGroups];
+    for (int record = 0; record < numRecords; record++) {
+      int group = recordGroup[record];
+      for (int ch = 0; ch < NUM_CHANNELS; ch++) {
+        sums[group * NUM_CHANNELS + ch] += (double) fwhm[record * NUM_CHANNELS + ch];
+      }
+      tileCount[group]++;
+    }
+
+    FWHMDist fDistAvg = new FWHMDist(Constants.METRIC_VAR_FWHM_LABELS, max(groupLanes, numGroups), max(groupCycles, numGroups));
+    for (int group = 0; group < numGroups; group++) {
+      for (int ch = 0; ch < NUM_CHANNELS; ch++) {
+        fDistAvg.setFWHM(groupLanes[group], groupCycles[group], ch, sums[group * NUM_CHANNELS + ch] / tileCount[group]);
+      }
+    }
+
+    return fDistAvg;
+  }
+
+  // Average raw intensity per lane and cycle over all tiles.
+  public IntensityDist getRawIntensityDist() {
+    int[] groupLanes = new int[numRecords];
+    int[] groupCycles = new int[numRecords];
+    int[] groupCount = new int[1];
+    int[] recordGroup = groupByLaneCycle(groupLanes, groupCycles, groupCount);
+    int numGroups = groupCount[0];
+
+    int[] sums = new int[numGroups * NUM_CHANNELS];
+    int[] tileCount = new int[numGroups];
+    for (int record = 0; record < numRecords; record++) {
+      int group = recordGroup[record];
+      for (int ch = 0; ch < NUM_CHANNELS; ch++) {
+        sums[group * NUM_CHANNELS + ch] += rawInt[record * NUM_CHANNELS + ch];
+      }
+      tileCount[group]++;
+    }
+
+    IntensityDist iDistRaw = new IntensityDist(Constants.METRIC_EX_RAWINT_LABELS, max(groupLanes, numGroups), max(groupCycles, numGroups));
+    for (int group = 0; group < numGroups; group++) {
+      for (int ch = 0; ch < NUM_CHANNELS; ch++) {
+        iDistRaw.setIntensity(groupLanes[group], groupCycles[group], ch, sums[group * NUM_CHANNELS + ch] / tileCount[group]);
+      }
+    }
+
+    return iDistRaw;
+  }
+
+  /*
+   * FWHM per channel [A, C, G, T] as focus statistics per lane and cycle.
+   * Returns a snapshot that is not affected by records added later.
+   */
+  public LaneCycleStats getFocusStats() {
+    if (focus == null) {
+      focus = new LaneCycleStats(NUM_CHANNELS);
+      focusRecords = 0;
+    }
+    for (; focusRecords < numRecords; focusRecords++) {
+      focus.add(lanes[focusRecords], cycles[focusRecords], fwhm, focusRecords * NUM_CHANNELS);
+    }
+    return focus.copy();
+  }
+}
@@ -8,35 +8,87 @@
 package nki.objects;
 
 import java.io.*;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
 
-public class FWHMDist implements Serializable {
+import nki.constants.Channel;
+
+/**
+ * Average FWHM (focus) score per lane, cycle and channel.
+ */
+public class FWHMDist extends ChannelDist {
 
   public static final long serialVersionUID = 42L;
 
-  private final Map<Integer, Map<Integer, Map<String, MutableDouble>>> iDist = new TreeMap<>();
+  private double[] fwhm;
 
-  public void setFWHM(int lane, int cycle, Map<String, MutableDouble> fMapM) {
-    // Map every cycle with all FWHM scores for each base and their respective value.
-    Map<Integer, Map<String, MutableDouble>> oMap = iDist.get(lane);
+  public FWHMDist(String[] channels) {
+    this(channels, 0, 0);
+  }
 
-    if (oMap == null) {
-      Map<Integer, Map<String, MutableDouble>> cMap = new TreeMap<>();
-      cMap.put(cycle, fMapM);
-      iDist.put(lane, cMap);
-    }
-    else {
-      if (oMap.get(cycle) == null) {
-        oMap.put(cycle, fMapM);
-      }
+  // Sized for lanes 1 .. numLanes and cycles 1 .. numCycles; grows when needed.
+  public FWHMDist(String[] channels, int numLanes, int numCycles) {
+    super(channels, numLanes, numCycles);
+    fwhm = new double[numLanes * numCycles * channels.length];
+  }
 
-      iDist.put(lane, oMap);
-    }
+  public void setFWHM(int lane, int cycle, int channel, double value) {
+    // slotFor may replace the array.
+    int slot = slotFor(lane, cycle);
+    fwhm[slot + channel] = value;
   }
 
-  public Map<Integer, Map<Integer, Map<String, MutableDouble>>> getFWHMvalues() {
-    return iDist;
+  public void setFWHM(int lane, int cycle, Channel channel, double value) {
+    setFWHM(lane, cycle, channel.ordinal(), value);
   }
 
+  public double getFWHM(int lane, int cycle, Channel channel) {
+    return getFWHM(lane, cycle, channel.ordinal());
+  }
+
+  // FWHM of the channel, NaN when (lane, cycle) was not set.
+  public double getFWHM(int lane, int cycle, int channel) {
+    int slot = slot(lane, cycle);
+    return slot == -1 ? Double.NaN : fwhm[slot + channel];
+  }
+
+  @Override
+  protected void resize(int newLanes, int newCycles) {
+    fwhm = relayout(fwhm, newLanes, newCycles);
+  }
+
+  /*
+   * FWHMDists stored before the value arrays kept a map of lane -> cycle ->
+   * channel label -> MutableDouble (iDist); its values are copied into the arrays.
+   */
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    fwhm = (double[]) fields.get("fwhm", null);
+    if (fwhm != null || fields.getObjectStreamClass().getField("iDist") == null) {
+      return;
+    }
+
+    fwhm = new double[0];
+    Map<Integer, Map<Integer, Map<String, MutableDouble>>> iDist = (Map<Integer, Map<Integer, Map<String, MutableDouble>>>) fields.get("iDist", null);
+    if (iDist == null) {
+      return;
+    }
+    Set<String> names = new HashSet<>();
+    for (Map<Integer, Map<String, MutableDouble>> cycles : iDist.values()) {
+      for (Map<String, MutableDouble> values : cycles.values()) {
+        names.addAll(values.keySet());
+      }
+    }
+    restoreChannels(names);
+
+    for (Map.Entry<Integer, Map<Integer, Map<String, MutableDouble>>> lane : iDist.entrySet()) {
+      for (Map.Entry<Integer, Map<String, MutableDouble>> cycle : lane.getValue().entrySet()) {
+        for (Map.Entry<String, MutableDouble> value : cycle.getValue().entrySet()) {
+          setFWHM(lane.getKey(), cycle.getKey(), getChannel(value.getKey()), value.getValue().get());
+        }
+      }
+    }
+  }
 }
@@ -11,59 +11,46 @@ import java.io.*;
 import java.util.Map;
 import java.util.HashMap;
 
-import nki.constants.Constants;
+import nki.constants.Channel;
 
+/**
+ * FWHM (focus) scores of the tiles of one lane and cycle, one array per tile
+ * indexed by Channel ordinal.
+ */
 public class FWHMMap implements Serializable {
 
   public static final long serialVersionUID = 42L;
 
-  private final Map<Integer, Map<String, Double>> sMap = new HashMap<>();
+  private final Map<Integer, double[]> sMap = new HashMap<>();
 
-  public void addMapping(int tilenr, String metricType, Double metricVal) {
-    Map<String, Double> fMap;
-    if (sMap.containsKey(tilenr)) {
-      fMap = sMap.get(tilenr);
+  public void addMapping(int tilenr, Channel channel, double metricVal) {
+    double[] values = sMap.get(tilenr);
+    if (values == null) {
+      values = new double[Channel.NUM_BASES];
+      sMap.put(tilenr, values);
     }
-    else {
-      fMap = new HashMap<>();
-    }
-
-    fMap.put(metricType, metricVal);
-    sMap.put(tilenr, fMap);
+    values[channel.ordinal()] = metricVal;
   }
 
   public Integer getNumberOfTiles() {
     return sMap.size();
   }
 
-  // Calculate the average FWHM for this cycle for each metric constant [A, C, G, T]
-  public Map<String, MutableDouble> getCycleAverageFWHM() {
-    Map<String, MutableDouble> avgOverTiles = new HashMap<>();
-
-    avgOverTiles.put(Constants.METRIC_VAR_FWHM_A, new MutableDouble());
-    avgOverTiles.put(Constants.METRIC_VAR_FWHM_C, new MutableDouble());
-    avgOverTiles.put(Constants.METRIC_VAR_FWHM_G, new MutableDouble());
-    avgOverTiles.put(Constants.METRIC_VAR_FWHM_T, new MutableDouble());
-
-    for (int tile : sMap.keySet()) {
-      Map<String, Double> tileMapping = sMap.get(tile);
-
-      Double fA = tileMapping.get(Constants.METRIC_VAR_FWHM_A);
-      Double fC = tileMapping.get(Constants.METRIC_VAR_FWHM_C);
-      Double fG = tileMapping.get(Constants.METRIC_VAR_FWHM_G);
-      Double fT = tileMapping.get(Constants.METRIC_VAR_FWHM_T);
-      
-      avgOverTiles.get(Constants.METRIC_VAR_FWHM_A).add(fA);
-      avgOverTiles.get(Constants.METRIC_VAR_FWHM_C).add(fC);
-      avgOverTiles.get(Constants.METRIC_VAR_FWHM_G).add(fG);
-      avgOverTiles.get(Constants.METRIC_VAR_FWHM_T).add(fT);
+  // Calculate the average FWHM for this cycle for each channel [A, C, G, T]
+  public double[] getCycleAverageFWHM() {
+    double[] avgOverTiles = new double[Channel.NUM_BASES];
+    if (sMap.isEmpty()) {
+      return avgOverTiles;
     }
 
-    avgOverTiles.get(Constants.METRIC_VAR_FWHM_A).avg();
-    avgOverTiles.get(Constants.METRIC_VAR_FWHM_C).avg();
-    avgOverTiles.get(Constants.METRIC_VAR_FWHM_G).avg();
-    avgOverTiles.get(Constants.METRIC_VAR_FWHM_T).avg();
-
+    for (double[] values : sMap.values()) {
+      for (Channel ch : Channel.BASES) {
+        avgOverTiles[ch.ordinal()] += values[ch.ordinal()];
+      }
+    }
+    for (Channel ch : Channel.BASES) {
+      avgOverTiles[ch.ordinal()] /= sMap.size();
+    }
     return avgOverTiles;
   }
 
@@ -11,12 +11,17 @@ import java.io.*;
 import java.util.Map;
 import java.util.HashMap;
 
+import nki.constants.Channel;
+import nki.constants.Constants;
+
 public class FWHMScores implements Serializable {
 
   public static final long serialVersionUID = 42L;
   public int version;
   public int recordLength;
   public String source;
+  // Columnar ExtractionMetrics records; used instead of the maps when set.
+  private ExtractionRecords records;
   public Map<Integer, Map<Integer, FWHMMap>> fScores = new HashMap<>();
 
   public void setVersion(int version) {
@@ -28,9 +33,20 @@ public class FWHMScores implements Serializable {
   }
 
   public boolean isEmpty() {
+    if (records != null) {
+      return records.isEmpty();
+    }
     return fScores.isEmpty();
   }
 
+  public void setRecords(ExtractionRecords records) {
+    this.records = records;
+  }
+
+  public ExtractionRecords getRecords() {
+    return records;
+  }
+
   public void setRecordLength(int recordLength) {
     this.recordLength = recordLength;
   }
@@ -74,7 +90,11 @@ public class FWHMScores implements Serializable {
   }
 
   public FWHMDist getAverageFWHMDist() {
-    FWHMDist fDistAvg = new FWHMDist();
+    if (records != null) {
+      return records.getAverageFWHMDist();
+    }
+
+    FWHMDist fDistAvg = new FWHMDist(Constants.METRIC_VAR_FWHM_LABELS);
 
     // Lane -> CycleMap
     for (int lane : fScores.keySet()) {
@@ -82,11 +102,18 @@ public class FWHMScores implements Serializable {
       // Cycle -> IntensityMap
       for (int cycle : laneScores.keySet()) {
         FWHMMap fmap = laneScores.get(cycle);
-        Map<String, MutableDouble> fMapAvg = fmap.getCycleAverageFWHM();
-        fDistAvg.setFWHM(lane, cycle, fMapAvg);
+        double[] avg = fmap.getCycleAverageFWHM();
+        for (Channel ch : Channel.BASES) {
+          fDistAvg.setFWHM(lane, cycle, ch, avg[ch.ordinal()]);
+        }
       }
     }
 
     return fDistAvg;
   }
+
+  // Focus statistics of the columnar records, or null when there are none.
+  public LaneCycleStats getFocusStats() {
+    return records != null ? records.getFocusStats() : null;
+  }
 }
@@ -0,0 +1,104 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.objects;
+
+import java.io.*;
+import java.util.Arrays;
+
+import nki.io.RunArchive;
+
+/**
+ * Size, modification time and leading header bytes of an InterOp file.
+ * A file with the same fingerprint as when it was parsed holds the same
+ * records, so the metrics stored in the Summary can be reused.
+ *
+ * Files within a run archive are fingerprinted by the size and modification
+ * time of the archive and the path of the entry; reading the header bytes
+ * would mean decompressing the archive up to the entry.
+ */
+public class FileFingerprint implements Serializable {
+
+  public static final long serialVersionUID = 42L;
+  // Covers the version, record length and the start of longer headers.
+  private static final int HEADER_BYTES = 16;
+
+  private final long size;
+  private final long lastModified;
+  private final byte[] header;
+  // Path of the file within its run archive; null for plain files.
+  private final String entry;
+
+  public FileFingerprint(long size, long lastModified, byte[] header) {
+    this(size, lastModified, header, null);
+  }
+
+  public FileFingerprint(long size, long lastModified, byte[] header, String entry) {
+    this.size = size;
+    this.lastModified = lastModified;
+    this.header = header;
+    this.entry = entry;
+  }
+
+  /*
+   * Fingerprint of the file at path, or null when it can not be read.
+   */
+  public static FileFingerprint read(String path) {
+    String archive = RunArchive.getArchive(path);
+    if (archive != null) {
+      File file = new File(archive);
+      String entry = path.substring(archive.length()).replaceFirst("^/+", "");
+      return new FileFingerprint(file.length(), file.lastModified(), new byte[0], entry);
+    }
+
+    File file = new File(path);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    long lastModified = file.lastModified();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      long size = raf.length();
+      byte[] header = new byte[(int) Math.min(HEADER_BYTES, size)];
+      raf.readFully(header);
+      return new FileFingerprint(size, lastModified, header);
+    }
+    catch (IOException ioe) {
+      return null;
+    }
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof FileFingerprint)) {
+      return false;
+    }
+    FileFingerprint other = (FileFingerprint) o;
+    return size == other.size && lastModified == other.lastModified && Arrays.equals(header, other.header) &&
+           (entry == null ? other.entry == null : entry.equals(other.entry));
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 31 * (31 * Long.valueOf(size).hashCode() + Long.valueOf(lastModified).hashCode()) + Arrays.hashCode(header);
+    return entry == null ? hash : 31 * hash + entry.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    String file = size + " bytes, modified " + lastModified;
+    return entry == null ? file : entry + " in archive of " + file;
+  }
+}
@@ -0,0 +1,155 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.objects;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Focus and contrast per lane, cycle and channel [A, C, G, T], averaged over
+ * the tiles. Contrast is accumulated from the ImageMetrics records, one
+ * LaneCycleStats per channel with the minimum and maximum contrast slots.
+ * Focus is the FWHM of the ExtractionMetrics records, one slot per channel.
+ */
+public class ImageDist implements Serializable {
+
+  public static final long serialVersionUID = 42L;
+  public static final int NUM_CHANNELS = 4;
+
+  // Contrast value slots.
+  public static final int MIN_CONTRAST = 0;
+  public static final int MAX_CONTRAST = 1;
+  public static final int NUM_CONTRAST_VALUES = 2;
+
+  private final LaneCycleStats[] contrastStats = new LaneCycleStats[NUM_CHANNELS];
+  private LaneCycleStats focusStats;
+  // Scratch slots for addContrast.
+  private transient double[] values;
+
+  public ImageDist() {
+    for (int ch = 0; ch < NUM_CHANNELS; ch++) {
+      contrastStats[ch] = new LaneCycleStats(NUM_CONTRAST_VALUES);
+    }
+  }
+
+  /*
+   * Add the minimum and maximum contrast of one channel of a tile record.
+   */
+  public void addContrast(int lane, int cycle, int channel, int minContrast, int maxContrast) {
+    if (values == null) {
+      values = new double[NUM_CONTRAST_VALUES];
+    }
+    values[MIN_CONTRAST] = minContrast;
+    values[MAX_CONTRAST] = maxContrast;
+    contrastStats[channel].add(lane, cycle, values);
+  }
+
+  // Add the contrast of other, as if its records were added to this object.
+  public void merge(ImageDist other) {
+    for (int ch = 0; ch < NUM_CHANNELS; ch++) {
+      contrastStats[ch].merge(other.contrastStats[ch]);
+    }
+  }
+
+  // Snapshot that is not affected by records added later.
+  public ImageDist copy() {
+    ImageDist c = new ImageDist();
+    for (int ch = 0; ch < NUM_CHANNELS; ch++) {
+      c.contrastStats[ch] = contrastStats[ch].copy();
+    }
+    c.focusStats = focusStats;
+    return c;
+  }
+
+  public LaneCycleStats getContrastStats(int channel) {
+    return contrastStats[channel];
+  }
+
+  // FWHM per channel, see ExtractionRecords.getFocusStats().
+  public void setFocusStats(LaneCycleStats focusStats) {
+    this.focusStats = focusStats;
+  }
+
+  public LaneCycleStats getFocusStats() {
+    return focusStats;
+  }
+
+  public boolean hasContrast() {
+    for (LaneCycleStats stats : contrastStats) {
+      if (!stats.isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean hasFocus() {
+    return focusStats != null && !focusStats.isEmpty();
+  }
+
+  /*
+   * Mean MIN_CONTRAST or MAX_CONTRAST of the tiles of (lane, cycle), or NaN
+   * when the channel has no records for it.
+   */
+  public double getContrast(int lane, int cycle, int channel, int value) {
+    LaneCycleStats stats = contrastStats[channel];
+    int cell = stats.findCell(lane, cycle);
+    return cell == -1 ? Double.NaN : stats.getMean(cell, value);
+  }
+
+  // Mean FWHM of the tiles of (lane, cycle), or NaN.
+  public double getFocus(int lane, int cycle, int channel) {
+    if (focusStats == null) {
+      return Double.NaN;
+    }
+    int cell = focusStats.findCell(lane, cycle);
+    return cell == -1 ? Double.NaN : focusStats.getMean(cell, channel);
+  }
+
+  // Sorted lanes with focus or contrast values.
+  public int[] getLanes() {
+    int[][] keys = new int[NUM_CHANNELS + 1][];
+    for (int ch = 0; ch < NUM_CHANNELS; ch++) {
+      keys[ch] = contrastStats[ch].getLanes();
+    }
+    keys[NUM_CHANNELS] = focusStats == null ? new int[0] : focusStats.getLanes();
+    return union(keys);
+  }
+
+  // Sorted cycles with focus or contrast values.
+  public int[] getCycles() {
+    int[][] keys = new int[NUM_CHANNELS + 1][];
+    for (int ch = 0; ch < NUM_CHANNELS; ch++) {
+      keys[ch] = contrastStats[ch].getCycles();
+    }
+    keys[NUM_CHANNELS] = focusStats == null ? new int[0] : focusStats.getCycles();
+    return union(keys);
+  }
+
+  private static int[] union(int[][] keys) {
+    int total = 0;
+    for (int[] k : keys) {
+      total += k.length;
+    }
+    int[] all = new int[total];
+    int pos = 0;
+    for (int[] k : keys) {
+      System.arraycopy(k, 0, all, pos, k.length);
+      pos += k.length;
+    }
+    Arrays.sort(all);
+
+    int size = 0;
+    for (int i = 0; i < all.length; i++) {
+      if (size == 0 || all[size - 1] != all[i]) {
+        all[size++] = all[i];
+      }
+    }
+    return Arrays.copyOf(all, size);
+  }
+}
@@ -28,30 +28,21 @@ public class Indices implements Serializable {
 
   public void setIndex(String projName, String sampName, String idx, long numClusters, int laneNr, int readNr) {
     Map<String, SampleInfo> project = indices.get(projName);
-    SampleInfo sampleMap;
-
     if (project == null) {
       project = new HashMap<>();
-      sampleMap = setSample(readNr, laneNr, numClusters, idx);
-      project.put(sampName, sampleMap);
+      indices.put(projName, project);
     }
-    else {
-      sampleMap = project.get(sampName);
-
-      if (sampleMap == null) {
-        sampleMap = setSample(readNr, laneNr, numClusters, idx);
-        project.put(sampName, sampleMap);
-      }
-      else {  // Update num clusters.
-        sampleMap.setNumClusters(sampleMap.getNumClusters() + numClusters);
-      }
 
+    SampleInfo sampleMap = project.get(sampName);
+    if (sampleMap == null) {
+      sampleMap = setSample(readNr, laneNr, numClusters, idx);
       project.put(sampName, sampleMap);
     }
+    else {  // Update num clusters.
+      sampleMap.addNumClusters(numClusters);
+    }
 
     addTotalClusters(numClusters);
-
-    indices.put(projName, project);
   }
 
   private SampleInfo setSample(int readNr, int laneNr, long numClusters, String idx) {
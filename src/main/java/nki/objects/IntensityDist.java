@@ -8,38 +8,87 @@
 package nki.objects;
 
 import java.io.*;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.TreeMap;
+import java.util.Set;
 
-import org.w3c.dom.*;
+import nki.constants.Channel;
 
-public class IntensityDist implements Serializable {
+/**
+ * Average intensity per lane, cycle and channel.
+ */
+public class IntensityDist extends ChannelDist {
 
   public static final long serialVersionUID = 42L;
 
-  private final Map<Integer, Map<Integer, Map<String, MutableInt>>> iDist = new TreeMap<>();
+  private int[] intensities;
 
-  public void setIntensity(int lane, int cycle, Map<String, MutableInt> iMapM) {
-    Map<Integer, Map<String, MutableInt>> oMap = iDist.get(lane);
+  public IntensityDist(String[] channels) {
+    this(channels, 0, 0);
+  }
 
-    if (oMap == null) {
-      Map<Integer, Map<String, MutableInt>> cMap = new TreeMap<>();
-      cMap.put(cycle, iMapM);
-      iDist.put(lane, cMap);
-    }
-    else {
-      if (oMap.get(cycle) == null) {
-        oMap.put(cycle, iMapM);
-      }
+  // Sized for lanes 1 .. numLanes and cycles 1 .. numCycles; grows when needed.
+  public IntensityDist(String[] channels, int numLanes, int numCycles) {
+    super(channels, numLanes, numCycles);
+    intensities = new int[numLanes * numCycles * channels.length];
+  }
 
-      iDist.put(lane, oMap);
-    }
+  public void setIntensity(int lane, int cycle, int channel, int intensity) {
+    // slotFor may replace the array.
+    int slot = slotFor(lane, cycle);
+    intensities[slot + channel] = intensity;
+  }
+
+  public void setIntensity(int lane, int cycle, Channel channel, int intensity) {
+    setIntensity(lane, cycle, channel.ordinal(), intensity);
+  }
+
+  public int getIntensity(int lane, int cycle, Channel channel) {
+    return getIntensity(lane, cycle, channel.ordinal());
+  }
+
+  // Intensity of the channel, 0 when (lane, cycle) was not set.
+  public int getIntensity(int lane, int cycle, int channel) {
+    int slot = slot(lane, cycle);
+    return slot == -1 ? 0 : intensities[slot + channel];
   }
 
-  public Map<Integer, Map<Integer, Map<String, MutableInt>>> getIntensities() {
-    return iDist;
+  @Override
+  protected void resize(int newLanes, int newCycles) {
+    intensities = relayout(intensities, newLanes, newCycles);
   }
 
+  /*
+   * IntensityDists stored before the value arrays kept a map of lane -> cycle ->
+   * channel label -> MutableInt (iDist); its values are copied into the arrays.
+   */
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    intensities = (int[]) fields.get("intensities", null);
+    if (intensities != null || fields.getObjectStreamClass().getField("iDist") == null) {
+      return;
+    }
+
+    intensities = new int[0];
+    Map<Integer, Map<Integer, Map<String, MutableInt>>> iDist = (Map<Integer, Map<Integer, Map<String, MutableInt>>>) fields.get("iDist", null);
+    if (iDist == null) {
+      return;
+    }
+    Set<String> names = new HashSet<>();
+    for (Map<Integer, Map<String, MutableInt>> cycles : iDist.values()) {
+      for (Map<String, MutableInt> values : cycles.values()) {
+        names.addAll(values.keySet());
+      }
+    }
+    restoreChannels(names);
+
+    for (Map.Entry<Integer, Map<Integer, Map<String, MutableInt>>> lane : iDist.entrySet()) {
+      for (Map.Entry<Integer, Map<String, MutableInt>> cycle : lane.getValue().entrySet()) {
+        for (Map.Entry<String, MutableInt> value : cycle.getValue().entrySet()) {
+          setIntensity(lane.getKey(), cycle.getKey(), getChannel(value.getKey()), value.getValue().get());
+        }
+      }
+    }
+  }
 }
@@ -11,124 +11,78 @@ import java.io.*;
 import java.util.Map;
 import java.util.HashMap;
 
-import nki.constants.Constants;
-
+import nki.constants.Channel;
+
+/**
+ * Intensity metrics of the tiles of one lane and cycle. Every tile has one
+ * array of NUM_SLOTS values; channel c of the ACI, ACICC and RAWINT groups
+ * is at group + c.ordinal(), base call counts including Channel.NC at
+ * NUM_BCS + c.ordinal() (see slot). The Constants.METRIC_VAR_* labels of
+ * the slots are only used for output.
+ */
 public class IntensityMap implements Serializable {
 
   public static final long serialVersionUID = 42L;
+  public static final int ACI = 0;
+  public static final int ACICC = ACI + Channel.NUM_BASES;
+  public static final int RAWINT = ACICC + Channel.NUM_BASES;
+  public static final int NUM_BCS = RAWINT + Channel.NUM_BASES;
+  public static final int SIGNOISE = NUM_BCS + Channel.NUM_CALLS;
+  public static final int NUM_SLOTS = SIGNOISE + 1;
+
+  private Map<Integer, double[]> sMap = new HashMap<>();
+
+  // Slot of channel in the group starting at slot group, e.g. slot(RAWINT, Channel.G).
+  public static int slot(int group, Channel channel) {
+    return group + channel.ordinal();
+  }
 
-  private Map<Integer, Map<String, Double>> sMap = new HashMap<>();
-
-  public void addMapping(int tilenr, String metricType, Double metricVal) {
-    Map<String, Double> iMap;
-    if (sMap.containsKey(tilenr)) {
-      iMap = sMap.get(tilenr);
-    }
-    else {
-      iMap = new HashMap<>();
+  public void addMapping(int tilenr, int slot, double metricVal) {
+    double[] values = sMap.get(tilenr);
+    if (values == null) {
+      values = new double[NUM_SLOTS];
+      sMap.put(tilenr, values);
     }
-
-    iMap.put(metricType, metricVal);
-    sMap.put(tilenr, iMap);
+    values[slot] = metricVal;
   }
 
   public Integer getNumberOfTiles() {
     return sMap.size();
   }
 
-  // Calculate the average intensity for this cycle for each metric constant [A, C, G, T]
-  public Map<String, MutableInt> getCycleAverageInt() {
-    Map<String, MutableInt> avgOverTiles = new HashMap<>();
-
-    avgOverTiles.put(Constants.METRIC_VAR_ACI_A, new MutableInt());
-    avgOverTiles.put(Constants.METRIC_VAR_ACI_C, new MutableInt());
-    avgOverTiles.put(Constants.METRIC_VAR_ACI_G, new MutableInt());
-    avgOverTiles.put(Constants.METRIC_VAR_ACI_T, new MutableInt());
-
-    for (int tile : sMap.keySet()) {
-      Map<String, Double> tileMapping = sMap.get(tile);
-
-      Integer iA = tileMapping.get(Constants.METRIC_VAR_ACI_A).intValue();
-      Integer iC = tileMapping.get(Constants.METRIC_VAR_ACI_C).intValue();
-      Integer iG = tileMapping.get(Constants.METRIC_VAR_ACI_G).intValue();
-      Integer iT = tileMapping.get(Constants.METRIC_VAR_ACI_T).intValue();
-
-      avgOverTiles.get(Constants.METRIC_VAR_ACI_A).add(iA);
-      avgOverTiles.get(Constants.METRIC_VAR_ACI_C).add(iC);
-      avgOverTiles.get(Constants.METRIC_VAR_ACI_G).add(iG);
-      avgOverTiles.get(Constants.METRIC_VAR_ACI_T).add(iT);
-    }
-
-    avgOverTiles.get(Constants.METRIC_VAR_ACI_A).avg();
-    avgOverTiles.get(Constants.METRIC_VAR_ACI_C).avg();
-    avgOverTiles.get(Constants.METRIC_VAR_ACI_G).avg();
-    avgOverTiles.get(Constants.METRIC_VAR_ACI_T).avg();
-
-    return avgOverTiles;
+  // Calculate the average intensity for this cycle for each channel [A, C, G, T]
+  public int[] getCycleAverageInt() {
+    return averageInt(ACI);
   }
 
-  // Calculate the average intensity of called clusters for this cycle for each metric constant [A, C, G, T]
-  public Map<String, MutableInt> getCycleAverageCCInt() {
-    Map<String, MutableInt> avgOverTiles = new HashMap<>();
-
-    avgOverTiles.put(Constants.METRIC_VAR_ACICC_A, new MutableInt());
-    avgOverTiles.put(Constants.METRIC_VAR_ACICC_C, new MutableInt());
-    avgOverTiles.put(Constants.METRIC_VAR_ACICC_G, new MutableInt());
-    avgOverTiles.put(Constants.METRIC_VAR_ACICC_T, new MutableInt());
-
-    for (int tile : sMap.keySet()) {
-      Map<String, Double> tileMapping = sMap.get(tile);
-
-      Integer iA = tileMapping.get(Constants.METRIC_VAR_ACICC_A).intValue();
-      Integer iC = tileMapping.get(Constants.METRIC_VAR_ACICC_C).intValue();
-      Integer iG = tileMapping.get(Constants.METRIC_VAR_ACICC_G).intValue();
-      Integer iT = tileMapping.get(Constants.METRIC_VAR_ACICC_T).intValue();
-
-      avgOverTiles.get(Constants.METRIC_VAR_ACICC_A).add(iA);
-      avgOverTiles.get(Constants.METRIC_VAR_ACICC_C).add(iC);
-      avgOverTiles.get(Constants.METRIC_VAR_ACICC_G).add(iG);
-      avgOverTiles.get(Constants.METRIC_VAR_ACICC_T).add(iT);
-    }
-
-    avgOverTiles.get(Constants.METRIC_VAR_ACICC_A).avg();
-    avgOverTiles.get(Constants.METRIC_VAR_ACICC_C).avg();
-    avgOverTiles.get(Constants.METRIC_VAR_ACICC_G).avg();
-    avgOverTiles.get(Constants.METRIC_VAR_ACICC_T).avg();
-
-    return avgOverTiles;
+  // Calculate the average intensity of called clusters for this cycle for each channel [A, C, G, T]
+  public int[] getCycleAverageCCInt() {
+    return averageInt(ACICC);
   }
 
-    // Calculate the average raw intensity for this cycle for each metric constant [A, C, G, T]
-  public Map<String, MutableInt> getCycleAverageRawInt() {
-    Map<String, MutableInt> avgOverTiles = new HashMap<>();
-
-    avgOverTiles.put(Constants.METRIC_EX_RAWINT_A, new MutableInt());
-    avgOverTiles.put(Constants.METRIC_EX_RAWINT_C, new MutableInt());
-    avgOverTiles.put(Constants.METRIC_EX_RAWINT_G, new MutableInt());
-    avgOverTiles.put(Constants.METRIC_EX_RAWINT_T, new MutableInt());
-
-    for (int tile : sMap.keySet()) {
-      Map<String, Double> tileMapping = sMap.get(tile);
-
-      Integer iA = tileMapping.get(Constants.METRIC_EX_RAWINT_A).intValue();
-      Integer iC = tileMapping.get(Constants.METRIC_EX_RAWINT_C).intValue();
-      Integer iG = tileMapping.get(Constants.METRIC_EX_RAWINT_G).intValue();
-      Integer iT = tileMapping.get(Constants.METRIC_EX_RAWINT_T).intValue();
+  // Calculate the average raw intensity for this cycle for each channel [A, C, G, T]
+  public int[] getCycleAverageRawInt() {
+    return averageInt(RAWINT);
+  }
 
-      avgOverTiles.get(Constants.METRIC_EX_RAWINT_A).add(iA);
-      avgOverTiles.get(Constants.METRIC_EX_RAWINT_C).add(iC);
-      avgOverTiles.get(Constants.METRIC_EX_RAWINT_G).add(iG);
-      avgOverTiles.get(Constants.METRIC_EX_RAWINT_T).add(iT);
+  // Integer average over the tiles of the channels from slot first, as MutableInt.avg() computes it.
+  private int[] averageInt(int first) {
+    int[] avgOverTiles = new int[Channel.NUM_BASES];
+    if (sMap.isEmpty()) {
+      return avgOverTiles;
     }
 
-    avgOverTiles.get(Constants.METRIC_EX_RAWINT_A).avg();
-    avgOverTiles.get(Constants.METRIC_EX_RAWINT_C).avg();
-    avgOverTiles.get(Constants.METRIC_EX_RAWINT_G).avg();
-    avgOverTiles.get(Constants.METRIC_EX_RAWINT_T).avg();
-
+    for (double[] values : sMap.values()) {
+      for (Channel ch : Channel.BASES) {
+        avgOverTiles[ch.ordinal()] += (int) values[slot(first, ch)];
+      }
+    }
+    for (Channel ch : Channel.BASES) {
+      avgOverTiles[ch.ordinal()] /= sMap.size();
+    }
     return avgOverTiles;
   }
-  
+
   // Return the number of called bases foreach channel [NC, A, C, G, T]
   public void getNumberCalledBases() {
     //public HashMap<String, float> getNumberCalledBases(){
@@ -11,12 +11,27 @@ import java.io.*;
 import java.util.Map;
 import java.util.HashMap;
 
+import nki.constants.Channel;
+import nki.constants.Constants;
+
 public class IntensityScores implements Serializable {
 
   public static final long serialVersionUID = 42L;
+  // Value slots of the CorrectedIntensityMetrics statistics, in record order.
+  public static final int CI_AVG = 0;
+  public static final int CI_CHANNEL_FIRST = 1;
+  public static final int CI_CALLED_FIRST = 5;
+  public static final int CI_BASECALLS_FIRST = 9;
+  public static final int CI_SIGNOISE = 14;
+  public static final int CI_NUM_VALUES = 15;
+
   public int version;
   public int recordLength;
   public String source;
+  // Columnar ExtractionMetrics records; used instead of the maps when set.
+  private ExtractionRecords records;
+  // CorrectedIntensityMetrics statistics per lane and cycle; used instead of the maps when set.
+  private LaneCycleStats correctedStats;
   public Map<Integer, Map<Integer, IntensityMap>> iScores = new HashMap<>();
 
   public void setVersion(int version) {
@@ -28,9 +43,31 @@ public class IntensityScores implements Serializable {
   }
 
   public boolean isEmpty() {
+    if (records != null) {
+      return records.isEmpty();
+    }
+    if (correctedStats != null) {
+      return correctedStats.isEmpty();
+    }
     return iScores.isEmpty();
   }
 
+  public void setRecords(ExtractionRecords records) {
+    this.records = records;
+  }
+
+  public ExtractionRecords getRecords() {
+    return records;
+  }
+
+  public void setCorrectedStats(LaneCycleStats correctedStats) {
+    this.correctedStats = correctedStats;
+  }
+
+  public LaneCycleStats getCorrectedStats() {
+    return correctedStats;
+  }
+
   public void setRecordLength(int recordLength) {
     this.recordLength = recordLength;
   }
@@ -74,7 +111,10 @@ public class IntensityScores implements Serializable {
   }
 
   public IntensityDist getAverageCorrectedIntensityDist() {
-    IntensityDist iDistAvg = new IntensityDist();
+    if (correctedStats != null) {
+      return averageDist(CI_CHANNEL_FIRST, Constants.METRIC_VAR_ACI_LABELS);
+    }
+    IntensityDist iDistAvg = new IntensityDist(Constants.METRIC_VAR_ACI_LABELS);
 
     // Lane -> CycleMap
     for (int lane : iScores.keySet()) {
@@ -82,8 +122,10 @@ public class IntensityScores implements Serializable {
       // Cycle -> IntensityMap
       for (int cycle : laneScores.keySet()) {
         IntensityMap qmap = laneScores.get(cycle);
-        Map<String, MutableInt> iMapMAvg = qmap.getCycleAverageInt();
-        iDistAvg.setIntensity(lane, cycle, iMapMAvg);
+        int[] avg = qmap.getCycleAverageInt();
+        for (Channel ch : Channel.BASES) {
+          iDistAvg.setIntensity(lane, cycle, ch, avg[ch.ordinal()]);
+        }
       }
     }
 
@@ -91,7 +133,10 @@ public class IntensityScores implements Serializable {
   }
 
   public IntensityDist getCalledClustersAverageCorrectedIntensityDist() {
-    IntensityDist iDistAvgCC = new IntensityDist();
+    if (correctedStats != null) {
+      return averageDist(CI_CALLED_FIRST, Constants.METRIC_VAR_ACICC_LABELS);
+    }
+    IntensityDist iDistAvgCC = new IntensityDist(Constants.METRIC_VAR_ACICC_LABELS);
 
     // Lane -> CycleMap
     for (int lane : iScores.keySet()) {
@@ -99,8 +144,10 @@ public class IntensityScores implements Serializable {
       // Cycle -> IntensityMap
       for (int cycle : laneScores.keySet()) {
         IntensityMap qmap = laneScores.get(cycle);
-        Map<String, MutableInt> iMapMAvgCC = qmap.getCycleAverageCCInt();
-        iDistAvgCC.setIntensity(lane, cycle, iMapMAvgCC);
+        int[] avg = qmap.getCycleAverageCCInt();
+        for (Channel ch : Channel.BASES) {
+          iDistAvgCC.setIntensity(lane, cycle, ch, avg[ch.ordinal()]);
+        }
       }
     }
 
@@ -108,7 +155,10 @@ public class IntensityScores implements Serializable {
   }
   
   public IntensityDist getRawIntensityDist(){
-    IntensityDist iDistRaw = new IntensityDist();
+    if (records != null) {
+      return records.getRawIntensityDist();
+    }
+    IntensityDist iDistRaw = new IntensityDist(Constants.METRIC_EX_RAWINT_LABELS);
 
     // Lane -> CycleMap
     for (int lane : iScores.keySet()) {
@@ -116,11 +166,33 @@ public class IntensityScores implements Serializable {
       // Cycle -> IntensityMap
       for (int cycle : laneScores.keySet()) {
         IntensityMap qmap = laneScores.get(cycle);
-        Map<String, MutableInt> iMapMAvg = qmap.getCycleAverageRawInt();
-        iDistRaw.setIntensity(lane, cycle, iMapMAvg);
+        int[] avg = qmap.getCycleAverageRawInt();
+        for (Channel ch : Channel.BASES) {
+          iDistRaw.setIntensity(lane, cycle, ch, avg[ch.ordinal()]);
+        }
       }
     }
 
     return iDistRaw;
   }
+
+  // Tile average of the four channel slots starting at first, per lane and cycle.
+  private IntensityDist averageDist(int first, String[] keys) {
+    if (correctedStats.isEmpty()) {
+      return new IntensityDist(keys);
+    }
+    int[] lanes = correctedStats.getLanes();
+    int[] cycles = correctedStats.getCycles();
+    IntensityDist iDistAvg = new IntensityDist(keys, lanes[lanes.length - 1], cycles[cycles.length - 1]);
+
+    for (int cell = 0; cell < correctedStats.getNumCells(); cell++) {
+      for (int ch = 0; ch < keys.length; ch++) {
+        // Integer average, as MutableInt.avg() computes it.
+        int avg = (int) correctedStats.getSum(cell, first + ch) / correctedStats.getCount(cell);
+        iDistAvg.setIntensity(correctedStats.getLane(cell), correctedStats.getCycle(cell), ch, avg);
+      }
+    }
+
+    return iDistAvg;
+  }
 }
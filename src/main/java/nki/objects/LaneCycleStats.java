@@ -0,0 +1,286 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.objects;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Running statistics per (lane, cycle) over the tile records of an InterOp
+ * file. Every record adds one value for each of its numValues slots; per
+ * cell and slot the count, sum, min, max and sum of squared deviations are
+ * kept, so averages over the tiles are lookups instead of walks over all
+ * records. Records are expected once per (lane, tile, cycle), as they are
+ * written by the instrument.
+ */
+public class LaneCycleStats implements Serializable {
+
+  public static final long serialVersionUID = 42L;
+  private static final int INITIAL_CELLS = 256;
+
+  private final int numValues;
+  private int numCells = 0;
+  private int[] lanes = new int[INITIAL_CELLS];
+  private int[] cycles = new int[INITIAL_CELLS];
+  private int[] counts = new int[INITIAL_CELLS];
+  // Slot v of cell c is at index c * numValues + v.
+  private double[] sums;
+  private double[] m2s;
+  private double[] mins;
+  private double[] maxs;
+  private RecordIndex index = new RecordIndex(INITIAL_CELLS);
+
+  public LaneCycleStats(int numValues) {
+    this.numValues = numValues;
+    sums = new double[INITIAL_CELLS * numValues];
+    m2s = new double[INITIAL_CELLS * numValues];
+    mins = new double[INITIAL_CELLS * numValues];
+    maxs = new double[INITIAL_CELLS * numValues];
+  }
+
+  public int getNumValues() {
+    return numValues;
+  }
+
+  public boolean isEmpty() {
+    return numCells == 0;
+  }
+
+  public int getNumCells() {
+    return numCells;
+  }
+
+  public int getLane(int cell) {
+    return lanes[cell];
+  }
+
+  public int getCycle(int cell) {
+    return cycles[cell];
+  }
+
+  // Cell number of (lane, cycle), or -1.
+  public int findCell(int lane, int cycle) {
+    return index.get(lane, 0, cycle);
+  }
+
+  // Number of records (tiles) added to the cell.
+  public int getCount(int cell) {
+    return counts[cell];
+  }
+
+  public double getSum(int cell, int value) {
+    return sums[cell * numValues + value];
+  }
+
+  public double getMean(int cell, int value) {
+    return sums[cell * numValues + value] / counts[cell];
+  }
+
+  public double getMin(int cell, int value) {
+    return mins[cell * numValues + value];
+  }
+
+  public double getMax(int cell, int value) {
+    return maxs[cell * numValues + value];
+  }
+
+  // Sample variance over the tiles of the cell.
+  public double getVariance(int cell, int value) {
+    if (counts[cell] < 2) {
+      return 0;
+    }
+    return m2s[cell * numValues + value] / (counts[cell] - 1);
+  }
+
+  /*
+   * Add the values of one tile record. values must hold numValues entries.
+   */
+  public void add(int lane, int cycle, double[] values) {
+    int cell = cellFor(lane, cycle);
+    int n = ++counts[cell];
+    int base = cell * numValues;
+
+    for (int v = 0; v < numValues; v++) {
+      addValue(base + v, n, values[v]);
+    }
+  }
+
+  /*
+   * Add the values of one tile record, read from values[offset] up to
+   * values[offset + numValues - 1].
+   */
+  public void add(int lane, int cycle, float[] values, int offset) {
+    int cell = cellFor(lane, cycle);
+    int n = ++counts[cell];
+    int base = cell * numValues;
+
+    for (int v = 0; v < numValues; v++) {
+      addValue(base + v, n, values[offset + v]);
+    }
+  }
+
+  // Add x to slot i of a cell that now counts n records.
+  private void addValue(int i, int n, double x) {
+    // Welford update on the exact running sum.
+    double delta = x - (n > 1 ? sums[i] / (n - 1) : 0);
+    sums[i] += x;
+    m2s[i] += delta * (x - sums[i] / n);
+    if (n == 1) {
+      mins[i] = x;
+      maxs[i] = x;
+    }
+    else {
+      if (x < mins[i]) {
+        mins[i] = x;
+      }
+      if (x > maxs[i]) {
+        maxs[i] = x;
+      }
+    }
+  }
+
+  /*
+   * Add all cells of other, as if its records were added to this object.
+   */
+  public void merge(LaneCycleStats other) {
+    for (int o = 0; o < other.numCells; o++) {
+      int cell = cellFor(other.lanes[o], other.cycles[o]);
+      int na = counts[cell];
+      int nb = other.counts[o];
+      int n = na + nb;
+      int base = cell * numValues;
+      int oBase = o * numValues;
+
+      for (int v = 0; v < numValues; v++) {
+        int i = base + v;
+        int j = oBase + v;
+        if (na == 0) {
+          mins[i] = other.mins[j];
+          maxs[i] = other.maxs[j];
+        }
+        else {
+          double delta = other.sums[j] / nb - sums[i] / na;
+          m2s[i] += delta * delta * na * nb / n;
+          mins[i] = Math.min(mins[i], other.mins[j]);
+          maxs[i] = Math.max(maxs[i], other.maxs[j]);
+        }
+        m2s[i] += other.m2s[j];
+        sums[i] += other.sums[j];
+      }
+      counts[cell] = n;
+    }
+  }
+
+  // Snapshot that is not affected by records added later, without spare capacity.
+  public LaneCycleStats copy() {
+    LaneCycleStats c = new LaneCycleStats(numValues);
+    int capacity = Math.max(numCells, 1);
+    c.numCells = numCells;
+    c.lanes = Arrays.copyOf(lanes, capacity);
+    c.cycles = Arrays.copyOf(cycles, capacity);
+    c.counts = Arrays.copyOf(counts, capacity);
+    c.sums = Arrays.copyOf(sums, capacity * numValues);
+    c.m2s = Arrays.copyOf(m2s, capacity * numValues);
+    c.mins = Arrays.copyOf(mins, capacity * numValues);
+    c.maxs = Arrays.copyOf(maxs, capacity * numValues);
+    for (int cell = 0; cell < numCells; cell++) {
+      c.index.put(lanes[cell], 0, cycles[cell], cell);
+    }
+    return c;
+  }
+
+  // Sorted lanes with at least one record.
+  public int[] getLanes() {
+    return distinct(lanes);
+  }
+
+  // Sorted cycles with at least one record.
+  public int[] getCycles() {
+    return distinct(cycles);
+  }
+
+  public double getLaneMean(int lane, int value) {
+    double[] m = moments(lanes, lane, value);
+    return m[1];
+  }
+
+  // Sample standard deviation over all tiles and cycles of the lane.
+  public double getLaneSD(int lane, int value) {
+    double[] m = moments(lanes, lane, value);
+    return Math.sqrt(m[2] / (m[0] - 1));
+  }
+
+  public double getCycleMean(int cycle, int value) {
+    double[] m = moments(cycles, cycle, value);
+    return m[1];
+  }
+
+  /*
+   * Combine the cells whose key (lane or cycle) matches into
+   * { count, mean, sum of squared deviations }.
+   */
+  private double[] moments(int[] keys, int key, int value) {
+    double n = 0;
+    double mean = 0;
+    double m2 = 0;
+
+    for (int cell = 0; cell < numCells; cell++) {
+      if (keys[cell] != key) {
+        continue;
+      }
+      int i = cell * numValues + value;
+      double nb = counts[cell];
+      double meanB = sums[i] / nb;
+      double delta = meanB - mean;
+      double total = n + nb;
+      mean += delta * nb / total;
+      m2 += m2s[i] + delta * delta * n * nb / total;
+      n = total;
+    }
+    return new double[]{n, n == 0 ? Double.NaN : mean, m2};
+  }
+
+  private int[] distinct(int[] keys) {
+    int[] sorted = Arrays.copyOf(keys, numCells);
+    Arrays.sort(sorted);
+    int size = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (size == 0 || sorted[size - 1] != sorted[i]) {
+        sorted[size++] = sorted[i];
+      }
+    }
+    return Arrays.copyOf(sorted, size);
+  }
+
+  private int cellFor(int lane, int cycle) {
+    int cell = index.get(lane, 0, cycle);
+    if (cell != -1) {
+      return cell;
+    }
+
+    if (numCells == lanes.length) {
+      grow();
+    }
+    cell = numCells++;
+    lanes[cell] = lane;
+    cycles[cell] = cycle;
+    index.put(lane, 0, cycle, cell);
+    return cell;
+  }
+
+  private void grow() {
+    int capacity = lanes.length * 2;
+    lanes = Arrays.copyOf(lanes, capacity);
+    cycles = Arrays.copyOf(cycles, capacity);
+    counts = Arrays.copyOf(counts, capacity);
+    sums = Arrays.copyOf(sums, capacity * numValues);
+    m2s = Arrays.copyOf(m2s, capacity * numValues);
+    mins = Arrays.copyOf(mins, capacity * numValues);
+    maxs = Arrays.copyOf(maxs, capacity * numValues);
+  }
+}
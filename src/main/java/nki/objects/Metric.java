@@ -8,20 +8,41 @@
 package nki.objects;
 
 import java.io.*;
-import java.util.*;
+import java.util.List;
 
-import nki.util.ArrayUtils;
+import nki.util.StreamingStats;
 
 public class Metric implements Serializable {
 
   public static final long serialVersionUID = 42L;
   private Double metric = 0.0d;
   private int tiles = 0;
-  protected List<Double> tileScores = new ArrayList<>();
+  protected StreamingStats tileStats;
+
+  public Metric() {
+    this(false);
+  }
+
+  /*
+   * With exact set all tile scores are kept, otherwise quantiles are
+   * estimated once there are more than StreamingStats.DEFAULT_EXACT_LIMIT.
+   */
+  public Metric(boolean exact) {
+    tileStats = exact ? new StreamingStats(Integer.MAX_VALUE) : new StreamingStats();
+  }
+
+  // A copy that is not affected by scores added to this Metric later on.
+  public Metric copy() {
+    Metric copy = new Metric();
+    copy.metric = metric;
+    copy.tiles = tiles;
+    copy.tileStats = new StreamingStats(tileStats);
+    return copy;
+  }
 
   public void setMetric(Double metricScore) {
     this.metric = metricScore;
-    this.tileScores.add(metricScore);
+    this.tileStats.add(metricScore);
     this.incrementTiles();
   }
 
@@ -38,13 +59,13 @@ public class Metric implements Serializable {
     return tiles;
   }
 
-  public List<Double> getTileScores() {
-    return tileScores;
+  public StreamingStats getTileStats() {
+    return tileStats;
   }
 
   public void incrementMetric(Double metricScore) {
     this.metric += metricScore;
-    this.tileScores.add(metricScore);
+    this.tileStats.add(metricScore);
     this.incrementTiles();
   }
 
@@ -58,34 +79,57 @@ public class Metric implements Serializable {
   }
 
   public Double calcSum() {
-    return ArrayUtils.sum(tileScores);
+    return tileStats.getSum();
   }
 
   public double calcQ1() {
-    return ArrayUtils.quartile(tileScores, 25);
+    return tileStats.getQuantile(25);
   }
 
   public double calcQ3() {
-    return ArrayUtils.quartile(tileScores, 75);
+    return tileStats.getQuantile(75);
   }
 
   public double calcMean() {
-    return ArrayUtils.mean(tileScores);
+    return tileStats.getMean();
   }
 
   public double calcMedian() {
-    return ArrayUtils.median(tileScores);
+    return tileStats.getMedian();
   }
 
   public double calcMax() {
-    return ArrayUtils.max(tileScores);
+    return tileStats.getMax();
   }
 
   public double calcMin() {
-    return ArrayUtils.min(tileScores);
+    return tileStats.getMin();
   }
 
   public double calcSD() {
-    return ArrayUtils.sd(tileScores);
+    return tileStats.getSD();
+  }
+
+  /*
+   * Metrics stored before the streaming statistics kept the tile scores in
+   * a list (tileScores); those are added to new statistics.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    Double value = (Double) fields.get("metric", null);
+    metric = value != null ? value : 0.0d;
+    tiles = fields.get("tiles", 0);
+    tileStats = (StreamingStats) fields.get("tileStats", null);
+    if (tileStats == null) {
+      tileStats = new StreamingStats();
+      if (fields.getObjectStreamClass().getField("tileScores") != null) {
+        List<?> tileScores = (List<?>) fields.get("tileScores", null);
+        if (tileScores != null) {
+          for (Object score : tileScores) {
+            tileStats.add((Double) score);
+          }
+        }
+      }
+    }
   }
 }
@@ -43,6 +43,12 @@ public class MutableDouble implements Serializable {
     return val / numTiles;
   }
 
+  // Store an average that was computed elsewhere, as avg() would leave it.
+  public void setAvg(double total, int numTiles) {
+    this.numTiles = numTiles;
+    this.val = total / numTiles;
+  }
+
   public String toString() {
     return val + "";
   }
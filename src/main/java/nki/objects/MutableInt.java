@@ -43,6 +43,12 @@ public class MutableInt implements Serializable {
     return val / numTiles;
   }
 
+  // Store an average that was computed elsewhere, as avg() would leave it.
+  public void setAvg(int total, int numTiles) {
+    this.numTiles = numTiles;
+    this.val = total / numTiles;
+  }
+
   public String toString() {
     return val + "";
   }
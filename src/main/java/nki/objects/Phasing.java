@@ -8,19 +8,32 @@
 package nki.objects;
 
 import java.io.*;
-import java.util.*;
+import java.util.List;
 
-import nki.util.ArrayUtils;
+import nki.util.StreamingStats;
 
 public class Phasing implements Serializable {
 
   public static final long serialVersionUID = 42L;
   private Double phasing = 0.0d;
   private int tiles = 0;
-  private List<Double> tileScores = new ArrayList<>();
+  private StreamingStats tileStats;
+
+  public Phasing() {
+    this(false);
+  }
+
+  /*
+   * With exact set all tile scores are kept, otherwise quantiles are
+   * estimated once there are more than StreamingStats.DEFAULT_EXACT_LIMIT.
+   */
+  public Phasing(boolean exact) {
+    tileStats = exact ? new StreamingStats(Integer.MAX_VALUE) : new StreamingStats();
+  }
 
   public void setPhasing(Double phasingScore) {
     this.phasing = phasingScore;
+    this.tileStats.add(phasingScore);
     this.incrementTiles();
   }
 
@@ -38,6 +51,7 @@ public class Phasing implements Serializable {
 
   public void incrementPhasing(Double phasingScore) {
     this.phasing += phasingScore;
+    this.tileStats.add(phasingScore);
     this.incrementTiles();
   }
 
@@ -45,23 +59,50 @@ public class Phasing implements Serializable {
     this.tiles += 1;
   }
 
+  public StreamingStats getTileStats() {
+    return tileStats;
+  }
+
   public Double getLaneAvg() {
     return (phasing / tiles);
   }
 
   public Double calcSum() {
-    return ArrayUtils.sum(tileScores);
+    return tileStats.getSum();
   }
 
   public double calcMean() {
-    return ArrayUtils.mean(tileScores);
+    return tileStats.getMean();
   }
 
   public double calcMedian() {
-    return ArrayUtils.median(tileScores);
+    return tileStats.getMedian();
   }
 
   public double calcSD() {
-    return ArrayUtils.sd(tileScores);
+    return tileStats.getSD();
+  }
+
+  /*
+   * Phasings stored before the streaming statistics kept the tile scores in
+   * a list (tileScores); those are added to new statistics.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    Double value = (Double) fields.get("phasing", null);
+    phasing = value != null ? value : 0.0d;
+    tiles = fields.get("tiles", 0);
+    tileStats = (StreamingStats) fields.get("tileStats", null);
+    if (tileStats == null) {
+      tileStats = new StreamingStats();
+      if (fields.getObjectStreamClass().getField("tileScores") != null) {
+        List<?> tileScores = (List<?>) fields.get("tileScores", null);
+        if (tileScores != null) {
+          for (Object score : tileScores) {
+            tileStats.add((Double) score);
+          }
+        }
+      }
+    }
   }
 }
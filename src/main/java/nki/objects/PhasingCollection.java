@@ -31,6 +31,12 @@ public class PhasingCollection implements Serializable {
   public Map<Integer, Map<Integer, Phasing>> phasingPerLane = new HashMap<>();
 
   public String type = "";
+  // Keep all tile values of new lanes and reads, see Phasing(boolean).
+  private boolean exact = false;
+
+  public void setExact(boolean exact) {
+    this.exact = exact;
+  }
 
   public void setPhasing(int lane, int readNum, Double phasingScore) {
     Map<Integer, Phasing> lanePhaseMap;
@@ -41,13 +47,13 @@ public class PhasingCollection implements Serializable {
     if (lanePhaseMap != null) {
       m = lanePhaseMap.get(readNum);
       if (m == null) {
-        m = new Phasing();
+        m = new Phasing(exact);
       }
       m.incrementPhasing(phasingScore);
     }
     else {
       lanePhaseMap = new HashMap<>();
-      m = new Phasing();
+      m = new Phasing(exact);
       m.incrementPhasing(phasingScore);
     }
 
@@ -0,0 +1,56 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.objects;
+
+/**
+ * Receives every QualityMetrics record while it is being decoded.
+ * Subclasses build their aggregate on the fly, so the decoded records do not
+ * have to be retained to compute it afterwards. Large files are decoded in
+ * parallel chunks, so every accumulator can be split into partial
+ * accumulators and merged again.
+ */
+public abstract class QScoreAccumulator {
+
+  /*
+   * Add a decoded record. scores[0] holds the number of clusters with Q1.
+   * The array is reused by the parser and must not be retained.
+   */
+  public abstract void addRecord(int lane, int tile, int cycle, long[] scores);
+
+  /*
+   * Discard everything accumulated so far. Called when the source is decoded
+   * again from the start.
+   */
+  public abstract void reset();
+
+  /*
+   * Called when decoding starts at the beginning of the source, once its
+   * header has been read. binning is empty and holds the QScore bins of the
+   * source, if any; records are still passed with a count per QScore.
+   */
+  public void setBinning(QualityScores binning) {
+  }
+
+  /*
+   * An empty accumulator of the same kind, used to accumulate a chunk of
+   * records that is decoded in parallel.
+   */
+  public abstract QScoreAccumulator newPartial();
+
+  /*
+   * False when partial holds records that were accumulated here before; the
+   * chunk is then decoded again serially instead of merged.
+   */
+  public abstract boolean canMerge(QScoreAccumulator partial);
+
+  /*
+   * Add the records accumulated by a partial accumulator from newPartial().
+   * The records of partial directly follow the records added so far.
+   */
+  public abstract void merge(QScoreAccumulator partial);
+}
@@ -11,8 +11,6 @@ import java.io.*;
 import java.util.*;
 import java.text.*;
 
-import nki.objects.MutableLong;
-
 import org.w3c.dom.*;
 
 import javax.xml.parsers.*;
@@ -20,38 +18,94 @@ import javax.xml.transform.*;
 import javax.xml.transform.dom.*;
 import javax.xml.transform.stream.*;
 
+/**
+ * Number of clusters per QScore. The counts are kept in an array indexed by
+ * QScore; the cumulative counts used by aboveQ are computed once after a
+ * change, so repeated aboveQ calls are lookups.
+ */
 public class QScoreDist implements Serializable {
 
   public static final long serialVersionUID = 42L;
 
-  // QualityMap - Integer scores
-  private Map<Integer, MutableLong> qScoreDist = new TreeMap<>();
+  // QScore - Number of clusters
+  private long[] counts = new long[0];
+  // QScores that were set, including those with 0 clusters.
+  private boolean[] scored = new boolean[0];
+  // Clusters with QScore >= q at index q; null after a change.
+  private transient long[] cumulative;
 
   private long totalClusters = 0;
 
-  public MutableLong getScore(int qScore) {
-    return qScoreDist.get(qScore);
+  // Number of clusters with qScore, 0 if it was not set.
+  public long getClusters(int qScore) {
+    return qScore >= 0 && qScore < counts.length ? counts[qScore] : 0;
+  }
+
+  public boolean hasScore(int qScore) {
+    return qScore >= 0 && qScore < scored.length && scored[qScore];
+  }
+
+  // Highest QScore that was set, 0 if none.
+  public int getMaxQScore() {
+    for (int q = scored.length - 1; q > 0; q--) {
+      if (scored[q]) {
+        return q;
+      }
+    }
+    return 0;
   }
 
   public void setScore(int qScore, long metric) {
-    MutableLong val = qScoreDist.get(qScore);
-    if (val == null) {
-      val = new MutableLong();
-      val.add(metric);
-      qScoreDist.put(qScore, val);
+    ensureCapacity(qScore + 1);
+    counts[qScore] += metric;
+    scored[qScore] = true;
+    cumulative = null;
+    addTotalClusters(metric); // append to total
+  }
+
+  /*
+   * Add the clusters of other, e.g. to combine the distributions of lanes.
+   */
+  public void merge(QScoreDist other) {
+    ensureCapacity(other.counts.length);
+    for (int q = 0; q < other.counts.length; q++) {
+      counts[q] += other.counts[q];
+      scored[q] |= other.scored[q];
     }
-    else {
-      qScoreDist.get(qScore).add(metric);
+    cumulative = null;
+    addTotalClusters(other.totalClusters);
+  }
+
+  /*
+   * Copy with the clusters multiplied by factor, e.g. to scale a distribution
+   * of sampled tiles to all tiles.
+   */
+  public QScoreDist scale(double factor) {
+    QScoreDist scaled = new QScoreDist();
+    scaled.counts = new long[counts.length];
+    scaled.scored = Arrays.copyOf(scored, scored.length);
+    for (int q = 0; q < counts.length; q++) {
+      scaled.counts[q] = Math.round(counts[q] * factor);
+    }
+    scaled.totalClusters = Math.round(totalClusters * factor);
+    return scaled;
+  }
+
+  private void ensureCapacity(int length) {
+    if (counts.length < length) {
+      counts = Arrays.copyOf(counts, length);
+      scored = Arrays.copyOf(scored, length);
     }
-    addTotalClusters(metric); // append to total
   }
 
   public Element toXML(Element sumXml, Document xmlDoc) {
-    for (int scoreVal : qScoreDist.keySet()) {
+    for (int scoreVal = 0; scoreVal < counts.length; scoreVal++) {
+      if (!scored[scoreVal]) {
+        continue;
+      }
       Element scoreEle = xmlDoc.createElement("QScore");
       scoreEle.setAttribute("score", scoreVal + "");
-      MutableLong metric = this.getScore(scoreVal);
-      scoreEle.setAttribute("clusters", metric.get() + "");
+      scoreEle.setAttribute("clusters", counts[scoreVal] + "");
       sumXml.appendChild(scoreEle);
     }
 
@@ -61,34 +115,36 @@ public class QScoreDist implements Serializable {
   public String toTab() {
     String out = "";
 
-    for (int score : qScoreDist.keySet()) {
-      MutableLong metric = this.getScore(score);
-      out += score + "\t" + metric.get() + "\n";
+    for (int score = 0; score < counts.length; score++) {
+      if (scored[score]) {
+        out += score + "\t" + counts[score] + "\n";
+      }
     }
 
     return out;
   }
 
   public double aboveQ(int qscore) {
-    double aboveClus = 0;
-    double totalClus = 0;
-
-    for (int score : qScoreDist.keySet()) {
-      MutableLong metric = this.getScore(score);
-      if (score >= qscore) {
-        aboveClus += (double) metric.get();
-      }
-      totalClus += (double) metric.get();
+    long[] cum = cumulative();
+    double totalClus = cum[0];
+    if (totalClus == 0) {
+      return -1d;
     }
 
-    if (totalClus != 0) {
-      return (aboveClus / totalClus) * 100;
-    }
-    return -1d;
+    double aboveClus = qscore <= 0 ? totalClus : qscore < cum.length ? cum[qscore] : 0;
+    return (aboveClus / totalClus) * 100;
   }
 
-  public Map<Integer, MutableLong> getQualityScoreDist() {
-    return qScoreDist;
+  private long[] cumulative() {
+    long[] cum = cumulative;
+    if (cum == null) {
+      cum = new long[counts.length + 1];
+      for (int q = counts.length - 1; q >= 0; q--) {
+        cum[q] = cum[q + 1] + counts[q];
+      }
+      cumulative = cum;
+    }
+    return cum;
   }
 
   public long getTotalClusters() {
@@ -98,4 +154,30 @@ public class QScoreDist implements Serializable {
   public void addTotalClusters(long metric) {
     this.totalClusters += metric;
   }
+
+  /*
+   * Distributions stored before the count arrays kept a map of QScore to
+   * MutableLong (qScoreDist); its counts are copied into the arrays.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    totalClusters = fields.get("totalClusters", 0L);
+    counts = (long[]) fields.get("counts", null);
+    scored = (boolean[]) fields.get("scored", null);
+    if (counts == null || scored == null) {
+      counts = new long[0];
+      scored = new boolean[0];
+      if (fields.getObjectStreamClass().getField("qScoreDist") != null) {
+        Map<?, ?> qScoreDist = (Map<?, ?>) fields.get("qScoreDist", null);
+        if (qScoreDist != null) {
+          for (Map.Entry<?, ?> entry : qScoreDist.entrySet()) {
+            int qScore = (Integer) entry.getKey();
+            ensureCapacity(qScore + 1);
+            counts[qScore] = ((MutableLong) entry.getValue()).get();
+            scored[qScore] = true;
+          }
+        }
+      }
+    }
+  }
 }
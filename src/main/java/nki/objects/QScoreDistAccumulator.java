@@ -0,0 +1,272 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.objects;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds the combined, per lane and per cycle QScore distributions in a single
+ * pass over the QualityMetrics records. Produces the same results as
+ * QualityScores.getQScoreDistribution(), getQScoreDistributionByLane() and
+ * getQScoreDistributionByCycle().
+ *
+ * The %>Q30 of every record goes straight into the Metric of its cycle, so
+ * besides the distributions only one bit per (lane, tile, cycle) is kept, to
+ * recognize records that were accumulated before. The histograms of the
+ * records are not retained, so a repeated record can not replace the
+ * earlier one; it is skipped.
+ *
+ * The counts are kept per slot, as in QualityScores: one slot per QScore, or
+ * one per bin when the source applied QScore binning (see setBinning()). The
+ * distributions of binned sources then only hold the QScores of the bins.
+ */
+public class QScoreDistAccumulator extends QScoreAccumulator {
+
+  private final int numQScores;
+  private int numSlots;
+  // QScore of every slot and slot of every QScore (1 based).
+  private int[] slotScores;
+  private int[] qScoreSlots;
+  // Partial accumulators keep the %>Q30 of their records until they are merged.
+  private final boolean partial;
+  private long[] totals;
+  // Lane - Summed scores
+  private Map<Integer, long[]> laneTotals = new TreeMap<>();
+  // Cycle - %>Q30 of the (lane, tile) records of that cycle
+  private Map<Integer, Metric> cycleMetrics = new TreeMap<>();
+  // Cycle - bit per (lane, tile) that has been accumulated, numbered by laneTileSlots.
+  private Map<Integer, BitSet> cycleRecords = new HashMap<>();
+  private Map<Integer, Integer> laneTileSlots = new HashMap<>();
+
+  // Records of a partial accumulator, in order.
+  private int numRecords = 0;
+  private int[] lanes;
+  private int[] tiles;
+  private int[] cycles;
+  private double[] percents;
+
+  public QScoreDistAccumulator() {
+    this(QualityScores.DEFAULT_NUM_QSCORES);
+  }
+
+  public QScoreDistAccumulator(int numQScores) {
+    this(numQScores, false);
+  }
+
+  private QScoreDistAccumulator(int numQScores, boolean partial) {
+    this.numQScores = numQScores;
+    this.partial = partial;
+    setBinning(new QualityScores(numQScores));
+    if (partial) {
+      lanes = new int[64];
+      tiles = new int[64];
+      cycles = new int[64];
+      percents = new double[64];
+    }
+  }
+
+  @Override
+  public void addRecord(int lane, int tile, int cycle, long[] scores) {
+    if (!markRecord(lane, tile, cycle)) {
+      return;
+    }
+
+    long[] lt = laneTotals.get(lane);
+    if (lt == null) {
+      lt = new long[numSlots];
+      laneTotals.put(lane, lt);
+    }
+
+    double aboveClus = 0;
+    double totalClus = 0;
+    for (int q = 1; q <= numQScores; q++) {
+      long metric = scores[q - 1];
+      int slot = qScoreSlots[q];
+      totals[slot] += metric;
+      lt[slot] += metric;
+      if (slotScores[slot] > 30) {
+        aboveClus += metric;
+      }
+      totalClus += metric;
+    }
+
+    double percent = 0d;
+    if (totalClus != 0) {
+      percent = (aboveClus / totalClus) * 100;
+    }
+    addCyclePercent(lane, tile, cycle, percent);
+  }
+
+  // Register (lane, tile, cycle); false when it was accumulated before.
+  private boolean markRecord(int lane, int tile, int cycle) {
+    int laneTile = (lane << 16) | (tile & 0xFFFF);
+    Integer slot = laneTileSlots.get(laneTile);
+    if (slot == null) {
+      slot = laneTileSlots.size();
+      laneTileSlots.put(laneTile, slot);
+    }
+
+    BitSet seen = cycleRecords.get(cycle);
+    if (seen == null) {
+      seen = new BitSet();
+      cycleRecords.put(cycle, seen);
+    }
+    if (seen.get(slot)) {
+      return false;
+    }
+    seen.set(slot);
+    return true;
+  }
+
+  private boolean isAccumulated(int lane, int tile, int cycle) {
+    Integer slot = laneTileSlots.get((lane << 16) | (tile & 0xFFFF));
+    BitSet seen = cycleRecords.get(cycle);
+    return slot != null && seen != null && seen.get(slot);
+  }
+
+  private void addCyclePercent(int lane, int tile, int cycle, double percent) {
+    if (!partial) {
+      Metric m = cycleMetrics.get(cycle);
+      if (m == null) {
+        m = new Metric();
+        cycleMetrics.put(cycle, m);
+      }
+      m.incrementMetric(percent);
+      return;
+    }
+
+    if (numRecords == percents.length) {
+      int capacity = numRecords * 2;
+      lanes = Arrays.copyOf(lanes, capacity);
+      tiles = Arrays.copyOf(tiles, capacity);
+      cycles = Arrays.copyOf(cycles, capacity);
+      percents = Arrays.copyOf(percents, capacity);
+    }
+    lanes[numRecords] = lane;
+    tiles[numRecords] = tile;
+    cycles[numRecords] = cycle;
+    percents[numRecords] = percent;
+    numRecords++;
+  }
+
+  /*
+   * Keep a count per slot of binning; anything accumulated so far is
+   * discarded.
+   */
+  @Override
+  public void setBinning(QualityScores binning) {
+    numSlots = binning.getNumSlots();
+    slotScores = new int[numSlots];
+    for (int slot = 0; slot < numSlots; slot++) {
+      slotScores[slot] = binning.getSlotScore(slot);
+    }
+    qScoreSlots = new int[numQScores + 1];
+    for (int q = 1; q <= numQScores; q++) {
+      qScoreSlots[q] = binning.getSlot(q);
+    }
+    reset();
+  }
+
+  @Override
+  public void reset() {
+    totals = new long[numSlots];
+    laneTotals.clear();
+    cycleMetrics.clear();
+    cycleRecords.clear();
+    laneTileSlots.clear();
+    numRecords = 0;
+  }
+
+  @Override
+  public QScoreAccumulator newPartial() {
+    QScoreDistAccumulator other = new QScoreDistAccumulator(numQScores, true);
+    other.numSlots = numSlots;
+    other.slotScores = slotScores;
+    other.qScoreSlots = qScoreSlots;
+    other.totals = new long[numSlots];
+    return other;
+  }
+
+  // False when partial holds a record that was accumulated here before.
+  @Override
+  public boolean canMerge(QScoreAccumulator partial) {
+    QScoreDistAccumulator other = (QScoreDistAccumulator) partial;
+    for (int i = 0; i < other.numRecords; i++) {
+      if (isAccumulated(other.lanes[i], other.tiles[i], other.cycles[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void merge(QScoreAccumulator partial) {
+    QScoreDistAccumulator other = (QScoreDistAccumulator) partial;
+    for (int slot = 0; slot < numSlots; slot++) {
+      totals[slot] += other.totals[slot];
+    }
+
+    for (Map.Entry<Integer, long[]> entry : other.laneTotals.entrySet()) {
+      long[] lt = laneTotals.get(entry.getKey());
+      if (lt == null) {
+        laneTotals.put(entry.getKey(), entry.getValue().clone());
+      }
+      else {
+        for (int slot = 0; slot < numSlots; slot++) {
+          lt[slot] += entry.getValue()[slot];
+        }
+      }
+    }
+
+    for (int i = 0; i < other.numRecords; i++) {
+      markRecord(other.lanes[i], other.tiles[i], other.cycles[i]);
+      addCyclePercent(other.lanes[i], other.tiles[i], other.cycles[i], other.percents[i]);
+    }
+  }
+
+  public boolean isEmpty() {
+    return laneTotals.isEmpty();
+  }
+
+  // Binned distributions only hold the QScores of the bins.
+  private QScoreDist toQScoreDist(long[] scores) {
+    QScoreDist qScoreDist = new QScoreDist();
+    for (int slot = 0; slot < numSlots; slot++) {
+      qScoreDist.setScore(slotScores[slot], scores[slot]);
+    }
+    return qScoreDist;
+  }
+
+  // New distribution objects are returned, decoding more records does not alter them.
+  public QScoreDist getQScoreDistribution() {
+    if (isEmpty()) {
+      return new QScoreDist();
+    }
+    return toQScoreDist(totals);
+  }
+
+  public Map<Integer, QScoreDist> getQScoreDistributionByLane() {
+    Map<Integer, QScoreDist> laneDist = new TreeMap<>();
+    for (Map.Entry<Integer, long[]> entry : laneTotals.entrySet()) {
+      laneDist.put(entry.getKey(), toQScoreDist(entry.getValue()));
+    }
+    return laneDist;
+  }
+
+  public Map<Integer, Metric> getQScoreDistributionByCycle() {
+    Map<Integer, Metric> cycleDist = new TreeMap<>();
+    for (Map.Entry<Integer, Metric> entry : cycleMetrics.entrySet()) {
+      cycleDist.put(entry.getKey(), entry.getValue().copy());
+    }
+    return cycleDist;
+  }
+}
@@ -8,19 +8,91 @@
 package nki.objects;
 
 import java.io.*;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.TreeMap;
 
+/**
+ * Number of clusters per QScore for every (lane, tile, cycle) record.
+ * Records are stored in parallel primitive arrays; the histogram of record i
+ * occupies counts[i * numSlots] .. counts[(i + 1) * numSlots - 1].
+ * Records are located through a RecordIndex on (lane, tile, cycle), so no
+ * boxed values are created while parsing.
+ *
+ * Without binning slot q - 1 holds Q q. When the instrument applied QScore
+ * binning there is one slot per bin, holding the clusters of the bin at the
+ * QScore the bin is remapped to.
+ */
 public class QualityScores implements Serializable {
 
   public static final long serialVersionUID = 42L;
+  public static final int DEFAULT_NUM_QSCORES = 50;
+  private static final int INITIAL_CAPACITY = 1024;
+
   public int version;
   public int recordLength;
   public String source;
-  // Lane - QScore - QMap
-  public Map<Integer, Map<Integer, QualityMap>> qScores = new HashMap<>();
-  private QScoreDist qScoreDist = new QScoreDist();
+
+  private int numQScores = DEFAULT_NUM_QSCORES;
+  private int numSlots = DEFAULT_NUM_QSCORES;
+  // QScore of every slot and slot of every QScore; null when not binned.
+  private int[] slotScores;
+  private int[] qScoreSlots;
+  private int numRecords = 0;
+  private int[] lanes = new int[INITIAL_CAPACITY];
+  private int[] tiles = new int[INITIAL_CAPACITY];
+  private int[] cycles = new int[INITIAL_CAPACITY];
+  private long[] counts = new long[INITIAL_CAPACITY * DEFAULT_NUM_QSCORES];
+  private RecordIndex index = new RecordIndex(INITIAL_CAPACITY);
+
+  public QualityScores() {
+  }
+
+  public QualityScores(int numQScores) {
+    this.numQScores = numQScores;
+    this.numSlots = numQScores;
+    this.counts = new long[INITIAL_CAPACITY * numQScores];
+  }
+
+  /*
+   * Binned scores. Bin b holds QScores lowerBounds[b] .. upperBounds[b],
+   * which are all reported as remappedScores[b].
+   */
+  public QualityScores(int[] lowerBounds, int[] upperBounds, int[] remappedScores) {
+    this.numSlots = remappedScores.length;
+    this.slotScores = remappedScores.clone();
+    this.qScoreSlots = new int[numQScores + 1];
+    for (int q = 1; q <= numQScores; q++) {
+      qScoreSlots[q] = binOf(q, lowerBounds, upperBounds, remappedScores);
+    }
+    this.counts = new long[INITIAL_CAPACITY * numSlots];
+  }
+
+  // Bin holding q; QScores outside every bin go to the bin remapped closest to q.
+  private static int binOf(int q, int[] lowerBounds, int[] upperBounds, int[] remappedScores) {
+    int closest = 0;
+    for (int bin = 0; bin < remappedScores.length; bin++) {
+      if (q >= lowerBounds[bin] && q <= upperBounds[bin]) {
+        return bin;
+      }
+      if (Math.abs(remappedScores[bin] - q) < Math.abs(remappedScores[closest] - q)) {
+        closest = bin;
+      }
+    }
+    return closest;
+  }
+
+  // Empty scores with the same QScore bins.
+  public QualityScores emptyCopy() {
+    QualityScores copy = new QualityScores(numQScores);
+    if (slotScores != null) {
+      copy.numSlots = numSlots;
+      copy.slotScores = slotScores;
+      copy.qScoreSlots = qScoreSlots;
+      copy.counts = new long[INITIAL_CAPACITY * numSlots];
+    }
+    return copy;
+  }
 
   public void setVersion(int version) {
     this.version = version;
@@ -31,7 +103,7 @@ public class QualityScores implements Serializable {
   }
 
   public boolean isEmpty() {
-    return qScores.isEmpty();
+    return numRecords == 0;
   }
 
   public void setRecordLength(int recordLength) {
@@ -50,116 +122,202 @@ public class QualityScores implements Serializable {
     return source;
   }
 
-  public void setLane(Map<Integer, QualityMap> content, int lanenr) {
-    Map<Integer, QualityMap> cycleMap = qScores.get(lanenr);
+  public int getNumQScores() {
+    return numQScores;
+  }
+
+  public boolean isBinned() {
+    return slotScores != null;
+  }
+
+  // Number of counts stored per record: the number of bins when binned.
+  public int getNumSlots() {
+    return numSlots;
+  }
+
+  // QScore the clusters of slot are reported at.
+  public int getSlotScore(int slot) {
+    return slotScores == null ? slot + 1 : slotScores[slot];
+  }
+
+  // Slot holding the clusters with QScore qScore (1 based).
+  public int getSlot(int qScore) {
+    return qScoreSlots == null ? qScore - 1 : qScoreSlots[qScore];
+  }
+
+  public long getSlotCount(int record, int slot) {
+    return counts[record * numSlots + slot];
+  }
+
+  public int getNumRecords() {
+    return numRecords;
+  }
+
+  public int getLane(int record) {
+    return lanes[record];
+  }
+
+  public int getTile(int record) {
+    return tiles[record];
+  }
+
+  public int getCycle(int record) {
+    return cycles[record];
+  }
+
+  /*
+   * Number of clusters of the record with QScore qScore (1 based). When
+   * binned only the remapped QScores of the bins have clusters.
+   */
+  public long getCount(int record, int qScore) {
+    if (slotScores == null) {
+      return counts[record * numQScores + qScore - 1];
+    }
+    int slot = qScoreSlots[qScore];
+    return slotScores[slot] == qScore ? counts[record * numSlots + slot] : 0;
+  }
 
-    if (cycleMap == null) {
-      qScores.put(lanenr, content);
+  /*
+   * Store the histogram of a record. scores[0] holds the count for Q1.
+   * When binned the counts are added up per bin.
+   * A record that was stored before for the same lane, tile and cycle is replaced.
+   */
+  public void setScores(int lane, int tile, int cycle, long[] scores) {
+    int record = findOrAddRecord(lane, tile, cycle);
+    int base = record * numSlots;
+    if (slotScores == null) {
+      System.arraycopy(scores, 0, counts, base, numQScores);
+      return;
     }
-    else {  // Merge maps and replace existing entries
-      Map<Integer, QualityMap> tmpMap = new HashMap<>(content);
-      tmpMap.keySet().removeAll(cycleMap.keySet());
-      cycleMap.putAll(content);
-      qScores.put(lanenr, cycleMap);
+
+    Arrays.fill(counts, base, base + numSlots, 0);
+    for (int q = 1; q <= numQScores; q++) {
+      counts[base + qScoreSlots[q]] += scores[q - 1];
     }
   }
 
-  public Map<Integer, QualityMap> getLane(int lanenr) {
-    return qScores.get(lanenr);
+  /*
+   * Add all records of other, in order, as if they were set one by one.
+   * other must have the same QScore bins.
+   */
+  public void addAll(QualityScores other) {
+    for (int record = 0; record < other.numRecords; record++) {
+      int target = findOrAddRecord(other.lanes[record], other.tiles[record], other.cycles[record]);
+      System.arraycopy(other.counts, record * numSlots, counts, target * numSlots, numSlots);
+    }
   }
 
-  public QualityMap getCycle(int lane, int cycle) {
-    return (qScores.get(lane)).get(cycle);
+  private int findOrAddRecord(int lane, int tile, int cycle) {
+    int record = index.get(lane, tile, cycle);
+    if (record != -1) {
+      return record;
+    }
+
+    if (numRecords == lanes.length) {
+      grow();
+    }
+
+    record = numRecords++;
+    lanes[record] = lane;
+    tiles[record] = tile;
+    cycles[record] = cycle;
+    index.put(lane, tile, cycle, record);
+    return record;
   }
 
-  public void setCycle(int lane, int cycle, QualityMap map) {
-    qScores.get(lane).put(cycle, map);
+  private void grow() {
+    int capacity = lanes.length * 2;
+    lanes = Arrays.copyOf(lanes, capacity);
+    tiles = Arrays.copyOf(tiles, capacity);
+    cycles = Arrays.copyOf(cycles, capacity);
+    counts = Arrays.copyOf(counts, capacity * numSlots);
   }
 
-  public QScoreDist getQScoreDistribution() {
-    for (Integer lane : qScores.keySet()) {
-      Map<Integer, QualityMap> laneScores = qScores.get(lane);
-      for (Integer cycle : laneScores.keySet()) {
-        QualityMap qmap = laneScores.get(cycle);
-        for (Integer tile : qmap.getMappings().keySet()) {
-          Map<Integer, Integer> qmetricMap = qmap.getMappings().get(tile);
-          for (Integer qScore : qmetricMap.keySet()) {
-            long metric = Long.valueOf(qmetricMap.get(qScore));
-            qScoreDist.setScore(qScore, metric);  // Set the metric in the QScore Distribution
-          }
-        }
+  // Per slot totals of all records for which filterLane matches (-1 for all lanes).
+  private long[] sumScores(int filterLane) {
+    long[] totals = new long[numSlots];
+    for (int record = 0; record < numRecords; record++) {
+      if (filterLane != -1 && lanes[record] != filterLane) {
+        continue;
+      }
+      int base = record * numSlots;
+      for (int slot = 0; slot < numSlots; slot++) {
+        totals[slot] += counts[base + slot];
       }
     }
+    return totals;
+  }
+
+  // Binned distributions only hold the remapped QScores of the bins.
+  private QScoreDist toQScoreDist(long[] totals) {
+    QScoreDist qScoreDist = new QScoreDist();
+    for (int slot = 0; slot < numSlots; slot++) {
+      qScoreDist.setScore(getSlotScore(slot), totals[slot]);  // Set the metric in the QScore Distribution
+    }
     return qScoreDist;
   }
 
-  public Map<Integer, QScoreDist> getQScoreDistributionByLane() {
-    Map<Integer, QScoreDist> laneDist = new TreeMap<>();
+  public QScoreDist getQScoreDistribution() {
+    // Rebuilt on every call; the raw scores may have grown since the last call.
+    if (numRecords == 0) {
+      return new QScoreDist();
+    }
+    return toQScoreDist(sumScores(-1));
+  }
 
-    for (Integer lane : qScores.keySet()) {
-      Map<Integer, QualityMap> laneScores = qScores.get(lane);
-      QScoreDist qScoreDistLane = new QScoreDist();
-      for (Integer cycle : laneScores.keySet()) {
-        QualityMap qmap = laneScores.get(cycle);
-        for (Integer tile : qmap.getMappings().keySet()) {
-          Map<Integer, Integer> qmetricMap = qmap.getMappings().get(tile);
-          for (Integer qScore : qmetricMap.keySet()) {
-            long metric = Long.valueOf(qmetricMap.get(qScore));
-            qScoreDistLane.setScore(qScore, metric);  // Set the metric in the QScore Distribution
-          }
-        }
+  public Map<Integer, QScoreDist> getQScoreDistributionByLane() {
+    // Per lane totals in a single walk over the records.
+    Map<Integer, long[]> laneTotals = new TreeMap<>();
+    for (int record = 0; record < numRecords; record++) {
+      long[] totals = laneTotals.get(lanes[record]);
+      if (totals == null) {
+        totals = new long[numSlots];
+        laneTotals.put(lanes[record], totals);
+      }
+      int base = record * numSlots;
+      for (int slot = 0; slot < numSlots; slot++) {
+        totals[slot] += counts[base + slot];
       }
-      laneDist.put(lane, qScoreDistLane);
     }
 
+    Map<Integer, QScoreDist> laneDist = new TreeMap<>();
+    for (Map.Entry<Integer, long[]> entry : laneTotals.entrySet()) {
+      laneDist.put(entry.getKey(), toQScoreDist(entry.getValue()));
+    }
     return laneDist;
   }
 
   public Map<Integer, Metric> getQScoreDistributionByCycle() {
     Map<Integer, Metric> cycleDist = new TreeMap<>();
 
-    for (Integer lane : qScores.keySet()) {
-      Map<Integer, QualityMap> laneScores = new TreeMap<>(qScores.get(lane));
-
-      for (Integer cycle : laneScores.keySet()) {
-        QualityMap qmap = laneScores.get(cycle);
-        Metric m = new Metric();
-
-        for (Integer tile : qmap.getMappings().keySet()) {
-          Map<Integer, Integer> qmetricMap = qmap.getMappings().get(tile);
+    for (int record = 0; record < numRecords; record++) {
+      int base = record * numSlots;
+      double aboveClus = 0;
+      double totalClus = 0;
+      double percent = 0d;
 
-          double aboveClus = 0;
-          double totalClus = 0;
-          double percent = 0d;
-
-          for (Integer qScore : qmetricMap.keySet()) {
-            double metric = Double.valueOf(qmetricMap.get(qScore));
-
-            if (qScore > 30) {
-              aboveClus += metric;
-            }
-            totalClus += metric;
-          }
+      for (int slot = 0; slot < numSlots; slot++) {
+        double metric = (double) counts[base + slot];
+        if (getSlotScore(slot) > 30) {
+          aboveClus += metric;
+        }
+        totalClus += metric;
+      }
 
-          if (totalClus != 0) {
-            percent = (aboveClus / totalClus) * 100;
-          }
+      if (totalClus != 0) {
+        percent = (aboveClus / totalClus) * 100;
+      }
 
-          if (cycleDist.get(cycle) != null) {
-            m = cycleDist.get(cycle);
-            m.incrementMetric(percent);
-          }
-          else {
-            m.setMetric(percent);
-          }
-        }
-        cycleDist.put(cycle, m);
+      Metric m = cycleDist.get(cycles[record]);
+      if (m != null) {
+        m.incrementMetric(percent);
+      }
+      else {
+        m = new Metric();
+        m.setMetric(percent);
+        cycleDist.put(cycles[record], m);
       }
     }
     return cycleDist;
   }
-
-  public Map<Integer, Map<Integer, QualityMap>> getRawScores() {
-    return qScores;
-  }
-}
\ No newline at end of file
+}
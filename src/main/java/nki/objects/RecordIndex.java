@@ -0,0 +1,110 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.objects;
+
+import java.io.*;
+
+/**
+ * Open addressing hash index from a (lane, tile, cycle) triplet to a record
+ * number. Used by the primitive record stores to replace records that are
+ * written again without boxing keys.
+ */
+public class RecordIndex implements Serializable {
+
+  public static final long serialVersionUID = 42L;
+
+  private long[] keys;
+  // Record number + 1; 0 marks an empty slot.
+  private int[] slots;
+  private int size = 0;
+
+  public RecordIndex() {
+    this(1024);
+  }
+
+  public RecordIndex(int expected) {
+    int capacity = 16;
+    while (capacity < expected * 2) {
+      capacity <<= 1;
+    }
+    keys = new long[capacity];
+    slots = new int[capacity];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  // Record number stored for the triplet, or -1.
+  public int get(int lane, int tile, int cycle) {
+    long key = packKey(lane, tile, cycle);
+    int mask = keys.length - 1;
+    int pos = hash(key) & mask;
+
+    while (slots[pos] != 0) {
+      if (keys[pos] == key) {
+        return slots[pos] - 1;
+      }
+      pos = (pos + 1) & mask;
+    }
+    return -1;
+  }
+
+  public void put(int lane, int tile, int cycle, int record) {
+    if ((size + 1) * 2 > keys.length) {
+      rehash(keys.length * 2);
+    }
+    if (insert(keys, slots, packKey(lane, tile, cycle), record + 1)) {
+      size++;
+    }
+  }
+
+  public void clear() {
+    keys = new long[keys.length];
+    slots = new int[slots.length];
+    size = 0;
+  }
+
+  private void rehash(int capacity) {
+    long[] newKeys = new long[capacity];
+    int[] newSlots = new int[capacity];
+    for (int i = 0; i < keys.length; i++) {
+      if (slots[i] != 0) {
+        insert(newKeys, newSlots, keys[i], slots[i]);
+      }
+    }
+    keys = newKeys;
+    slots = newSlots;
+  }
+
+  // Returns true when the key was not present yet.
+  private static boolean insert(long[] keys, int[] slots, long key, int slot) {
+    int mask = keys.length - 1;
+    int pos = hash(key) & mask;
+    while (slots[pos] != 0) {
+      if (keys[pos] == key) {
+        slots[pos] = slot;
+        return false;
+      }
+      pos = (pos + 1) & mask;
+    }
+    keys[pos] = key;
+    slots[pos] = slot;
+    return true;
+  }
+
+  // Lane, tile and cycle are uint16 values in the InterOp files.
+  private static long packKey(int lane, int tile, int cycle) {
+    return ((long) lane << 32) | ((long) tile << 16) | (long) cycle;
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
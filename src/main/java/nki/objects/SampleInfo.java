@@ -42,6 +42,10 @@ public class SampleInfo implements Serializable {
     this.numClusters = numClusters;
   }
 
+  public void addNumClusters(long numClusters) {
+    this.numClusters += numClusters;
+  }
+
   public String getIndexBarcode() {
     return indexBarcode;
   }
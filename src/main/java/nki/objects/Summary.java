@@ -57,6 +57,7 @@ public class Summary implements Serializable {
   private ClusterDensity clusterDensityPF;      // Contains Cluster Density Passing Filter for all lanes
   private PhasingCollection phasingMap;      // Phasing values per lane
   private PhasingCollection prephasingMap;    // Prephasing values per lane
+  private PhasingCollection percentAlignedMap;    // Percent aligned per lane, per read
 
   private QualityScores qScores;            // QualityScores per lane, per cycle, per tile
 
@@ -75,10 +76,19 @@ public class Summary implements Serializable {
   private Map<Integer, Metric> qScoreDistByCycle;  
   
   private ErrorDist eDist;
+
+  private ImageDist imageDist;          // Focus and contrast per lane, per cycle
+  private ControlCounts controlCounts;  // Control clusters per lane, per read
   
   private Indices sampleInfo;
   private int firstCycleIntensity;
 
+  // InterOp file name --> Fingerprint of the file when its metrics were stored
+  private Map<String, FileFingerprint> parsedFiles;
+  // InterOp file name --> Estimate, for metrics stored from a subset of the tiles
+  private Map<String, Estimate> estimates;
+  private long lastFullUpdated = 0;    // Epoch of the last parse of all tiles
+
   public void setSumId(int id) {
     this.sumId = id;
   }
@@ -312,6 +322,14 @@ public class Summary implements Serializable {
     return prephasingMap;
   }
 
+  public void setPercentAlignedMap(PhasingCollection alignedMap) {
+    this.percentAlignedMap = alignedMap;
+  }
+
+  public PhasingCollection getPercentAlignedMap() {
+    return percentAlignedMap;
+  }
+
   public void setReads(Reads rds) {
     this.reads = rds;
   }
@@ -404,6 +422,22 @@ public class Summary implements Serializable {
       return this.eDist;
   }
   
+  public void setImageDist(ImageDist imageDist) {
+    this.imageDist = imageDist;
+  }
+
+  public ImageDist getImageDist() {
+    return imageDist;
+  }
+
+  public void setControlCounts(ControlCounts controlCounts) {
+    this.controlCounts = controlCounts;
+  }
+
+  public ControlCounts getControlCounts() {
+    return controlCounts;
+  }
+
   public void setIScores(IntensityScores iScores) {
     this.iScores = iScores;
   }
@@ -472,6 +506,10 @@ public class Summary implements Serializable {
     return prephasingMap != null;
   }
 
+  public boolean hasPercentAligned() {
+    return percentAlignedMap != null;
+  }
+
   public boolean hasPhasing() {
     return phasingMap != null;
   }
@@ -504,8 +542,82 @@ public class Summary implements Serializable {
     return sampleInfo != null;
   }
 
+  // False for an empty ErrorDist, e.g. one stored by an older version.
   public boolean hasErrorDist(){
-      return eDist != null;
+      return eDist != null && !eDist.isEmpty();
+  }
+
+  public boolean hasImageDist() {
+    return imageDist != null;
+  }
+
+  public boolean hasControlCounts() {
+    return controlCounts != null;
+  }
+
+  // Set from the concurrent parse tasks of a MetrixContainer.
+  public synchronized void setParsedFingerprint(String fileName, FileFingerprint fingerprint) {
+    if (parsedFiles == null) {
+      parsedFiles = new HashMap<>();
+    }
+    parsedFiles.put(fileName, fingerprint);
+  }
+
+  public synchronized FileFingerprint getParsedFingerprint(String fileName) {
+    return parsedFiles == null ? null : parsedFiles.get(fileName);
+  }
+
+  // Set from the concurrent parse tasks; null marks the metrics as exact.
+  public synchronized void setEstimate(String fileName, Estimate estimate) {
+    if (estimate == null) {
+      if (estimates != null) {
+        estimates.remove(fileName);
+      }
+      return;
+    }
+    if (estimates == null) {
+      estimates = new HashMap<>();
+    }
+    estimates.put(fileName, estimate);
+  }
+
+  // The estimate of the stored metrics of fileName, or null when they are exact.
+  public synchronized Estimate getEstimate(String fileName) {
+    return estimates == null ? null : estimates.get(fileName);
+  }
+
+  public synchronized boolean hasEstimates() {
+    return estimates != null && !estimates.isEmpty();
+  }
+
+  // Time of the oldest estimate, or 0 when all metrics are exact.
+  public synchronized long getEstimatedSince() {
+    long since = 0;
+    if (estimates != null) {
+      for (Estimate estimate : estimates.values()) {
+        since = since == 0 ? estimate.getCreated() : Math.min(since, estimate.getCreated());
+      }
+    }
+    return since;
+  }
+
+  // Lowest confidence of the estimated metrics; 1 when all metrics are exact.
+  public synchronized double getEstimateConfidence() {
+    double confidence = 1.0;
+    if (estimates != null) {
+      for (Estimate estimate : estimates.values()) {
+        confidence = Math.min(confidence, estimate.getConfidence());
+      }
+    }
+    return confidence;
+  }
+
+  public void setLastFullUpdated(long lastFullUpdated) {
+    this.lastFullUpdated = lastFullUpdated;
+  }
+
+  public long getLastFullUpdated() {
+    return lastFullUpdated;
   }
   
   public void setParseError(int parseError) {
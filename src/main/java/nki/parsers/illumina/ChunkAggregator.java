@@ -0,0 +1,28 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+/**
+ * Aggregates the records of one chunk of a fixed record length InterOp file
+ * into a partial aggregate, and merges partial aggregates. Every chunk
+ * decodes its records into one record object of the file layout.
+ *
+ * merge(into, from) is always called with the chunk that precedes 'from' in
+ * the file, so merging in that order gives the same result as decoding all
+ * records serially.
+ */
+public abstract class ChunkAggregator<R extends IlluminaRecord, A> {
+
+  public abstract A newAggregate();
+
+  // Add the decoded record to the aggregate.
+  public abstract void add(R record, A aggregate);
+
+  // Append the records aggregated in from, which directly follow those of into.
+  public abstract void merge(A into, A from);
+}
@@ -0,0 +1,123 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import nki.io.MappedLittleEndianInputStream;
+
+/**
+ * Decodes the records of a fixed record length InterOp file in parallel.
+ * The record range is split in halves until a chunk holds at most
+ * CHUNK_RECORDS records. Every chunk is decoded from its own mapped view of
+ * the file into a partial aggregate, and the partial aggregates are merged
+ * in file order.
+ */
+public class ChunkedDecoder {
+  // Records per chunk; about 3 MB of QMetrics records.
+  public static final int CHUNK_RECORDS = 16384;
+
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+
+  private ChunkedDecoder() {
+  }
+
+  /*
+   * True when numRecords is large enough to be worth splitting.
+   */
+  public static boolean isWorthSplitting(long numRecords) {
+    return POOL.getParallelism() > 1 && numRecords >= 2L * CHUNK_RECORDS;
+  }
+
+  /*
+   * Decode numRecords records of layout, the first starting at byte
+   * position start of channel.
+   */
+  public static <R extends IlluminaRecord, A> A decode(FileChannel channel, long start, RecordLayout<R> layout, long numRecords, ChunkAggregator<R, A> aggregator) throws IOException {
+    try {
+      return POOL.invoke(new ChunkTask<>(channel, start, layout, 0, numRecords, aggregator));
+    }
+    catch (RuntimeException re) {
+      // Unwrap IOExceptions thrown while decoding a chunk.
+      Throwable cause = re;
+      while (cause != null) {
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        cause = cause.getCause();
+      }
+      throw re;
+    }
+  }
+
+  private static class DecodeException extends RuntimeException {
+    public static final long serialVersionUID = 42L;
+
+    DecodeException(IOException cause) {
+      super(cause);
+    }
+  }
+
+  private static class ChunkTask<R extends IlluminaRecord, A> extends RecursiveTask<A> {
+    public static final long serialVersionUID = 42L;
+
+    private final FileChannel channel;
+    private final long start;
+    private final RecordLayout<R> layout;
+    private final long firstRecord;
+    private final long endRecord;
+    private final ChunkAggregator<R, A> aggregator;
+
+    ChunkTask(FileChannel channel, long start, RecordLayout<R> layout, long firstRecord, long endRecord, ChunkAggregator<R, A> aggregator) {
+      this.channel = channel;
+      this.start = start;
+      this.layout = layout;
+      this.firstRecord = firstRecord;
+      this.endRecord = endRecord;
+      this.aggregator = aggregator;
+    }
+
+    @Override
+    protected A compute() {
+      if (endRecord - firstRecord <= CHUNK_RECORDS) {
+        return decodeChunk();
+      }
+
+      long mid = (firstRecord + endRecord) >>> 1;
+      ChunkTask<R, A> left = new ChunkTask<>(channel, start, layout, firstRecord, mid, aggregator);
+      ChunkTask<R, A> right = new ChunkTask<>(channel, start, layout, mid, endRecord, aggregator);
+      left.fork();
+      A rightResult = right.compute();
+      A leftResult = left.join();
+      aggregator.merge(leftResult, rightResult);
+      return leftResult;
+    }
+
+    private A decodeChunk() {
+      A aggregate = aggregator.newAggregate();
+      R decoded = layout.newRecord();
+      int recordLength = layout.getRecordLength();
+      long chunkStart = start + firstRecord * recordLength;
+      long chunkEnd = start + endRecord * recordLength;
+
+      try (MappedLittleEndianInputStream in = new MappedLittleEndianInputStream(channel, chunkStart, chunkEnd)) {
+        for (long record = firstRecord; record < endRecord; record++) {
+          layout.read(in, decoded);
+          aggregator.add(decoded, aggregate);
+        }
+      }
+      catch (IOException ioe) {
+        throw new DecodeException(ioe);
+      }
+      return aggregate;
+    }
+  }
+}
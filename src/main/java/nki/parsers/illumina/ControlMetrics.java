@@ -0,0 +1,109 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import java.io.IOException;
+import java.util.logging.Level;
+
+import nki.io.StringDictionary;
+import nki.objects.ControlCounts;
+import nki.util.LoggerWrapper;
+
+public class ControlMetrics extends GenericIlluminaParser {
+  private ControlCounts controls;
+
+  // Control and index names of this file, shared across records and refreshes.
+  private final StringDictionary names = new StringDictionary();
+
+  public ControlMetrics(String source, int state) {
+    super(ControlMetrics.class, source, state);
+  }
+
+  public ControlCounts getControlCounts() {
+    if (controls == null) {
+      controls = digestData();
+    }
+    return controls;
+  }
+
+  /*
+   * Binary structure
+   * byte 0: file version number (1)
+   * bytes (variable length): record:
+   * 2 bytes: lane number (uint16)
+   * 2 bytes: tile number (uint16)
+   * 2 bytes: read number (uint16)
+   * 2 bytes: number of bytes X for control name (uint16)
+   * X bytes: control name string (string encoded in UTF-8)
+   * 2 bytes: number of bytes Y for index name (uint16)
+   * Y bytes: index name string (string encoded in UTF-8)
+   * 4 bytes: number of clusters identified as control (uint32)
+   */
+
+  /*
+   * ControlMetricsOut.bin is (re)written as a whole. A refresh of an
+   * unchanged file returns the current counts; a changed file is decoded
+   * again.
+   */
+  @Override
+  protected boolean isAppendOnly() {
+    return false;
+  }
+
+  @Override
+  protected String getFileType() {
+    return RecordLayouts.CONTROL;
+  }
+
+  // Records have a variable length; a truncated record ends the cursor with an EOFException.
+  @Override
+  protected boolean hasCompleteRecord() throws IOException {
+    return leis.available() > 0;
+  }
+
+  /*
+   * Cursor over the records of the file. The record object is reused for
+   * every record.
+   */
+  public RecordCursor<ControlRecord> cursor() throws IOException {
+    return openCursor(new ControlRecord(names));
+  }
+
+  public ControlCounts digestData() {
+    if (controls != null && !isAtStart()) {
+      return controls;
+    }
+    controls = new ControlCounts();
+    if (fileMissing) {
+      return controls;
+    }
+
+    RecordCursor<ControlRecord> cursor;
+    try {
+      cursor = cursor();
+    }
+    catch (IOException Ex) {
+      LoggerWrapper.log.log(Level.SEVERE, "Error in parsing version number of the Control Metrics file: {0}", Ex.toString());
+      consumeAll();
+      return controls;
+    }
+
+    try {
+      ControlRecord record = cursor.getRecord();
+      while (cursor.next()) {
+        controls.addCount(record.getLane(), record.getReadNum(), record.getControlName(), record.getNumClusters());
+      }
+    }
+    catch (IOException ExMain) {
+      // Reached end of file
+    }
+    consumeAll();
+
+    return controls;
+  }
+}
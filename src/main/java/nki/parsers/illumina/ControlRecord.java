@@ -0,0 +1,42 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import nki.io.StringDictionary;
+
+/**
+ * Variable length record of ControlMetricsOut.bin. The names are interned
+ * through the dictionary of the parser.
+ */
+public class ControlRecord extends IlluminaRecord {
+  final StringDictionary names;
+  int readNum;
+  String controlName;
+  String indexName;
+  long numClusters;
+
+  public ControlRecord(StringDictionary names) {
+    this.names = names;
+  }
+
+  public int getReadNum() {
+    return readNum;
+  }
+
+  public String getControlName() {
+    return controlName;
+  }
+
+  public String getIndexName() {
+    return indexName;
+  }
+
+  public long getNumClusters() {
+    return numClusters;
+  }
+}
@@ -9,13 +9,10 @@ package nki.parsers.illumina;
 
 import java.io.IOException;
 import java.io.EOFException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 
 import nki.objects.IntensityScores;
-import nki.objects.IntensityMap;
-import nki.constants.Constants;
+import nki.objects.LaneCycleStats;
 import nki.util.LoggerWrapper;
 
 public class CorrectedIntensityMetrics extends GenericIlluminaParser {
@@ -56,91 +53,77 @@ public class CorrectedIntensityMetrics extends GenericIlluminaParser {
      *	4 bytes: signal to noise ratio (float)
      */
 
+  @Override
+  protected String getFileType() {
+    return RecordLayouts.CORRECTED_INTENSITY;
+  }
+
+  /*
+   * Cursor over the records that have not been decoded yet. The record
+   * object is reused for every record.
+   */
+  public RecordCursor<CorrectedIntensityRecord> cursor() throws IOException {
+    return openCursor();
+  }
+
+  /*
+   * Corrected intensities of the cycles [firstCycle, lastCycle] of one lane,
+   * or of all lanes when lane is 0. Only the records of these cycles are
+   * read.
+   */
+  public IntensityScores digestCycles(int firstCycle, int lastCycle, int lane) {
+    IntensityScores scores = new IntensityScores();
+    scores.setSource(this.getSource());
+    try {
+      LaneCycleStatsAggregator.Chunk chunk = decodeCycles(firstCycle, lastCycle, new LaneCycleStatsAggregator<CorrectedIntensityRecord>(IntensityScores.CI_NUM_VALUES, lane, firstCycle, lastCycle) {
+        @Override
+        protected void getValues(CorrectedIntensityRecord record, double[] values) {
+          record.getValues(values);
+        }
+      });
+      scores.setCorrectedStats(chunk.stats);
+    }
+    catch (IOException ex) {
+      LoggerWrapper.log.log(Level.SEVERE, "IO Error - CorrectedIntensityMetrics cycles {0} - {1}: {2}", new Object[]{firstCycle, lastCycle, ex.toString()});
+    }
+    return scores;
+  }
+
   public IntensityScores digestData() {
-    iScores = new IntensityScores();
+    if (iScores == null || isAtStart()) {
+      iScores = new IntensityScores();
+    }
     if (fileMissing) {
       return iScores;
     }
 
+    boolean fromStart = isAtStart();
+    RecordCursor<CorrectedIntensityRecord> cursor;
     try {
-      iScores.setVersion(leis.readByte());
-      iScores.setRecordLength(leis.readByte());
-      iScores.setSource(this.getSource());
+      cursor = cursor();
+      if (fromStart) {
+        iScores.setVersion(this.getVersion());
+        iScores.setRecordLength(this.getRecordLength());
+        iScores.setSource(this.getSource());
+      }
     }
     catch (IOException Ex) {
       metrixLogger.log.log(Level.SEVERE, "Error in parsing version number and recordLength: {0}", Ex.toString());
+      return iScores;
     }
 
     try {
-      Map<Integer, IntensityMap> cycleMap;
-      IntensityMap iMap;
-
-      while (true) {
-        int laneNr = leis.readUnsignedShort();
-        int tileNr = leis.readUnsignedShort();
-        int cycleNr = leis.readUnsignedShort();
-
-        if (iScores.getLane(laneNr) != null) {
-          cycleMap = iScores.getLane(laneNr);
-        }
-        else {
-          cycleMap = new HashMap<>();
-        }
-
-        if (cycleMap.containsKey(cycleNr)) {
-          iMap = cycleMap.get(cycleNr);
-        }
-        else {
-          iMap = new IntensityMap();
-        }
-
-        // Avg Corrected Int
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_ACI, (double)leis.readUnsignedShort());
-
-        //-- Avg Corrected Int A
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_ACI_A, (double)leis.readUnsignedShort());
-
-        // Avg Corrected Int C
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_ACI_C, (double)leis.readUnsignedShort());
-
-        // Avg Corrected Int G
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_ACI_G, (double)leis.readUnsignedShort());
-
-        // Avg Corrected Int T
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_ACI_T, (double)leis.readUnsignedShort());
-
-        //-- Avg Corrected Int Called Clusters A
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_ACICC_A, (double)leis.readUnsignedShort());
-
-        // Avg Corrected Int Called Clusters C
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_ACICC_C, (double)leis.readUnsignedShort());
-
-        // Avg Corrected Int Called Clusters G
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_ACICC_G, (double)leis.readUnsignedShort());
-
-        // Avg Corrected Int Called Clusters T
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_ACICC_T, (double)leis.readUnsignedShort());
-
-        //-- Num of base calls for No Call (Float)
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_NUM_BCS_NC, (double)leis.readFloat());
-
-        // Num of base calls for A (Float)
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_NUM_BCS_A, (double)leis.readFloat());
-
-        // Num of base calls for C (Float)
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_NUM_BCS_C, (double)leis.readFloat());
-
-        // Num of base calls for G (Float)
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_NUM_BCS_G, (double)leis.readFloat());
-
-        // Num of base calls for T (Float)
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_NUM_BCS_T, (double)leis.readFloat());
-
-        // Signal to noise ratio
-        iMap.addMapping(tileNr, Constants.METRIC_VAR_NUM_SIGNOISE, (double)leis.readFloat());
+      LaneCycleStats stats = iScores.getCorrectedStats();
+      if (stats == null) {
+        stats = new LaneCycleStats(IntensityScores.CI_NUM_VALUES);
+        iScores.setCorrectedStats(stats);
+      }
+      double[] values = new double[IntensityScores.CI_NUM_VALUES];
+      CorrectedIntensityRecord record = cursor.getRecord();
 
-        cycleMap.put(cycleNr, iMap);
-        iScores.setLane(cycleMap, laneNr);
+      while (cursor.next()) {
+        record.getValues(values);
+        stats.add(record.getLane(), record.getCycle(), values);
       }
     }
     catch (EOFException eof) {
@@ -0,0 +1,61 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import nki.objects.IntensityScores;
+
+/**
+ * Record of CorrectedIntMetricsOut.bin.
+ */
+public class CorrectedIntensityRecord extends IlluminaRecord {
+  public static final int NUM_CHANNELS = 4;
+  // No call and [A, C, G, T].
+  public static final int NUM_BASECALLS = 5;
+
+  int averageIntensity;
+  final int[] correctedIntensity = new int[NUM_CHANNELS];
+  final int[] calledIntensity = new int[NUM_CHANNELS];
+  final float[] baseCalls = new float[NUM_BASECALLS];
+  float signalToNoise;
+
+  public int getAverageIntensity() {
+    return averageIntensity;
+  }
+
+  // Average corrected intensity of channel [A, C, G, T].
+  public int getCorrectedIntensity(int channel) {
+    return correctedIntensity[channel];
+  }
+
+  // Average corrected intensity of the clusters called as base [A, C, G, T].
+  public int getCalledIntensity(int channel) {
+    return calledIntensity[channel];
+  }
+
+  // Number of base calls for no call (0) and [A, C, G, T] (1 .. 4).
+  public float getBaseCalls(int base) {
+    return baseCalls[base];
+  }
+
+  public float getSignalToNoise() {
+    return signalToNoise;
+  }
+
+  // Copy the values to the IntensityScores value slots.
+  public void getValues(double[] values) {
+    values[IntensityScores.CI_AVG] = averageIntensity;
+    for (int ch = 0; ch < NUM_CHANNELS; ch++) {
+      values[IntensityScores.CI_CHANNEL_FIRST + ch] = correctedIntensity[ch];
+      values[IntensityScores.CI_CALLED_FIRST + ch] = calledIntensity[ch];
+    }
+    for (int base = 0; base < NUM_BASECALLS; base++) {
+      values[IntensityScores.CI_BASECALLS_FIRST + base] = baseCalls[base];
+    }
+    values[IntensityScores.CI_SIGNOISE] = signalToNoise;
+  }
+}
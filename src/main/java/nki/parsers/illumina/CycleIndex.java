@@ -0,0 +1,166 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps every cycle of a per-cycle InterOp file to the range of records that
+ * hold it. The sequencer appends the records cycle by cycle, so the cycle
+ * number (uint16 at the cycle offset of the record layout) is non-decreasing over the file and the
+ * start of each next cycle is found with a binary search over the records.
+ *
+ * The index is extended with the records appended since the previous
+ * update. When the file turns out not to be in cycle order the index is
+ * marked unordered and ranges cover the whole file.
+ */
+public class CycleIndex {
+  private final long headerLength;
+  private final int recordLength;
+  private final int cycleOffset;
+  private final ByteBuffer cycleBuffer = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+
+  private int numCycles = 0;
+  private int[] cycles = new int[64];
+  // First record of every cycle.
+  private long[] firstRecords = new long[64];
+  private long numRecords = 0;
+  private boolean ordered = true;
+
+  public CycleIndex(long headerLength, int recordLength, int cycleOffset) {
+    this.headerLength = headerLength;
+    this.recordLength = recordLength;
+    this.cycleOffset = cycleOffset;
+  }
+
+  /*
+   * Index the complete records appended since the previous update.
+   */
+  public void update(FileChannel channel) throws IOException {
+    long available = Math.max(0, (channel.size() - headerLength) / recordLength);
+    if (available < numRecords) {
+      // Truncated; start over.
+      clear();
+    }
+
+    long record = numRecords;
+    while (ordered && record < available) {
+      int cycleNr = readCycleAt(channel, record);
+      if (numCycles == 0 || cycleNr > cycles[numCycles - 1]) {
+        add(cycleNr, record);
+      }
+      else if (cycleNr < cycles[numCycles - 1]) {
+        ordered = false;
+        break;
+      }
+
+      // First record with a cycle beyond cycleNr.
+      long low = record + 1;
+      long high = available;
+      while (low < high) {
+        long mid = (low + high) >>> 1;
+        if (readCycleAt(channel, mid) <= cycleNr) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      record = low;
+    }
+    numRecords = available;
+  }
+
+  public void clear() {
+    numCycles = 0;
+    numRecords = 0;
+    ordered = true;
+  }
+
+  public boolean isOrdered() {
+    return ordered;
+  }
+
+  public boolean isEmpty() {
+    return numCycles == 0;
+  }
+
+  public long getNumRecords() {
+    return numRecords;
+  }
+
+  public int getRecordLength() {
+    return recordLength;
+  }
+
+  public List<Integer> getCycles() {
+    List<Integer> list = new ArrayList<>(numCycles);
+    for (int i = 0; i < numCycles; i++) {
+      list.add(cycles[i]);
+    }
+    return list;
+  }
+
+  // Last cycle with a complete record, or 0 when empty.
+  public int getLastCycle() {
+    return numCycles == 0 ? 0 : cycles[numCycles - 1];
+  }
+
+  // Byte offset of the first record with a cycle >= firstCycle.
+  public long getStartOffset(int firstCycle) {
+    if (!ordered) {
+      return headerLength;
+    }
+    return headerLength + recordAt(firstCycle) * recordLength;
+  }
+
+  // Byte offset just after the last record with a cycle <= lastCycle.
+  public long getEndOffset(int lastCycle) {
+    if (!ordered || lastCycle == Integer.MAX_VALUE) {
+      return headerLength + numRecords * recordLength;
+    }
+    return headerLength + recordAt(lastCycle + 1) * recordLength;
+  }
+
+  // First record with a cycle >= cycle.
+  private long recordAt(int cycle) {
+    int i = Arrays.binarySearch(cycles, 0, numCycles, cycle);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    return i < numCycles ? firstRecords[i] : numRecords;
+  }
+
+  private void add(int cycleNr, long record) {
+    if (numCycles == cycles.length) {
+      cycles = Arrays.copyOf(cycles, numCycles * 2);
+      firstRecords = Arrays.copyOf(firstRecords, numCycles * 2);
+    }
+    cycles[numCycles] = cycleNr;
+    firstRecords[numCycles] = record;
+    numCycles++;
+  }
+
+  private int readCycleAt(FileChannel channel, long record) throws IOException {
+    cycleBuffer.clear();
+    long pos = headerLength + record * recordLength + cycleOffset;
+    while (cycleBuffer.hasRemaining()) {
+      if (channel.read(cycleBuffer, pos + cycleBuffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    return cycleBuffer.getShort(0) & 0xFFFF;
+  }
+}
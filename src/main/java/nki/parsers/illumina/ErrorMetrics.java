@@ -9,12 +9,10 @@ package nki.parsers.illumina;
 
 import java.io.IOException;
 import java.io.EOFException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 
 import nki.objects.ErrorCollection;
-import nki.objects.ErrorMap;
+import nki.objects.ErrorDist;
 import nki.util.LoggerWrapper;
 
 public class ErrorMetrics extends GenericIlluminaParser {
@@ -47,63 +45,71 @@ public class ErrorMetrics extends GenericIlluminaParser {
    *	4 bytes: number of reads with 4 errors (uint32)
     Where N is the record index
    */
+  @Override
+  protected String getFileType() {
+    return RecordLayouts.ERROR;
+  }
+
+  /*
+   * Cursor over the records that have not been decoded yet. The record
+   * object is reused for every record.
+   */
+  public RecordCursor<ErrorRecord> cursor() throws IOException {
+    return openCursor();
+  }
+
+  /*
+   * Error metrics of the cycles [firstCycle, lastCycle] of one lane, or of
+   * all lanes when lane is 0. Only the records of these cycles are read.
+   */
+  public ErrorCollection digestCycles(int firstCycle, int lastCycle, int lane) {
+    ErrorCollection errors = new ErrorCollection();
+    errors.setSource(this.getSource());
+    try {
+      LaneCycleStatsAggregator.Chunk chunk = decodeCycles(firstCycle, lastCycle, new LaneCycleStatsAggregator<ErrorRecord>(ErrorDist.NUM_VALUES, lane, firstCycle, lastCycle) {
+        @Override
+        protected void getValues(ErrorRecord record, double[] values) {
+          record.getValues(values);
+        }
+      });
+      errors.setErrorStats(chunk.stats);
+    }
+    catch (IOException Ex) {
+      LoggerWrapper.log.log(Level.SEVERE, "IO Error in parsing cycles {0} - {1} of the Error Metrics file: {2}", new Object[]{firstCycle, lastCycle, Ex.toString()});
+    }
+    return errors;
+  }
+
   public ErrorCollection digestData() {
-    eScores = new ErrorCollection();
+    if (eScores == null || isAtStart()) {
+      eScores = new ErrorCollection();
+    }
     if (fileMissing) {
       return eScores;
     }
 
-    Map<Integer, ErrorMap> cycleMap;
-
+    boolean fromStart = isAtStart();
+    RecordCursor<ErrorRecord> cursor;
     try {
-      eScores.setVersion(leis.readByte());
-      eScores.setRecordLength(leis.readByte());
+      cursor = cursor();
+      if (fromStart) {
+        eScores.setVersion(this.getVersion());
+        eScores.setRecordLength(this.getRecordLength());
+        eScores.setSource(this.getSource());
+      }
     }
     catch (IOException Ex) {
       LoggerWrapper.log.log(Level.SEVERE, "Error in parsing version number and recordLength: {0}", Ex.toString());
+      return eScores;
     }
 
     try {
-      ErrorMap eMap;
-
-      while (true) {
-        int laneNr = leis.readUnsignedShort();
-        int tileNr = leis.readUnsignedShort();
-        int cycleNr = leis.readUnsignedShort();
-
-        // If errormap exists in cycle map retrieve.
-        // Check cycle after parsing.
-        if (eScores.getLane(laneNr) != null) {
-          cycleMap = eScores.getLane(laneNr);
-        }
-        else {
-          cycleMap = new HashMap<>();
-        }
-
-        if (cycleMap.containsKey(cycleNr)) {
-          eMap = cycleMap.get(cycleNr);
-        }
-        else {
-          eMap = new ErrorMap();
-        }
-
-        float errorRate = leis.readFloat();
-        double numPerfectReads = leis.readFloat();
-        double numReads1E = leis.readFloat();
-        double numReads2E = leis.readFloat();
-        double numReads3E = leis.readFloat();
-        double numReads4E = leis.readFloat();
-
-        eMap.addMetric(tileNr, -1, errorRate);
-        eMap.addMetric(tileNr, 0, numPerfectReads);
-        eMap.addMetric(tileNr, 1, numReads1E);
-        eMap.addMetric(tileNr, 2, numReads2E);
-        eMap.addMetric(tileNr, 3, numReads3E);
-        eMap.addMetric(tileNr, 4, numReads4E);
+      double[] values = new double[ErrorDist.NUM_VALUES];
+      ErrorRecord record = cursor.getRecord();
 
-        cycleMap.put(cycleNr, eMap);
-        eScores.setLane(cycleMap, laneNr);
-        //System.out.println(laneNr + "\t" + cycleNr + "\t" + tileNr + "\t" + errorRate + "\t" + numPerfectReads + "\t" + numReads1E + "\t" + numReads2E + "\t" + numReads3E + "\t" + numReads4E);
+      while (cursor.next()) {
+        record.getValues(values);
+        eScores.addRecord(record.getLane(), record.getCycle(), values);
       }
     }
     catch (EOFException EOFEx) {
@@ -0,0 +1,36 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import nki.objects.ErrorDist;
+
+/**
+ * Record of ErrorMetricsOut.bin: error rate and the number of reads with
+ * 0 .. 4 errors.
+ */
+public class ErrorRecord extends IlluminaRecord {
+  float errorRate;
+  final long[] numReads = new long[ErrorDist.MAX_ERRORS + 1];
+
+  public float getErrorRate() {
+    return errorRate;
+  }
+
+  // Number of reads with numErrors errors; 0 errors are the perfect reads.
+  public long getNumReads(int numErrors) {
+    return numReads[numErrors];
+  }
+
+  // Copy the values to the ErrorDist value slots.
+  public void getValues(double[] values) {
+    values[ErrorDist.ERROR_RATE] = errorRate;
+    for (int numErrors = 0; numErrors <= ErrorDist.MAX_ERRORS; numErrors++) {
+      values[ErrorDist.readsSlot(numErrors)] = numReads[numErrors];
+    }
+  }
+}
@@ -9,25 +9,28 @@ package nki.parsers.illumina;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.logging.Level;
-import nki.constants.Constants;
-import nki.objects.IntensityMap;
+import nki.objects.ExtractionRecords;
 import nki.objects.IntensityScores;
-import nki.objects.FWHMMap;
 import nki.objects.FWHMScores;
+import nki.io.LittleEndianInputStream;
+import nki.io.RunArchive;
 
 import nki.util.LoggerWrapper;
 
 public class ExtractionMetrics extends GenericIlluminaParser {
-  List<Integer> cycles = new ArrayList<>();
   private IntensityScores iScores;
   private FWHMScores fScores;
+  // Columnar record store shared by iScores and fScores.
+  private ExtractionRecords records;
   // Instantiate Logger
   private static final LoggerWrapper metrixLogger = LoggerWrapper.getInstance();
 
@@ -64,98 +67,47 @@ public class ExtractionMetrics extends GenericIlluminaParser {
      */
 
   public void digestData() {
-    iScores = new IntensityScores();
-    fScores = new FWHMScores();
+    if (iScores == null || fScores == null || isAtStart()) {
+      iScores = new IntensityScores();
+      fScores = new FWHMScores();
+      records = new ExtractionRecords();
+      iScores.setRecords(records);
+      fScores.setRecords(records);
+    }
     if (fileMissing) {
       metrixLogger.log.finest("ExtractionMetrics file is missing for digest.");
       return;
     }
 
+    boolean fromStart = isAtStart();
+    RecordCursor<ExtractionRecord> cursor;
     try {
-      this.version = leis.readByte();
-      iScores.setVersion(this.version);
-      fScores.setVersion(this.version);
-      this.recordLength = leis.readByte();
-      iScores.setRecordLength(this.recordLength);
-      fScores.setRecordLength(this.recordLength);
-    
-      iScores.setSource(this.getSource());
-      fScores.setSource(this.getSource());
+      cursor = cursor();
+      if (fromStart) {
+        iScores.setVersion(this.version);
+        fScores.setVersion(this.version);
+        iScores.setRecordLength(this.recordLength);
+        fScores.setRecordLength(this.recordLength);
+
+        iScores.setSource(this.getSource());
+        fScores.setSource(this.getSource());
+      }
     }
     catch (IOException Ex) {
       metrixLogger.log.log(Level.SEVERE, "Error in parsing version number and recordLength: {0}", Ex.toString());
+      return;
     }
 
     try {
-      Map<Integer, IntensityMap> cycleMap;
-      Map<Integer, FWHMMap> cycleFWHMMap;
-      IntensityMap iMap;
-      FWHMMap fMap;
-      
-      while (leis.available() > 40) {
-        int laneNr = leis.readUnsignedShort();
-        int tileNr = leis.readUnsignedShort();
-        int cycleNr = leis.readUnsignedShort();
-
-        if (iScores.getLane(laneNr) != null) {
-          cycleMap = iScores.getLane(laneNr);
-        }
-        else {
-          cycleMap = new HashMap<>();
-        }
-
-        if (fScores.getLane(laneNr) != null) {
-          cycleFWHMMap = fScores.getLane(laneNr);
-        }
-        else {
-          cycleFWHMMap = new HashMap<>();
-        }        
-        
-        if (cycleMap.containsKey(cycleNr)) {
-          iMap = cycleMap.get(cycleNr);
-        }
-        else {
-          iMap = new IntensityMap();
-        }
+      // Large backlogs of records are decoded in parallel chunks.
+      ExtractionRecords chunk = decodeChunked(new ExtractionChunkAggregator());
+      if (chunk != null) {
+        records.addAll(chunk);
+      }
 
-        if (cycleFWHMMap.containsKey(cycleNr)) {
-          fMap = cycleFWHMMap.get(cycleNr);
-        }
-        else {
-          fMap = new FWHMMap();
-        }        
-        
-        //-- FWHM Score A
-        fMap.addMapping(tileNr, Constants.METRIC_VAR_FWHM_A, (double) leis.readFloat());
-        
-        //-- FWHM Score C
-        fMap.addMapping(tileNr, Constants.METRIC_VAR_FWHM_C, (double) leis.readFloat());
-        
-        //-- FWHM Score G
-        fMap.addMapping(tileNr, Constants.METRIC_VAR_FWHM_G, (double) leis.readFloat());
-        
-        //-- FWHM Score T
-        fMap.addMapping(tileNr, Constants.METRIC_VAR_FWHM_T, (double) leis.readFloat());
-
-        //-- Raw Int A
-        iMap.addMapping(tileNr, Constants.METRIC_EX_RAWINT_A, (double)leis.readUnsignedShort());
-
-        // Raw Int C
-        iMap.addMapping(tileNr, Constants.METRIC_EX_RAWINT_C, (double)leis.readUnsignedShort());
-
-        // Raw Int G
-        iMap.addMapping(tileNr, Constants.METRIC_EX_RAWINT_G, (double)leis.readUnsignedShort());
-
-        // Raw Int T
-        iMap.addMapping(tileNr, Constants.METRIC_EX_RAWINT_T, (double)leis.readUnsignedShort());
-        
-        long dateTime = leis.readLong();
-        
-        cycleMap.put(cycleNr, iMap);
-        cycleFWHMMap.put(cycleNr, fMap);
-        
-        iScores.setLane(cycleMap, laneNr);
-        fScores.setLane(cycleFWHMMap, laneNr);
+      ExtractionRecord record = cursor.getRecord();
+      while (cursor.next()) {
+        store(record, records);
       }
     }catch (EOFException eof) {
       // Reached end of file
@@ -169,53 +121,134 @@ public class ExtractionMetrics extends GenericIlluminaParser {
     return;
   }
 
-  public List<Integer> getUniqueCycles() {
-    try {
-      leis.skipBytes(6);
+  /*
+   * Cursor over the records that have not been decoded yet. The record
+   * object is reused for every record.
+   */
+  public RecordCursor<ExtractionRecord> cursor() throws IOException {
+    return openCursor();
+  }
 
-      while (true) {
-        int cycleNr = leis.readUnsignedShort();
-        cycles.add(cycleNr);
-        leis.skipBytes(36);
-      }
+  // Copy the channel values of source into the columns of target.
+  private static void store(ExtractionRecord source, ExtractionRecords target) {
+    int record = target.addRecord(source.getLane(), source.getTile(), source.getCycle());
+    for (int ch = 0; ch < ExtractionRecords.NUM_CHANNELS; ch++) {
+      target.setFWHM(record, ch, source.getFWHM(ch));
+      target.setRawIntensity(record, ch, source.getRawIntensity(ch));
     }
-    catch (IOException ex) {
-      ex.printStackTrace();
-      metrixLogger.log.log(Level.SEVERE, "IOException in Unique Cycles {0}", ex.toString());
+  }
+
+  private static class ExtractionChunkAggregator extends ChunkAggregator<ExtractionRecord, ExtractionRecords> {
+    @Override
+    public ExtractionRecords newAggregate() {
+      return new ExtractionRecords();
     }
 
-    List<Integer> newList = new ArrayList<>(new HashSet<>(cycles));
-    Collections.sort(newList);
+    @Override
+    public void add(ExtractionRecord record, ExtractionRecords aggregate) {
+      store(record, aggregate);
+    }
 
-    return newList;
+    @Override
+    public void merge(ExtractionRecords into, ExtractionRecords from) {
+      into.addAll(from);
+    }
   }
 
-  public int getLastCycle() {
-    try {
-      if (leis != null) {
-        leis.skipBytes(6);
+  @Override
+  protected String getFileType() {
+    return RecordLayouts.EXTRACTION;
+  }
+
+  /*
+   * Records are appended in cycle order with a fixed record length, so the
+   * current cycle is the cycle of the last complete record. Reads the header
+   * and the first and last record by position instead of scanning the whole
+   * file; the cycle index is only built for range reads. Falls back to a
+   * full scan when the file does not look consistent.
+   */
+  public int peekLastCycle() {
+    if (fileMissing) {
+      return 0;
+    }
 
-        while (true) {
-          int cycleNr = leis.readUnsignedShort();
-          cycles.add(cycleNr);
-          leis.skipBytes(36);
+    if (!RunArchive.isArchivePath(source)) {
+      try (RandomAccessFile raf = new RandomAccessFile(source, "r")) {
+        FileChannel channel = raf.getChannel();
+        RecordLayout<?> recordLayout = readLayout(channel);
+        long numRecords = (channel.size() - recordLayout.getHeaderLength()) / recordLayout.getRecordLength();
+        if (numRecords > 0) {
+          int firstCycle = readCycleAt(channel, recordLayout, 0);
+          int lastCycle = readCycleAt(channel, recordLayout, numRecords - 1);
+          if (firstCycle > 0 && lastCycle >= firstCycle) {
+            closeSourceStream();
+            return lastCycle;
+          }
         }
       }
-      if (leis != null) {
-        leis.close();
+      catch (IOException ex) {
+        metrixLogger.log.log(Level.FINE, "Unable to peek last cycle of {0}: {1}", new Object[]{source, ex.toString()});
       }
     }
-    catch (IOException ex) {
 
+    metrixLogger.log.log(Level.FINE, "Inconsistent extraction metrics {0}. Scanning all records.", source);
+    return getLastCycle();
+  }
+
+  // Cycle number of the given record.
+  private static int readCycleAt(FileChannel channel, RecordLayout<?> recordLayout, long record) throws IOException {
+    ByteBuffer cycle = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+    long pos = recordLayout.getHeaderLength() + record * recordLayout.getRecordLength() + recordLayout.getCycleOffset();
+    if (channel.read(cycle, pos) < 2) {
+      throw new EOFException();
+    }
+    return cycle.getShort(0) & 0xFFFF;
+  }
+
+  // Distinct cycles in the file, from the cycle index.
+  public List<Integer> getUniqueCycles() {
+    if (fileMissing) {
+      return new ArrayList<>();
+    }
+
+    CycleIndex index = getCycleIndex();
+    if (index != null && index.isOrdered()) {
+      closeSourceStream();
+      return index.getCycles();
     }
 
-    int max = 0;
+    return scanUniqueCycles();
+  }
+
+  private List<Integer> scanUniqueCycles() {
+    return new ArrayList<>(scanCycles());
+  }
 
-    for (int c : cycles) {
-      if (c > max) {
-        max = c;
+  // Last cycle in the file, from a scan of all records.
+  public int getLastCycle() {
+    SortedSet<Integer> scanned = scanCycles();
+    closeSourceStream();
+    return scanned.isEmpty() ? 0 : scanned.last();
+  }
+
+  /*
+   * Distinct cycles of all records, read with the record layout of the file
+   * version. Used for archive entries, which can not be indexed, and for
+   * files that are not in cycle order.
+   */
+  private SortedSet<Integer> scanCycles() {
+    SortedSet<Integer> scanned = new TreeSet<>();
+    try (LittleEndianInputStream in = openSource(source)) {
+      RecordLayout<ExtractionRecord> recordLayout = RecordLayouts.read(getFileType(), in);
+      ExtractionRecord record = recordLayout.newRecord();
+      while (in.available() >= recordLayout.getRecordLength()) {
+        recordLayout.read(in, record);
+        scanned.add(record.getCycle());
       }
     }
-    return max;
+    catch (IOException ex) {
+      metrixLogger.log.log(Level.SEVERE, "IOException in scanning the cycles of {0}: {1}", new Object[]{source, ex.toString()});
+    }
+    return scanned;
   }
 }
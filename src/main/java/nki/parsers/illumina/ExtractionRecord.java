@@ -0,0 +1,33 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+/**
+ * Record of ExtractionMetricsOut.bin: FWHM and raw intensity for the
+ * channels [A, C, G, T].
+ */
+public class ExtractionRecord extends IlluminaRecord {
+  public static final int NUM_CHANNELS = 4;
+
+  final float[] fwhm = new float[NUM_CHANNELS];
+  final int[] rawIntensity = new int[NUM_CHANNELS];
+  long dateTime;
+
+  public float getFWHM(int channel) {
+    return fwhm[channel];
+  }
+
+  public int getRawIntensity(int channel) {
+    return rawIntensity[channel];
+  }
+
+  // Date / time of CIF creation.
+  public long getDateTime() {
+    return dateTime;
+  }
+}
@@ -0,0 +1,35 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import nki.io.LittleEndianInputStream;
+
+/**
+ * Layout of records with a fixed length. Field offsets are computed once
+ * from the header, and every record is decoded from a little endian buffer
+ * by absolute offset. Only these files can be indexed by cycle and decoded
+ * in parallel chunks.
+ */
+public abstract class FixedRecordLayout<R extends IlluminaRecord> extends RecordLayout<R> {
+
+  protected FixedRecordLayout(int version, int recordLength, int headerLength, int cycleOffset) {
+    super(version, recordLength, headerLength, cycleOffset);
+  }
+
+  // Decode the record whose first byte is at index base of buf.
+  protected abstract void decode(ByteBuffer buf, int base, R record);
+
+  @Override
+  public void read(LittleEndianInputStream in, R record) throws IOException {
+    int base = in.readRecord(getRecordLength());
+    decode(in.recordBuffer(), base, record);
+  }
+}
@@ -8,11 +8,15 @@
 package nki.parsers.illumina;
 
 import nki.io.LittleEndianInputStream;
+import nki.io.MappedLittleEndianInputStream;
+import nki.io.RunArchive;
 import nki.util.LoggerWrapper;
 
 import java.io.IOException;
 import java.io.FileInputStream;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.logging.Level;
 
 public class GenericIlluminaParser {
@@ -21,18 +25,35 @@ public class GenericIlluminaParser {
 
   protected int version = 0;
   protected int recordLength = 0;
-  protected int sleepTime = 3000;
   protected boolean fileMissing = false;
+  // Size and modification time of the source when it was last opened.
+  // Records are only decoded up to lastSize; bytes appended later wait for the next refresh.
   private long lastModTime = 0;
+  private long lastSize = 0;
+  // Size of the archive entry when the source is read from a run archive.
+  private long entrySize = -1;
+  // Byte offset up to which the source has been decoded and the number of records decoded.
+  protected long offset = 0;
+  protected long recordCount = 0;
+  // Record layout of the file version, from the file header.
+  private RecordLayout<?> layout;
+  // Cycle to record range index of per-cycle files; built on request.
+  private CycleIndex cycleIndex;
+  // Tiles to decode; null decodes all tiles.
+  private TileSampler tileSampler;
+  private final Class<?> parserClass;
   private static final LoggerWrapper metrixLogger = LoggerWrapper.getInstance();
 
+  /*
+   * Files of running runs are not waited for; records the instrument is
+   * still writing are left for the next refresh (see hasCompleteRecord()).
+   * The run state is therefore not used while opening the source.
+   */
   public GenericIlluminaParser(Class<?> c, String source, int state) {
+    this.parserClass = c;
     try {
       setSource(source);
-      if (state == 1) {
-        Thread.sleep(sleepTime);
-      }
-      leis = new LittleEndianInputStream(new FileInputStream(source));
+      leis = openSource(source);
       // Check for last modified date
       setLastModifiedSource();
     }
@@ -42,8 +63,406 @@ public class GenericIlluminaParser {
       setFileMissing(true);
       metrixLogger.log.log(Level.WARNING, "{0} file not available for {1}", new Object[]{c.getSimpleName(), source});
     }
-    catch (InterruptedException ie) {
-      ie.printStackTrace();
+  }
+
+  /*
+   * Reopen the source when its stream was closed after the previous digest.
+   * Called with the parser lock held, right before digesting, so a refresh
+   * by another thread can not close the stream in between.
+   */
+  public synchronized void ensureOpen() {
+    if (leis == null) {
+      reopen();
+    }
+  }
+
+  /*
+   * Reopen the source for a refresh. Append-only sources are positioned at the
+   * last consumed offset, so the next digest only decodes the appended records
+   * and merges them into the aggregates kept from the previous digest.
+   * Sources that shrunk or that are rewritten in place are decoded again from
+   * the start. A rewritten source that was still being written when it was
+   * last opened has changed since, so it is decoded again as well.
+   */
+  public synchronized void reopen() {
+    closeSourceStream();
+    if (RunArchive.isArchivePath(source) || entrySize >= 0) {
+      reopenArchiveEntry();
+      return;
+    }
+    File sourceFile = new File(source);
+    if (!sourceFile.isFile()) {
+      setFileMissing(true);
+      reset();
+      metrixLogger.log.log(Level.WARNING, "{0} file not available for {1}", new Object[]{parserClass.getSimpleName(), source});
+      return;
+    }
+
+    boolean changed = sourceFile.length() != lastSize || sourceFile.lastModified() != lastModTime;
+    if (fileMissing || sourceFile.length() < offset || (changed && !isAppendOnly())) {
+      reset();
+    }
+
+    try {
+      setFileMissing(false);
+      leis = openSource(source);
+      setLastModifiedSource();
+      seek(offset);
+    }
+    catch (FileNotFoundException fnfe) {
+      setFileMissing(true);
+      reset();
+      metrixLogger.log.log(Level.WARNING, "{0} file not available for {1}", new Object[]{parserClass.getSimpleName(), source});
+    }
+    catch (IOException ioe) {
+      metrixLogger.log.log(Level.WARNING, "Unable to resume {0} at offset {1}: {2}", new Object[]{source, offset, ioe.toString()});
+      reset();
+      reopenFromStart();
+    }
+  }
+
+  /*
+   * Archived sources do not change; the entry is opened again and skipped
+   * to the last consumed offset, unless the archive itself was replaced.
+   */
+  private void reopenArchiveEntry() {
+    String archive = RunArchive.getArchive(source);
+    if (archive == null) {
+      setFileMissing(true);
+      reset();
+      metrixLogger.log.log(Level.WARNING, "{0} file not available for {1}", new Object[]{parserClass.getSimpleName(), source});
+      return;
+    }
+    if (fileMissing || new File(archive).lastModified() != lastModTime) {
+      reset();
+    }
+
+    try {
+      setFileMissing(false);
+      leis = openSource(source);
+      setLastModifiedSource();
+      seek(offset);
+    }
+    catch (FileNotFoundException fnfe) {
+      setFileMissing(true);
+      reset();
+      metrixLogger.log.log(Level.WARNING, "{0} file not available for {1}", new Object[]{parserClass.getSimpleName(), source});
+    }
+    catch (IOException ioe) {
+      metrixLogger.log.log(Level.WARNING, "Unable to resume {0} at offset {1}: {2}", new Object[]{source, offset, ioe.toString()});
+      reset();
+      reopenFromStart();
+    }
+  }
+
+  private void reopenFromStart() {
+    closeSourceStream();
+    try {
+      leis = openSource(source);
+    }
+    catch (FileNotFoundException fnfe) {
+      setFileMissing(true);
+    }
+  }
+
+  /*
+   * Forget the decode position. The next digest starts at the file header
+   * and rebuilds its aggregates.
+   */
+  public void reset() {
+    this.offset = 0;
+    this.recordCount = 0;
+    this.layout = null;
+    this.cycleIndex = null;
+  }
+
+  /*
+   * InterOp files that only grow by appended records. Override for files that
+   * are rewritten in place.
+   */
+  protected boolean isAppendOnly() {
+    return true;
+  }
+
+  /*
+   * InterOp file type of the source, one of the RecordLayouts types. Selects
+   * the record layout from the version in the file header.
+   */
+  protected String getFileType() {
+    return null;
+  }
+
+  /*
+   * Record layout of the source, or null before the header has been read.
+   */
+  @SuppressWarnings("unchecked")
+  public <R extends IlluminaRecord> RecordLayout<R> getLayout() {
+    return (RecordLayout<R>) layout;
+  }
+
+  /*
+   * The cycle index of the source, extended with the records appended since
+   * the previous call. Returns null when the file has no per-cycle records or
+   * can not be indexed.
+   */
+  public synchronized CycleIndex getCycleIndex() {
+    if (fileMissing || entrySize >= 0) {
+      return null;
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(source, "r")) {
+      return updateCycleIndex(raf.getChannel());
+    }
+    catch (IOException ioe) {
+      metrixLogger.log.log(Level.FINE, "Unable to index cycles of {0}: {1}", new Object[]{source, ioe.toString()});
+      return null;
+    }
+  }
+
+  /*
+   * Record layout of the source, read from the header at the start of
+   * channel when it has not been read yet.
+   */
+  protected synchronized RecordLayout<?> readLayout(FileChannel channel) throws IOException {
+    if (layout == null) {
+      // The stream is not closed; that would close the channel.
+      channel.position(0);
+      layout = RecordLayouts.read(getFileType(), new LittleEndianInputStream(new BufferedInputStream(Channels.newInputStream(channel))));
+    }
+    return layout;
+  }
+
+  private synchronized CycleIndex updateCycleIndex(FileChannel channel) throws IOException {
+    readLayout(channel);
+    if (layout.getCycleOffset() < 0) {
+      return null;
+    }
+    if (cycleIndex == null) {
+      cycleIndex = new CycleIndex(layout.getHeaderLength(), layout.getRecordLength(), layout.getCycleOffset());
+    }
+    cycleIndex.update(channel);
+    return cycleIndex;
+  }
+
+  /*
+   * Decode only the records of cycles [firstCycle, lastCycle] into a new
+   * aggregate, using the cycle index to locate them. The incremental decode
+   * position and the aggregates of digestData() are not affected.
+   */
+  protected <R extends IlluminaRecord, A> A decodeCycles(int firstCycle, int lastCycle, ChunkAggregator<R, A> aggregator) throws IOException {
+    aggregator = sampled(aggregator);
+    if (entrySize >= 0) {
+      return decodeEntry(aggregator);
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(source, "r")) {
+      FileChannel channel = raf.getChannel();
+      long start;
+      long end;
+      RecordLayout<R> recordLayout;
+      synchronized (this) {
+        CycleIndex index = updateCycleIndex(channel);
+        if (index == null || index.isEmpty()) {
+          return aggregator.newAggregate();
+        }
+        start = index.getStartOffset(firstCycle);
+        end = index.getEndOffset(lastCycle);
+        recordLayout = getLayout();
+      }
+      long numRecords = Math.max(0, (end - start) / recordLayout.getRecordLength());
+      return ChunkedDecoder.decode(channel, start, recordLayout, numRecords, aggregator);
+    }
+  }
+
+  /*
+   * Archive entries can not be indexed; decode all records of the entry in a
+   * single pass. The aggregators skip the records outside their cycle range.
+   */
+  private <R extends IlluminaRecord, A> A decodeEntry(ChunkAggregator<R, A> aggregator) throws IOException {
+    A aggregate = aggregator.newAggregate();
+    try (RunArchive.EntryInputStream entry = RunArchive.open(source)) {
+      LittleEndianInputStream in = new LittleEndianInputStream(new BufferedInputStream(entry));
+      RecordLayout<R> recordLayout = RecordLayouts.read(getFileType(), in);
+      R record = recordLayout.newRecord();
+      while (in.available() >= recordLayout.getRecordLength()) {
+        recordLayout.read(in, record);
+        aggregator.add(record, aggregate);
+      }
+    }
+    return aggregate;
+  }
+
+  /*
+   * Read the file header and select the record layout of its version.
+   * Called when decoding starts at the beginning of the source.
+   */
+  protected void readHeader() throws IOException {
+    layout = RecordLayouts.read(getFileType(), leis);
+    setVersion(layout.getVersion());
+    setRecordLength(layout.getRecordLength());
+    consumeHeader(layout.getHeaderLength());
+  }
+
+  /*
+   * Cursor over the records after the current decode position. The header
+   * is read first when decoding starts at the beginning of the source.
+   */
+  protected <R extends IlluminaRecord> RecordCursor<R> openCursor() throws IOException {
+    return openCursor(null);
+  }
+
+  // As openCursor(), decoding into record instead of a new layout record.
+  protected <R extends IlluminaRecord> RecordCursor<R> openCursor(R record) throws IOException {
+    if (fileMissing || leis == null) {
+      throw new FileNotFoundException(source);
+    }
+    if (isAtStart()) {
+      readHeader();
+    }
+    RecordLayout<R> recordLayout = getLayout();
+    return new RecordCursor<>(this, recordLayout, record != null ? record : recordLayout.newRecord());
+  }
+
+  protected void seek(long pos) throws IOException {
+    if (pos <= 0) {
+      return;
+    }
+    if (leis instanceof MappedLittleEndianInputStream) {
+      ((MappedLittleEndianInputStream) leis).position(pos);
+    }
+    else {
+      long remaining = pos;
+      while (remaining > 0) {
+        long skipped = leis.skip(remaining);
+        if (skipped <= 0) {
+          throw new EOFException();
+        }
+        remaining -= skipped;
+      }
+    }
+  }
+
+  // Return to a decode position and record count registered before.
+  protected void rewind(long pos, long records) throws IOException {
+    this.offset = pos;
+    this.recordCount = records;
+    seek(pos);
+  }
+
+  // True when the next digest starts at the file header.
+  protected boolean isAtStart() {
+    return offset == 0;
+  }
+
+  // Register the header bytes that have been read.
+  protected void consumeHeader(int headerLength) {
+    this.offset = headerLength;
+  }
+
+  // Register a record that has been fully decoded.
+  protected void consumeRecord() {
+    this.offset += recordLength;
+    this.recordCount++;
+  }
+
+  // Register the remainder of the source as decoded.
+  protected void consumeAll() {
+    this.offset = lastSize;
+  }
+
+  /*
+   * True when at least one complete record is available at the current
+   * position, within the size observed when the source was opened. A
+   * trailing record that is only partially written is deferred to the next
+   * refresh.
+   */
+  protected boolean hasCompleteRecord() throws IOException {
+    return recordLength > 0 && offset + recordLength <= lastSize && leis.available() >= recordLength;
+  }
+
+  /*
+   * Decode all complete records after the current offset with the chunked
+   * decoder and register them as consumed. Returns null, without consuming
+   * anything, when the source is not memory mapped or too few records are
+   * left to be worth splitting; the caller then decodes them serially.
+   */
+  protected <R extends IlluminaRecord, A> A decodeChunked(ChunkAggregator<R, A> aggregator) throws IOException {
+    aggregator = sampled(aggregator);
+    if (!(leis instanceof MappedLittleEndianInputStream) || recordLength <= 0 || layout == null) {
+      return null;
+    }
+
+    MappedLittleEndianInputStream mapped = (MappedLittleEndianInputStream) leis;
+    long numRecords = (Math.min(mapped.size(), lastSize) - offset) / recordLength;
+    if (!ChunkedDecoder.isWorthSplitting(numRecords)) {
+      return null;
+    }
+
+    RecordLayout<R> recordLayout = getLayout();
+    A aggregate = ChunkedDecoder.decode(mapped.getChannel(), offset, recordLayout, numRecords, aggregator);
+    this.offset += numRecords * recordLength;
+    this.recordCount += numRecords;
+    mapped.position(offset);
+    return aggregate;
+  }
+
+  /*
+   * Only decode the records of the tiles accepted by sampler, or of all tiles
+   * when sampler is null. Set before the first digest; aggregates built from
+   * a subset of the tiles are estimates.
+   */
+  public void setTileSampler(TileSampler sampler) {
+    this.tileSampler = sampler;
+  }
+
+  public TileSampler getTileSampler() {
+    return tileSampler;
+  }
+
+  // False for records of tiles that are not sampled.
+  boolean isSampled(IlluminaRecord record) {
+    return tileSampler == null || tileSampler.accept(record.getTile());
+  }
+
+  private <R extends IlluminaRecord, A> ChunkAggregator<R, A> sampled(ChunkAggregator<R, A> aggregator) {
+    return tileSampler == null ? aggregator : tileSampler.filter(aggregator);
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  /*
+   * Open the source as a memory mapped stream. When the file can not be mapped
+   * (e.g. on file systems without mmap support) fall back to a buffered stream.
+   * Sources within a run archive are streamed from the archive entry.
+   */
+  protected LittleEndianInputStream openSource(String source) throws FileNotFoundException {
+    if (RunArchive.isArchivePath(source)) {
+      try {
+        RunArchive.EntryInputStream entry = RunArchive.open(source);
+        entrySize = entry.getSize();
+        return new LittleEndianInputStream(new BufferedInputStream(entry, 64 * 1024));
+      }
+      catch (FileNotFoundException fnfe) {
+        throw fnfe;
+      }
+      catch (IOException ioe) {
+        metrixLogger.log.log(Level.WARNING, "Unable to read {0} from its archive: {1}", new Object[]{source, ioe.toString()});
+        throw new FileNotFoundException(source);
+      }
+    }
+
+    FileInputStream fis = new FileInputStream(source);
+    try {
+      return new MappedLittleEndianInputStream(fis);
+    }
+    catch (IOException ioe) {
+      metrixLogger.log.log(Level.FINE, "Unable to map {0}, using buffered stream: {1}", new Object[]{source, ioe.toString()});
+      return new LittleEndianInputStream(new BufferedInputStream(fis));
     }
   }
 
@@ -80,9 +499,16 @@ public class GenericIlluminaParser {
   }
 
   public void setLastModifiedSource() {
+    if (entrySize >= 0) {
+      // The archive is the unit that changes; the entry size bounds the records.
+      this.lastModTime = new File(RunArchive.getArchive(source)).lastModified();
+      this.lastSize = entrySize;
+      return;
+    }
     File lastModFile = new File(source);
     if (lastModFile.exists()) {
       this.lastModTime = lastModFile.lastModified();
+      this.lastSize = lastModFile.length();
     }
   }
 
@@ -98,6 +524,7 @@ public class GenericIlluminaParser {
     if (leis != null) {
       try {
         this.leis.close();
+        this.leis = null;
       }
       catch (IOException ioe) {
         ioe.printStackTrace();
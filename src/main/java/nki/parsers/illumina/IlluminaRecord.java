@@ -0,0 +1,32 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+/**
+ * Mutable record of an InterOp file. A RecordCursor decodes every record of
+ * a file into the same instance, so consumers must copy the values they
+ * want to keep. The RecordLayout of the file version fills the fields.
+ */
+public abstract class IlluminaRecord {
+  protected int lane;
+  protected int tile;
+  protected int cycle;
+
+  public int getLane() {
+    return lane;
+  }
+
+  public int getTile() {
+    return tile;
+  }
+
+  // Cycle number, or 0 for files without per-cycle records.
+  public int getCycle() {
+    return cycle;
+  }
+}
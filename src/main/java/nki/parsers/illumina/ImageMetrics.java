@@ -0,0 +1,153 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.logging.Level;
+
+import nki.objects.ImageDist;
+import nki.util.LoggerWrapper;
+
+public class ImageMetrics extends GenericIlluminaParser {
+  private ImageDist imageDist;
+
+  public ImageMetrics(String source, int state) {
+    super(ImageMetrics.class, source, state);
+  }
+
+  public ImageDist getImageDist() {
+    if (imageDist == null) {
+      imageDist = digestData();
+    }
+    return imageDist;
+  }
+
+  /*
+   * Binary structure:
+   *	byte 0: file version number (1)
+   *	byte 1: length of each record (uint8)
+   *	bytes (N * 12 + 2) - (N * 12 + 13): record:
+   *	2 bytes: lane number (uint16)
+   *	2 bytes: tile number (uint16)
+   *	2 bytes: cycle number (uint16)
+   *	2 bytes: channel id (uint16) where 0=A, 1=C, 2=G, 3=T
+   *	2 bytes: minimum imageDist value (uint16)
+   *	2 bytes: maximum imageDist value (uint16)
+   *	Where N is the record index
+   */
+  @Override
+  protected String getFileType() {
+    return RecordLayouts.IMAGE;
+  }
+
+  /*
+   * Cursor over the records that have not been decoded yet. The record
+   * object is reused for every record.
+   */
+  public RecordCursor<ImageRecord> cursor() throws IOException {
+    return openCursor();
+  }
+
+  /*
+   * Contrast of the cycles [firstCycle, lastCycle] of one lane, or of all
+   * lanes when lane is 0. Only the records of these cycles are read.
+   */
+  public ImageDist digestCycles(int firstCycle, int lastCycle, int lane) {
+    try {
+      return decodeCycles(firstCycle, lastCycle, new ContrastAggregator(lane, firstCycle, lastCycle));
+    }
+    catch (IOException Ex) {
+      LoggerWrapper.log.log(Level.SEVERE, "IO Error in parsing cycles {0} - {1} of the Image Metrics file: {2}", new Object[]{firstCycle, lastCycle, Ex.toString()});
+    }
+    return new ImageDist();
+  }
+
+  /*
+   * Contrast of all records, continuing after the records decoded by the
+   * previous call. Callers keep a copy() of the result.
+   */
+  public ImageDist digestData() {
+    if (imageDist == null || isAtStart()) {
+      imageDist = new ImageDist();
+    }
+    if (fileMissing) {
+      return imageDist;
+    }
+
+    RecordCursor<ImageRecord> cursor;
+    try {
+      cursor = cursor();
+    }
+    catch (IOException Ex) {
+      LoggerWrapper.log.log(Level.SEVERE, "Error in parsing version number and recordLength: {0}", Ex.toString());
+      return imageDist;
+    }
+
+    try {
+      // Large backlogs of records are decoded in parallel chunks.
+      ImageDist chunk = decodeChunked(new ContrastAggregator(0, 0, Integer.MAX_VALUE));
+      if (chunk != null) {
+        imageDist.merge(chunk);
+      }
+
+      ImageRecord record = cursor.getRecord();
+      while (cursor.next()) {
+        add(record, imageDist);
+      }
+    }
+    catch (EOFException EOFEx) {
+      // Reached end of file
+    }
+    catch (IOException Ex) {
+      LoggerWrapper.log.severe("IO Error in parsing the Image Metrics file.");
+    }
+    return imageDist;
+  }
+
+  private static void add(ImageRecord record, ImageDist target) {
+    for (int entry = 0; entry < record.getNumChannels(); entry++) {
+      target.addContrast(record.getLane(), record.getCycle(), record.getChannel(entry), record.getMinContrast(entry), record.getMaxContrast(entry));
+    }
+  }
+
+  /*
+   * Accumulates the imageDist of the records within the lane and cycle range;
+   * lane 0 accepts all lanes.
+   */
+  private static class ContrastAggregator extends ChunkAggregator<ImageRecord, ImageDist> {
+    private final int lane;
+    private final int firstCycle;
+    private final int lastCycle;
+
+    ContrastAggregator(int lane, int firstCycle, int lastCycle) {
+      this.lane = lane;
+      this.firstCycle = firstCycle;
+      this.lastCycle = lastCycle;
+    }
+
+    @Override
+    public ImageDist newAggregate() {
+      return new ImageDist();
+    }
+
+    @Override
+    public void add(ImageRecord record, ImageDist aggregate) {
+      int cycleNr = record.getCycle();
+      if ((lane > 0 && record.getLane() != lane) || cycleNr < firstCycle || cycleNr > lastCycle) {
+        return;
+      }
+      ImageMetrics.add(record, aggregate);
+    }
+
+    @Override
+    public void merge(ImageDist into, ImageDist from) {
+      into.merge(from);
+    }
+  }
+}
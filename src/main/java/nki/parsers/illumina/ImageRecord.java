@@ -0,0 +1,46 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+/**
+ * Record of ImageMetricsOut.bin: minimum and maximum contrast of one or more
+ * channels. Version 1 records hold a single channel, later versions hold
+ * all channels of the tile.
+ */
+public class ImageRecord extends IlluminaRecord {
+  public static final int NUM_CHANNELS = 4;
+
+  int numChannels;
+  // Channel [A, C, G, T] of entry i.
+  final int[] channels = new int[NUM_CHANNELS];
+  final int[] minContrast = new int[NUM_CHANNELS];
+  final int[] maxContrast = new int[NUM_CHANNELS];
+
+  // Number of channel entries in this record.
+  public int getNumChannels() {
+    return numChannels;
+  }
+
+  public int getChannel(int entry) {
+    return channels[entry];
+  }
+
+  public int getMinContrast(int entry) {
+    return minContrast[entry];
+  }
+
+  public int getMaxContrast(int entry) {
+    return maxContrast[entry];
+  }
+
+  void setChannel(int entry, int channel, int min, int max) {
+    channels[entry] = channel;
+    minContrast[entry] = min;
+    maxContrast[entry] = max;
+  }
+}
@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 
+import nki.io.StringDictionary;
 import nki.objects.Indices;
 import nki.util.LoggerWrapper;
 
@@ -21,6 +22,9 @@ public class IndexMetrics extends GenericIlluminaParser {
   // Instantiate Logger
   private static final LoggerWrapper metrixLogger = LoggerWrapper.getInstance();
 
+  // Index, sample and project names of this file, shared across records and refreshes.
+  private final StringDictionary names = new StringDictionary();
+
   public IndexMetrics(String source, int state) {
     super(IndexMetrics.class, source, state);
   }
@@ -48,47 +52,63 @@ public class IndexMetrics extends GenericIlluminaParser {
 	 * W bytes: sample project name string (string encoded in UTF-8
 	 */
 
+  /*
+   * IndexMetricsOut.bin is (re)written as a whole. A refresh of an unchanged
+   * file returns the current indices; a changed file is decoded again.
+   */
+  @Override
+  protected boolean isAppendOnly() {
+    return false;
+  }
+
+  @Override
+  protected String getFileType() {
+    return RecordLayouts.INDEX;
+  }
+
+  // Records have a variable length; a truncated record ends the cursor with an EOFException.
+  @Override
+  protected boolean hasCompleteRecord() throws IOException {
+    return leis.available() > 0;
+  }
+
+  /*
+   * Cursor over the records of the file. The record object is reused for
+   * every record.
+   */
+  public RecordCursor<IndexRecord> cursor() throws IOException {
+    return openCursor(new IndexRecord(names));
+  }
+
   public Indices digestData() {
+    if (indices != null && !isAtStart()) {
+      return indices;
+    }
     indices = new Indices();
     if (fileMissing) {
       return indices;
     }
 
-    // First catch version of metrics file.
+    RecordCursor<IndexRecord> cursor;
     try {
-      setVersion(leis.readByte());    // Set Version
+      cursor = cursor();
     }
     catch (IOException Ex) {
       LoggerWrapper.log.log(Level.SEVERE, "Error in parsing version number and recordlength: {0}", Ex.toString());
+      consumeAll();
+      return indices;
     }
 
-    boolean readBool = true;
-
     try {
-      while (readBool) {
-        int laneNr = leis.readUnsignedShort();
-        int tileNr = leis.readUnsignedShort();
-        int readNr = leis.readUnsignedShort();
-
-        int numBytesIdx = leis.readUnsignedShort();
-
-        String indexSeq = leis.readUTF8String(numBytesIdx);
-
-        long numClustersIdx = (long)leis.readInt();
-        int numBytesSample = leis.readUnsignedShort();
-
-        String sampleSeq = leis.readUTF8String(numBytesSample);
-
-        int numBytesProject = leis.readUnsignedShort();
-
-        String projectSeq = leis.readUTF8String(numBytesProject);
-
-        indices.setIndex(projectSeq, sampleSeq, indexSeq, numClustersIdx, laneNr, readNr);
+      IndexRecord record = cursor.getRecord();
+      while (cursor.next()) {
+        indices.setIndex(record.getProjectName(), record.getSampleName(), record.getIndexSeq(), record.getNumClusters(), record.getLane(), record.getReadNum());
       }
     }
     catch (IOException ExMain) {
-      readBool = false;
+      // Reached end of file
     }
+    consumeAll();
 
     return indices;
   }
@@ -0,0 +1,47 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import nki.io.StringDictionary;
+
+/**
+ * Variable length record of IndexMetricsOut.bin. The names are interned
+ * through the dictionary of the parser.
+ */
+public class IndexRecord extends IlluminaRecord {
+  final StringDictionary names;
+  int readNum;
+  String indexSeq;
+  long numClusters;
+  String sampleName;
+  String projectName;
+
+  public IndexRecord(StringDictionary names) {
+    this.names = names;
+  }
+
+  public int getReadNum() {
+    return readNum;
+  }
+
+  public String getIndexSeq() {
+    return indexSeq;
+  }
+
+  public long getNumClusters() {
+    return numClusters;
+  }
+
+  public String getSampleName() {
+    return sampleName;
+  }
+
+  public String getProjectName() {
+    return projectName;
+  }
+}
@@ -0,0 +1,65 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import nki.objects.LaneCycleStats;
+
+/**
+ * Accumulates per-cycle records into LaneCycleStats. Subclasses provide the
+ * record and copy its values to the value slots. Records outside the
+ * requested lane and cycle range are skipped.
+ */
+abstract class LaneCycleStatsAggregator<R extends IlluminaRecord> extends ChunkAggregator<R, LaneCycleStatsAggregator.Chunk> {
+  private final int numValues;
+  private final int lane;
+  private final int firstCycle;
+  private final int lastCycle;
+
+  static class Chunk {
+    final LaneCycleStats stats;
+    final double[] values;
+
+    Chunk(int numValues) {
+      stats = new LaneCycleStats(numValues);
+      values = new double[numValues];
+    }
+  }
+
+  // lane 0 accepts all lanes.
+  LaneCycleStatsAggregator(int numValues, int lane, int firstCycle, int lastCycle) {
+    this.numValues = numValues;
+    this.lane = lane;
+    this.firstCycle = firstCycle;
+    this.lastCycle = lastCycle;
+  }
+
+  // Copy the values of record to the value slots.
+  protected abstract void getValues(R record, double[] values);
+
+  @Override
+  public Chunk newAggregate() {
+    return new Chunk(numValues);
+  }
+
+  @Override
+  public void add(R record, Chunk chunk) {
+    int laneNr = record.getLane();
+    int cycleNr = record.getCycle();
+    if ((lane > 0 && laneNr != lane) || cycleNr < firstCycle || cycleNr > lastCycle) {
+      return;
+    }
+
+    getValues(record, chunk.values);
+    chunk.stats.add(laneNr, cycleNr, chunk.values);
+  }
+
+  @Override
+  public void merge(Chunk into, Chunk from) {
+    into.stats.merge(from.stats);
+  }
+}
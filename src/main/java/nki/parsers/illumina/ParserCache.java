@@ -0,0 +1,183 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import nki.constants.Constants;
+import nki.util.LoggerWrapper;
+
+/**
+ * Keeps InterOp parsers alive between refreshes of a run.
+ * A cached parser remembers how far its source has been decoded and holds on
+ * to the aggregates built so far, so a refresh only decodes the records that
+ * have been appended since the previous refresh.
+ *
+ * Only parsers of runs that are still running are kept: MetrixContainer
+ * evicts the parsers of finished and hanging runs after parsing them, and
+ * parsers whose source has not been modified within Constants.ACTIVE_TIMEOUT
+ * are dropped when a new parser is cached.
+ *
+ * Callers synchronize on the returned parser and call ensureOpen() on it
+ * before digesting it, and keep the lock while reading the aggregates it
+ * returns. The parser is only reopened while its lock is held, so concurrent
+ * refreshes of the same run do not close each other's source stream.
+ */
+public class ParserCache {
+  // Upper bound on the parsers kept (8 InterOp files for a handful of active runs).
+  private static final int MAX_ENTRIES = 64;
+
+  // Parsers dropped by removeEldestEntry; closed outside of the cache lock.
+  private static final List<GenericIlluminaParser> evicted = new ArrayList<>();
+
+  private static final Map<String, GenericIlluminaParser> parsers = new LinkedHashMap<String, GenericIlluminaParser>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, GenericIlluminaParser> eldest) {
+      if (size() > MAX_ENTRIES) {
+        evicted.add(eldest.getValue());
+        return true;
+      }
+      return false;
+    }
+  };
+
+  private ParserCache() {
+  }
+
+  /*
+   * Return the cached parser for source. A new parser is created when none
+   * is cached yet. The parser is not reopened here; see
+   * GenericIlluminaParser.ensureOpen().
+   */
+  public static <T extends GenericIlluminaParser> T getParser(Class<T> c, String source, int state) {
+    return getParser(c, source, source, state, null);
+  }
+
+  /*
+   * Return the parser cached under key for source. A new parser only decodes
+   * the tiles accepted by sampler, or all tiles when sampler is null; sampled
+   * parsers are cached under their own key so they resume incrementally
+   * without mixing with the parser of all tiles.
+   */
+  public static <T extends GenericIlluminaParser> T getParser(Class<T> c, String key, String source, int state, TileSampler sampler) {
+    GenericIlluminaParser parser;
+    synchronized (parsers) {
+      parser = parsers.get(key);
+    }
+
+    if (c.isInstance(parser)) {
+      return c.cast(parser);
+    }
+
+    T newParser = newParser(c, source, state);
+    if (newParser != null) {
+      newParser.setTileSampler(sampler);
+    }
+    if (newParser != null && !newParser.getFileMissing()) {
+      synchronized (parsers) {
+        dropStale();
+        parsers.put(key, newParser);
+      }
+      close(drainEvicted());
+    }
+    return newParser;
+  }
+
+  public static boolean isCached(String source) {
+    synchronized (parsers) {
+      return parsers.containsKey(source);
+    }
+  }
+
+  /*
+   * A new parser for source that is not cached, or null when c can not be
+   * instantiated.
+   */
+  public static <T extends GenericIlluminaParser> T newParser(Class<T> c, String source, int state) {
+    try {
+      return c.getConstructor(String.class, int.class).newInstance(source, state);
+    }
+    catch (ReflectiveOperationException roe) {
+      LoggerWrapper.log.log(Level.SEVERE, "Unable to instantiate parser {0}: {1}", new Object[]{c.getSimpleName(), roe.toString()});
+      return null;
+    }
+  }
+
+  // Drop the parser cached under key, if any.
+  public static void remove(String key) {
+    GenericIlluminaParser dropped;
+    synchronized (parsers) {
+      dropped = parsers.remove(key);
+    }
+    if (dropped != null) {
+      close(Collections.singletonList(dropped));
+    }
+  }
+
+  /*
+   * Drop all cached parsers for sources within the given run directory.
+   */
+  public static void evict(String runDir) {
+    String prefix = runDir.endsWith(File.separator) ? runDir : runDir + File.separator;
+    List<GenericIlluminaParser> dropped = new ArrayList<>();
+    synchronized (parsers) {
+      Iterator<Map.Entry<String, GenericIlluminaParser>> it = parsers.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<String, GenericIlluminaParser> entry = it.next();
+        if (entry.getKey().startsWith(prefix)) {
+          dropped.add(entry.getValue());
+          it.remove();
+        }
+      }
+    }
+    close(dropped);
+  }
+
+  /*
+   * Move parsers whose source has not been modified within the active timeout
+   * to the evicted list; their run has stopped appending. Called with the
+   * cache lock held.
+   */
+  private static void dropStale() {
+    Iterator<GenericIlluminaParser> it = parsers.values().iterator();
+    while (it.hasNext()) {
+      GenericIlluminaParser parser = it.next();
+      if (parser.getLastModifiedSourceDiff() >= Constants.ACTIVE_TIMEOUT) {
+        evicted.add(parser);
+        it.remove();
+      }
+    }
+  }
+
+  private static List<GenericIlluminaParser> drainEvicted() {
+    synchronized (parsers) {
+      List<GenericIlluminaParser> drained = new ArrayList<>(evicted);
+      evicted.clear();
+      return drained;
+    }
+  }
+
+  /*
+   * Close dropped parsers under their own lock; a thread that is still
+   * digesting one keeps it until it is done.
+   */
+  private static void close(List<GenericIlluminaParser> dropped) {
+    for (GenericIlluminaParser parser : dropped) {
+      synchronized (parser) {
+        parser.closeSourceStream();
+      }
+    }
+  }
+}
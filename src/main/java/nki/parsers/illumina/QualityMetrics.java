@@ -9,18 +9,22 @@ package nki.parsers.illumina;
 
 import java.io.IOException;
 import java.io.EOFException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import nki.core.MetrixLogic;
 
+import nki.objects.QScoreAccumulator;
 import nki.objects.QualityScores;
-import nki.objects.QualityMap;
 import nki.objects.Reads;
 import nki.util.LoggerWrapper;
 
 public class QualityMetrics extends GenericIlluminaParser {
   QualityScores qScores;
+  // Accumulators fed with every decoded record.
+  private List<QScoreAccumulator> accumulators = new ArrayList<>();
+  // In streaming mode decoded records are only passed to the accumulators.
+  private boolean streaming = false;
 
   // Instantiate Logger
   private static final LoggerWrapper metrixLogger = LoggerWrapper.getInstance();
@@ -29,6 +33,47 @@ public class QualityMetrics extends GenericIlluminaParser {
     super(QualityMetrics.class, source, state);
   }
 
+  /*
+   * Register an accumulator. When records have been decoded already the
+   * source is decoded again from the start on the next digest.
+   */
+  public void addAccumulator(QScoreAccumulator accumulator) {
+    accumulators.add(accumulator);
+    if (!isAtStart()) {
+      reset();
+      reopen();
+    }
+  }
+
+  public <T extends QScoreAccumulator> T getAccumulator(Class<T> c) {
+    for (QScoreAccumulator accumulator : accumulators) {
+      if (c.isInstance(accumulator)) {
+        return c.cast(accumulator);
+      }
+    }
+    return null;
+  }
+
+  /*
+   * Streaming mode does not retain the decoded records in the QualityScores
+   * returned by digestData(); only the registered accumulators see them.
+   * Switching mode after records have been decoded starts over from the
+   * beginning of the source.
+   */
+  public void setStreaming(boolean streaming) {
+    if (this.streaming != streaming) {
+      this.streaming = streaming;
+      if (!isAtStart()) {
+        reset();
+        reopen();
+      }
+    }
+  }
+
+  public boolean isStreaming() {
+    return streaming;
+  }
+
   public QualityScores getQualityScores() {
     if (qScores == null) {
       qScores = digestData();
@@ -45,81 +90,67 @@ public class QualityMetrics extends GenericIlluminaParser {
 	 *	2 bytes: tile number (uint16)
 	 *	2 bytes: cycle number (uint16)
 	 *	4 x 50 bytes: number of clusters assigned score (uint32) Q1 through Q50
+	 *	Versions 5 and 6 can describe QScore bins in the header (see
+	 *	RecordLayouts.QualityLayout); binned scores keep one count per bin.
 	 */
 
   public QualityScores digestData() {
-    qScores = new QualityScores();
+    if (qScores == null || isAtStart()) {
+      qScores = new QualityScores();
+      for (QScoreAccumulator accumulator : accumulators) {
+        accumulator.reset();
+      }
+    }
     if (fileMissing) {
       return qScores;
     }
 
+    boolean fromStart = isAtStart();
+    RecordCursor<QualityRecord> cursor;
     try {
-      setVersion(leis.readByte());
-      setRecordLength(leis.readByte());
+      cursor = cursor();
+      if (fromStart) {
+        qScores = newQualityScores();
+        qScores.setSource(this.getSource());
+        qScores.setVersion(this.getVersion());
+        qScores.setRecordLength(this.getRecordLength());
+        for (QScoreAccumulator accumulator : accumulators) {
+          accumulator.setBinning(qScores);
+        }
+      }
     }
     catch (IOException Ex) {
       LoggerWrapper.log.log(Level.SEVERE, "Error in parsing version number and recordLength: {0}", Ex.toString());
+      return qScores;
     }
 
     try {
-      Map<Integer, QualityMap> cycleMap;
-
-      qScores.setSource(this.getSource());
-      qScores.setVersion(this.getVersion());
-      qScores.setRecordLength(this.getRecordLength());
-
-      // Has QScore Binning been applied? (Only for V5)
-      if(this.getVersion() == 5){
-        byte qsBinning = leis.readByte();
-        if(qsBinning == 1){
-              // QScoreBinning has been applied. Skip next 22 bytes where Qbins are described.
-            LoggerWrapper.log.log(Level.FINE, "QScoreBinning has been applied.");
-            leis.readByteArray(22);
-        }else{
-            LoggerWrapper.log.log(Level.FINE, "No QScoreBinning has been applied.");
-        }
-      }else{
-            LoggerWrapper.log.log(Level.FINE, "Version different: " + this.getVersion());
-      }
-      
-      boolean qcFlag;
-      QualityMap qMap;
-      while (true) {
-        int laneNr = leis.readUnsignedShort();
-        int tileNr = leis.readUnsignedShort();
-        int cycleNr = leis.readUnsignedShort();
-
-        if (qScores.getLane(laneNr) != null) {
-          cycleMap = qScores.getLane(laneNr);
+      // Large backlogs of records are decoded in parallel chunks.
+      long chunkStart = getOffset();
+      long chunkRecords = getRecordCount();
+      QualityChunk chunk = decodeChunked(new QualityChunkAggregator(accumulators, !streaming));
+      if (chunk != null && (chunk.conflict || !canMerge(accumulators, chunk.accumulators))) {
+        // Records are repeated across chunks; the serial decode below skips them.
+        rewind(chunkStart, chunkRecords);
+      }
+      else if (chunk != null) {
+        if (!streaming) {
+          qScores.addAll(chunk.scores);
         }
-        else {
-          cycleMap = new HashMap<>();
+        for (int i = 0; i < accumulators.size(); i++) {
+          accumulators.get(i).merge(chunk.accumulators.get(i));
         }
+      }
 
-        if (cycleMap.containsKey(cycleNr)) {
-          qMap = cycleMap.get(cycleNr);
-        }
-        else {
-          qMap = new QualityMap();
+      QualityRecord record = cursor.getRecord();
+      while (cursor.next()) {
+        long[] scores = record.getCounts();
+        if (!streaming) {
+          qScores.setScores(record.getLane(), record.getTile(), record.getCycle(), scores);
         }
-
-        qcFlag = true;
-        int qcRecord = 1;
-
-        while (qcFlag) {
-
-          if (qcRecord == 50) {
-            qcFlag = false;
-          }
-          //if(!rds.cycleIsIndex(cycleNr)){
-          qMap.addMapping(tileNr, qcRecord, leis.readInt());
-          //}else{
-          //	leis.readInt();
-          //}
-          qcRecord++;
+        for (QScoreAccumulator accumulator : accumulators) {
+          accumulator.addRecord(record.getLane(), record.getTile(), record.getCycle(), scores);
         }
-        cycleMap.put(cycleNr, qMap);
-        qScores.setLane(cycleMap, laneNr);
       }
     }
     catch (EOFException EOFEx) {
@@ -133,19 +164,138 @@ public class QualityMetrics extends GenericIlluminaParser {
     return qScores;
   }
 
+  /*
+   * Cursor over the records that have not been decoded yet. The record
+   * object is reused for every record. Accumulators and streaming mode do
+   * not apply.
+   */
+  public RecordCursor<QualityRecord> cursor() throws IOException {
+    return openCursor();
+  }
+
+  @Override
+  protected String getFileType() {
+    return RecordLayouts.QUALITY;
+  }
+
+  /*
+   * Quality scores of the cycles [firstCycle, lastCycle] of one lane, or of
+   * all lanes when lane is 0. Only the records of these cycles are read;
+   * accumulators and streaming mode do not apply.
+   */
+  public QualityScores digestCycles(int firstCycle, int lastCycle, int lane) {
+    QualityScores scores = new QualityScores();
+    try {
+      scores = decodeCycles(firstCycle, lastCycle, new QualityChunkAggregator(lane, firstCycle, lastCycle)).scores;
+    }
+    catch (IOException Ex) {
+      LoggerWrapper.log.log(Level.SEVERE, "IO Error in parsing cycles {0} - {1} of Quality Metrics: {2}", new Object[]{firstCycle, lastCycle, Ex.toString()});
+    }
+    scores.setSource(this.getSource());
+    return scores;
+  }
+
+  /*
+   * Empty QualityScores for the records of the source. Binned sources only
+   * keep a count per QScore bin.
+   */
+  private QualityScores newQualityScores() {
+    RecordLayout<QualityRecord> layout = getLayout();
+    if (layout instanceof RecordLayouts.QualityLayout) {
+      RecordLayouts.QualityLayout qualityLayout = (RecordLayouts.QualityLayout) layout;
+      if (qualityLayout.isBinned()) {
+        return new QualityScores(qualityLayout.getLowerBounds(), qualityLayout.getUpperBounds(), qualityLayout.getRemappedQScores());
+      }
+    }
+    return new QualityScores();
+  }
+
+  private static boolean canMerge(List<QScoreAccumulator> into, List<QScoreAccumulator> from) {
+    for (int i = 0; i < into.size(); i++) {
+      if (!into.get(i).canMerge(from.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Records of one chunk decoded by the ChunkedDecoder.
+  private static class QualityChunk {
+    QualityScores scores;
+    List<QScoreAccumulator> accumulators;
+    // Set when an accumulator could not merge the chunks; the chunk is discarded.
+    boolean conflict = false;
+  }
+
+  // Creates its QualityScores once the layout of the source is known.
+  private class QualityChunkAggregator extends ChunkAggregator<QualityRecord, QualityChunk> {
+    // Accumulators of the parser; every chunk accumulates into partials of them.
+    private final List<QScoreAccumulator> accumulators;
+    private final boolean keepScores;
+    // Records outside this lane (0 for all lanes) and cycle range are skipped.
+    private int lane = 0;
+    private int firstCycle = 0;
+    private int lastCycle = Integer.MAX_VALUE;
+
+    QualityChunkAggregator(List<QScoreAccumulator> accumulators, boolean keepScores) {
+      this.accumulators = accumulators;
+      this.keepScores = keepScores;
+    }
+
+    QualityChunkAggregator(int lane, int firstCycle, int lastCycle) {
+      this(new ArrayList<QScoreAccumulator>(), true);
+      this.lane = lane;
+      this.firstCycle = firstCycle;
+      this.lastCycle = lastCycle;
+    }
+
+    @Override
+    public QualityChunk newAggregate() {
+      QualityChunk chunk = new QualityChunk();
+      chunk.scores = newQualityScores();
+      chunk.accumulators = new ArrayList<>();
+      for (QScoreAccumulator accumulator : accumulators) {
+        chunk.accumulators.add(accumulator.newPartial());
+      }
+      return chunk;
+    }
+
+    @Override
+    public void add(QualityRecord record, QualityChunk chunk) {
+      int laneNr = record.getLane();
+      int cycleNr = record.getCycle();
+      if ((lane > 0 && laneNr != lane) || cycleNr < firstCycle || cycleNr > lastCycle) {
+        return;
+      }
+
+      if (keepScores) {
+        chunk.scores.setScores(laneNr, record.getTile(), cycleNr, record.getCounts());
+      }
+      for (QScoreAccumulator accumulator : chunk.accumulators) {
+        accumulator.addRecord(laneNr, record.getTile(), cycleNr, record.getCounts());
+      }
+    }
+
+    @Override
+    public void merge(QualityChunk into, QualityChunk from) {
+      if (into.conflict || from.conflict || !canMerge(into.accumulators, from.accumulators)) {
+        into.conflict = true;
+        return;
+      }
+      into.scores.addAll(from.scores);
+      for (int i = 0; i < into.accumulators.size(); i++) {
+        into.accumulators.get(i).merge(from.accumulators.get(i));
+      }
+    }
+  }
+
   public void iterateQS() {
     if (qScores != null) {
-      for (Integer lane : qScores.getRawScores().keySet()) {
-        Map<Integer, QualityMap> laneScores = qScores.getRawScores().get(lane);
-        for (int cycle : laneScores.keySet()) {
-          QualityMap qmap = laneScores.get(cycle);
-          for (int tile : qmap.getMappings().keySet()) {
-            Map<Integer, Integer> qmetricMap = qmap.getMappings().get(tile);
-            for (int metric : qmetricMap.keySet()) {
-              int value = qmetricMap.get(metric);
-              System.out.println("Lane: " + lane + "\tCycle: " + cycle + "\tTile: " + tile + "\tQMetric: " + metric + "\t#Clust\\wScore: " + value);
-            }
-          }
+      for (int record = 0; record < qScores.getNumRecords(); record++) {
+        for (int slot = 0; slot < qScores.getNumSlots(); slot++) {
+          int metric = qScores.getSlotScore(slot);
+          long value = qScores.getSlotCount(record, slot);
+          System.out.println("Lane: " + qScores.getLane(record) + "\tCycle: " + qScores.getCycle(record) + "\tTile: " + qScores.getTile(record) + "\tQMetric: " + metric + "\t#Clust\\wScore: " + value);
         }
       }
     }
@@ -0,0 +1,33 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+/**
+ * Record of QMetricsOut.bin: the number of clusters with each quality score.
+ */
+public class QualityRecord extends IlluminaRecord {
+  final long[] counts;
+
+  public QualityRecord(int numQScores) {
+    counts = new long[numQScores];
+  }
+
+  public int getNumQScores() {
+    return counts.length;
+  }
+
+  // Number of clusters with quality score q (1-based).
+  public long getCount(int q) {
+    return counts[q - 1];
+  }
+
+  // Counts for Q1 .. Qn; the array is reused for the next record.
+  public long[] getCounts() {
+    return counts;
+  }
+}
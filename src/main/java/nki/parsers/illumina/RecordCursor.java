@@ -0,0 +1,52 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import java.io.IOException;
+
+/**
+ * Pull based iteration over the records of an InterOp file. Every record is
+ * decoded into the same record object, so iterating does not allocate.
+ * Each record returned by next() is registered as consumed with the parser,
+ * so a later digest or cursor continues after it.
+ */
+public class RecordCursor<R extends IlluminaRecord> {
+  private final GenericIlluminaParser parser;
+  private final RecordLayout<R> layout;
+  private final R record;
+
+  RecordCursor(GenericIlluminaParser parser, RecordLayout<R> layout, R record) {
+    this.parser = parser;
+    this.layout = layout;
+    this.record = record;
+  }
+
+  /*
+   * Decode the next complete record into getRecord(). Returns false when no
+   * complete record is available (yet). Records of tiles that are not
+   * sampled by the parser are consumed and skipped.
+   */
+  public boolean next() throws IOException {
+    while (parser.hasCompleteRecord()) {
+      layout.read(parser.leis, record);
+      parser.consumeRecord();
+      if (parser.isSampled(record)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public R getRecord() {
+    return record;
+  }
+
+  public RecordLayout<R> getLayout() {
+    return layout;
+  }
+}
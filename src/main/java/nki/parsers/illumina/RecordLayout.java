@@ -0,0 +1,57 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import java.io.IOException;
+
+import nki.io.LittleEndianInputStream;
+
+/**
+ * Record layout of one version of an InterOp file, parsed from its header.
+ * Files with a fixed record length use a FixedRecordLayout, files whose
+ * records have a variable length a StreamedRecordLayout.
+ */
+public abstract class RecordLayout<R extends IlluminaRecord> {
+  private final int version;
+  private final int recordLength;
+  private final int headerLength;
+  private final int cycleOffset;
+
+  /*
+   * cycleOffset is the offset of the uint16 cycle number within a record,
+   * or -1 for files without per-cycle records.
+   */
+  protected RecordLayout(int version, int recordLength, int headerLength, int cycleOffset) {
+    this.version = version;
+    this.recordLength = recordLength;
+    this.headerLength = headerLength;
+    this.cycleOffset = cycleOffset;
+  }
+
+  public int getVersion() {
+    return version;
+  }
+
+  // Record length from the file header; 0 for variable length records.
+  public int getRecordLength() {
+    return recordLength;
+  }
+
+  public int getHeaderLength() {
+    return headerLength;
+  }
+
+  public int getCycleOffset() {
+    return cycleOffset;
+  }
+
+  public abstract R newRecord();
+
+  // Decode the record at the current position of in.
+  public abstract void read(LittleEndianInputStream in, R record) throws IOException;
+}
@@ -0,0 +1,611 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import nki.io.LittleEndianInputStream;
+import nki.io.StringDictionary;
+import nki.objects.ErrorDist;
+import nki.objects.QualityScores;
+import nki.util.LoggerWrapper;
+
+/**
+ * Registry of the supported InterOp record layouts, keyed by file type and
+ * version. The layout of a file is selected by the version byte at the start
+ * of the file; the rest of the header is parsed by the layout factory.
+ */
+public class RecordLayouts {
+  public static final String QUALITY = "QMetrics";
+  public static final String TILE = "TileMetrics";
+  public static final String EXTRACTION = "ExtractionMetrics";
+  public static final String ERROR = "ErrorMetrics";
+  public static final String CORRECTED_INTENSITY = "CorrectedIntMetrics";
+  public static final String INDEX = "IndexMetrics";
+  public static final String IMAGE = "ImageMetrics";
+  public static final String CONTROL = "ControlMetrics";
+
+  // Offset of the uint16 cycle number in records with a uint16 tile number.
+  private static final int CYCLE_OFFSET = 4;
+
+  private static final Map<String, LayoutFactory> FACTORIES = new HashMap<>();
+
+  private RecordLayouts() {
+  }
+
+  /*
+   * Parses the header after the version byte and creates the layout.
+   */
+  private abstract static class LayoutFactory {
+    abstract RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException;
+  }
+
+  static {
+    LayoutFactory quality = new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        return new QualityLayout(version, in.readUnsignedByte(), in);
+      }
+    };
+    register(QUALITY, 4, quality);
+    register(QUALITY, 5, quality);
+    register(QUALITY, 6, quality);
+
+    register(TILE, 2, new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        return new TileV2Layout(in.readUnsignedByte());
+      }
+    });
+    register(TILE, 3, new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        int recordLength = in.readUnsignedByte();
+        return new TileV3Layout(recordLength, in.readFloat());
+      }
+    });
+
+    register(EXTRACTION, 2, new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        return new ExtractionV2Layout(in.readUnsignedByte());
+      }
+    });
+    register(EXTRACTION, 3, new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        int recordLength = in.readUnsignedByte();
+        return new ExtractionV3Layout(recordLength, in.readUnsignedByte());
+      }
+    });
+
+    register(ERROR, 3, new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        return new ErrorV3Layout(in.readUnsignedByte());
+      }
+    });
+
+    register(CORRECTED_INTENSITY, 2, new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        return new CorrectedIntensityV2Layout(in.readUnsignedByte());
+      }
+    });
+
+    register(INDEX, 1, new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        return new IndexV1Layout();
+      }
+    });
+
+    register(IMAGE, 1, new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        return new ImageV1Layout(in.readUnsignedByte());
+      }
+    });
+    LayoutFactory image = new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        int recordLength = in.readUnsignedByte();
+        return new ImageChannelsLayout(version, recordLength, in.readUnsignedByte());
+      }
+    };
+    register(IMAGE, 2, image);
+    register(IMAGE, 3, image);
+
+    register(CONTROL, 1, new LayoutFactory() {
+      @Override
+      RecordLayout<?> read(int version, LittleEndianInputStream in) throws IOException {
+        return new ControlV1Layout();
+      }
+    });
+  }
+
+  private static void register(String fileType, int version, LayoutFactory factory) {
+    FACTORIES.put(fileType + ":" + version, factory);
+  }
+
+  public static boolean isSupported(String fileType, int version) {
+    return FACTORIES.containsKey(fileType + ":" + version);
+  }
+
+  /*
+   * Read the header of a fileType file from in and return the layout of its
+   * records. Throws an IOException for unsupported versions and for record
+   * lengths that do not match the version.
+   */
+  @SuppressWarnings("unchecked")
+  public static <R extends IlluminaRecord> RecordLayout<R> read(String fileType, LittleEndianInputStream in) throws IOException {
+    int version = in.readByte();
+    LayoutFactory factory = FACTORIES.get(fileType + ":" + version);
+    if (factory == null) {
+      throw new IOException("Unsupported " + fileType + " version: " + version);
+    }
+    return (RecordLayout<R>) factory.read(version, in);
+  }
+
+  private static void checkRecordLength(String fileType, int version, int recordLength, int expected) throws IOException {
+    if (recordLength != expected) {
+      throw new IOException("Unexpected " + fileType + " v" + version + " record length: " + recordLength + " (expected " + expected + ")");
+    }
+  }
+
+  /*
+   * QMetricsOut.bin v4, v5 and v6. Version 5 and 6 add a QScore binning flag
+   * to the header, followed by the bins when binning has been applied:
+   *  byte 3: number of bins (N)
+   *  N bytes: lower boundary of every bin
+   *  N bytes: upper boundary of every bin
+   *  N bytes: quality score every bin is remapped to
+   * Records hold the lane, tile and cycle (uint16) and the cluster counts
+   * (uint32) for Q1 through Q50. Binned v6 records only hold the count of
+   * every bin, which is stored at the remapped quality score.
+   */
+  public static class QualityLayout extends FixedRecordLayout<QualityRecord> {
+    private static final int COUNTS_OFFSET = 6;
+
+    // { lower bounds, upper bounds, remapped scores }, empty when not binned.
+    private final int[][] bins;
+    private final int[] remapped;
+    private final boolean binnedRecords;
+
+    QualityLayout(int version, int recordLength, LittleEndianInputStream in) throws IOException {
+      this(version, recordLength, readBins(version, in));
+    }
+
+    private QualityLayout(int version, int recordLength, int[][] bins) throws IOException {
+      super(version, recordLength, headerLength(version, bins), CYCLE_OFFSET);
+      this.bins = bins;
+      this.remapped = bins[2];
+      this.binnedRecords = version >= 6 && remapped.length > 0;
+      checkRecordLength(QUALITY, version, recordLength, COUNTS_OFFSET + 4 * getNumCounts());
+    }
+
+    private static int[][] readBins(int version, LittleEndianInputStream in) throws IOException {
+      if (version < 5 || in.readByte() != 1) {
+        LoggerWrapper.log.log(Level.FINE, "No QScoreBinning has been applied.");
+        return new int[3][0];
+      }
+
+      LoggerWrapper.log.log(Level.FINE, "QScoreBinning has been applied.");
+      int numBins = in.readUnsignedByte();
+      int[][] bins = new int[3][numBins];
+      for (int[] field : bins) {
+        for (int bin = 0; bin < numBins; bin++) {
+          field[bin] = in.readUnsignedByte();
+        }
+      }
+      return bins;
+    }
+
+    // Version, record length, binning flag and, when binned, the bins.
+    private static int headerLength(int version, int[][] bins) {
+      if (version < 5) {
+        return 2;
+      }
+      return bins[2].length == 0 ? 3 : 4 + 3 * bins[2].length;
+    }
+
+    public boolean isBinned() {
+      return remapped.length > 0;
+    }
+
+    public int getNumBins() {
+      return remapped.length;
+    }
+
+    // Lowest QScore of every bin.
+    public int[] getLowerBounds() {
+      return bins[0].clone();
+    }
+
+    // Highest QScore of every bin.
+    public int[] getUpperBounds() {
+      return bins[1].clone();
+    }
+
+    // QScore the clusters of every bin are reported at.
+    public int[] getRemappedQScores() {
+      return remapped.clone();
+    }
+
+    // Number of uint32 counts in every record.
+    private int getNumCounts() {
+      return binnedRecords ? remapped.length : QualityScores.DEFAULT_NUM_QSCORES;
+    }
+
+    @Override
+    public QualityRecord newRecord() {
+      return new QualityRecord(QualityScores.DEFAULT_NUM_QSCORES);
+    }
+
+    @Override
+    protected void decode(ByteBuffer buf, int base, QualityRecord record) {
+      record.lane = buf.getShort(base) & 0xFFFF;
+      record.tile = buf.getShort(base + 2) & 0xFFFF;
+      record.cycle = buf.getShort(base + 4) & 0xFFFF;
+
+      long[] counts = record.counts;
+      int pos = base + COUNTS_OFFSET;
+      if (binnedRecords) {
+        Arrays.fill(counts, 0);
+        for (int bin = 0; bin < remapped.length; bin++, pos += 4) {
+          int q = remapped[bin];
+          if (q >= 1 && q <= counts.length) {
+            counts[q - 1] += buf.getInt(pos) & 0xFFFFFFFFL;
+          }
+        }
+      }
+      else {
+        for (int q = 0; q < counts.length; q++, pos += 4) {
+          counts[q] = buf.getInt(pos) & 0xFFFFFFFFL;
+        }
+      }
+    }
+  }
+
+  /*
+   * TileMetricsOut.bin v2: lane, tile and metric code (uint16) and the metric
+   * value (float).
+   */
+  static class TileV2Layout extends FixedRecordLayout<TileRecord> {
+    TileV2Layout(int recordLength) throws IOException {
+      super(2, recordLength, 2, -1);
+      checkRecordLength(TILE, 2, recordLength, 10);
+    }
+
+    @Override
+    public TileRecord newRecord() {
+      return new TileRecord();
+    }
+
+    @Override
+    protected void decode(ByteBuffer buf, int base, TileRecord record) {
+      record.lane = buf.getShort(base) & 0xFFFF;
+      record.tile = buf.getShort(base + 2) & 0xFFFF;
+      record.numMetrics = 1;
+      record.setMetric(0, buf.getShort(base + 4) & 0xFFFF, buf.getFloat(base + 6));
+    }
+  }
+
+  /*
+   * TileMetricsOut.bin v3. The header holds the tile area in mm2 (float).
+   * Records hold the lane (uint16), tile (uint32) and a record code (byte):
+   *  't': cluster count and cluster count passing filters (float)
+   *  'r': read number (uint32) and percent aligned (float)
+   * The values are translated to the v2 metric codes; densities are the
+   * counts divided by the tile area.
+   */
+  static class TileV3Layout extends FixedRecordLayout<TileRecord> {
+    private static final int TILE_CODE = 't';
+    private static final int READ_CODE = 'r';
+
+    private final float area;
+
+    TileV3Layout(int recordLength, float area) throws IOException {
+      super(3, recordLength, 6, -1);
+      this.area = area;
+      checkRecordLength(TILE, 3, recordLength, 15);
+    }
+
+    @Override
+    public TileRecord newRecord() {
+      return new TileRecord();
+    }
+
+    @Override
+    protected void decode(ByteBuffer buf, int base, TileRecord record) {
+      record.lane = buf.getShort(base) & 0xFFFF;
+      record.tile = buf.getInt(base + 2);
+
+      int code = buf.get(base + 6) & 0xFF;
+      if (code == TILE_CODE) {
+        float clusters = buf.getFloat(base + 7);
+        float clustersPF = buf.getFloat(base + 11);
+        record.numMetrics = 4;
+        record.setMetric(0, 100, area > 0 ? clusters / area : 0);
+        record.setMetric(1, 101, area > 0 ? clustersPF / area : 0);
+        record.setMetric(2, 102, clusters);
+        record.setMetric(3, 103, clustersPF);
+      }
+      else if (code == READ_CODE) {
+        int readNum = buf.getInt(base + 7);
+        record.numMetrics = 1;
+        record.setMetric(0, 300 + readNum - 1, buf.getFloat(base + 11));
+      }
+      else {
+        record.numMetrics = 0;
+      }
+    }
+  }
+
+  /*
+   * ExtractionMetricsOut.bin v2: lane, tile and cycle (uint16), FWHM (float)
+   * and raw intensity (uint16) for [A, C, G, T] and the CIF date / time.
+   */
+  static class ExtractionV2Layout extends FixedRecordLayout<ExtractionRecord> {
+    ExtractionV2Layout(int recordLength) throws IOException {
+      super(2, recordLength, 2, CYCLE_OFFSET);
+      checkRecordLength(EXTRACTION, 2, recordLength, 38);
+    }
+
+    @Override
+    public ExtractionRecord newRecord() {
+      return new ExtractionRecord();
+    }
+
+    @Override
+    protected void decode(ByteBuffer buf, int base, ExtractionRecord record) {
+      record.lane = buf.getShort(base) & 0xFFFF;
+      record.tile = buf.getShort(base + 2) & 0xFFFF;
+      record.cycle = buf.getShort(base + 4) & 0xFFFF;
+      for (int ch = 0; ch < ExtractionRecord.NUM_CHANNELS; ch++) {
+        record.fwhm[ch] = buf.getFloat(base + 6 + 4 * ch);
+        record.rawIntensity[ch] = buf.getShort(base + 22 + 2 * ch) & 0xFFFF;
+      }
+      record.dateTime = buf.getLong(base + 30);
+    }
+  }
+
+  /*
+   * ExtractionMetricsOut.bin v3. The header holds the number of channels.
+   * Records hold the lane (uint16), tile (uint32), cycle (uint16), FWHM
+   * (float) and raw intensity (uint16) per channel; there is no date / time.
+   * Channels beyond [A, C, G, T] are ignored.
+   */
+  static class ExtractionV3Layout extends FixedRecordLayout<ExtractionRecord> {
+    private final int numChannels;
+
+    ExtractionV3Layout(int recordLength, int numChannels) throws IOException {
+      super(3, recordLength, 3, 6);
+      this.numChannels = numChannels;
+      checkRecordLength(EXTRACTION, 3, recordLength, 8 + 6 * numChannels);
+    }
+
+    @Override
+    public ExtractionRecord newRecord() {
+      return new ExtractionRecord();
+    }
+
+    @Override
+    protected void decode(ByteBuffer buf, int base, ExtractionRecord record) {
+      record.lane = buf.getShort(base) & 0xFFFF;
+      record.tile = buf.getInt(base + 2);
+      record.cycle = buf.getShort(base + 6) & 0xFFFF;
+      int intensityOffset = base + 8 + 4 * numChannels;
+      for (int ch = 0; ch < ExtractionRecord.NUM_CHANNELS; ch++) {
+        if (ch < numChannels) {
+          record.fwhm[ch] = buf.getFloat(base + 8 + 4 * ch);
+          record.rawIntensity[ch] = buf.getShort(intensityOffset + 2 * ch) & 0xFFFF;
+        }
+        else {
+          record.fwhm[ch] = 0;
+          record.rawIntensity[ch] = 0;
+        }
+      }
+      record.dateTime = 0;
+    }
+  }
+
+  /*
+   * ErrorMetricsOut.bin v3: lane, tile and cycle (uint16), error rate (float)
+   * and the number of reads with 0 .. 4 errors (uint32).
+   */
+  static class ErrorV3Layout extends FixedRecordLayout<ErrorRecord> {
+    ErrorV3Layout(int recordLength) throws IOException {
+      super(3, recordLength, 2, CYCLE_OFFSET);
+      checkRecordLength(ERROR, 3, recordLength, 30);
+    }
+
+    @Override
+    public ErrorRecord newRecord() {
+      return new ErrorRecord();
+    }
+
+    @Override
+    protected void decode(ByteBuffer buf, int base, ErrorRecord record) {
+      record.lane = buf.getShort(base) & 0xFFFF;
+      record.tile = buf.getShort(base + 2) & 0xFFFF;
+      record.cycle = buf.getShort(base + 4) & 0xFFFF;
+      record.errorRate = buf.getFloat(base + 6);
+      for (int numErrors = 0; numErrors <= ErrorDist.MAX_ERRORS; numErrors++) {
+        record.numReads[numErrors] = buf.getInt(base + 10 + 4 * numErrors) & 0xFFFFFFFFL;
+      }
+    }
+  }
+
+  /*
+   * CorrectedIntMetricsOut.bin v2: lane, tile and cycle (uint16), average
+   * corrected intensity, corrected intensity for [A, C, G, T] and for the
+   * clusters called as [A, C, G, T] (uint16), the number of base calls for
+   * no call and [A, C, G, T] and the signal to noise ratio (float).
+   */
+  static class CorrectedIntensityV2Layout extends FixedRecordLayout<CorrectedIntensityRecord> {
+    CorrectedIntensityV2Layout(int recordLength) throws IOException {
+      super(2, recordLength, 2, CYCLE_OFFSET);
+      checkRecordLength(CORRECTED_INTENSITY, 2, recordLength, 48);
+    }
+
+    @Override
+    public CorrectedIntensityRecord newRecord() {
+      return new CorrectedIntensityRecord();
+    }
+
+    @Override
+    protected void decode(ByteBuffer buf, int base, CorrectedIntensityRecord record) {
+      record.lane = buf.getShort(base) & 0xFFFF;
+      record.tile = buf.getShort(base + 2) & 0xFFFF;
+      record.cycle = buf.getShort(base + 4) & 0xFFFF;
+      record.averageIntensity = buf.getShort(base + 6) & 0xFFFF;
+      for (int ch = 0; ch < CorrectedIntensityRecord.NUM_CHANNELS; ch++) {
+        record.correctedIntensity[ch] = buf.getShort(base + 8 + 2 * ch) & 0xFFFF;
+        record.calledIntensity[ch] = buf.getShort(base + 16 + 2 * ch) & 0xFFFF;
+      }
+      for (int call = 0; call < CorrectedIntensityRecord.NUM_BASECALLS; call++) {
+        record.baseCalls[call] = buf.getFloat(base + 24 + 4 * call);
+      }
+      record.signalToNoise = buf.getFloat(base + 44);
+    }
+  }
+
+  /*
+   * IndexMetricsOut.bin v1. The header only holds the version. Records have
+   * a variable length and are read field by field from the stream:
+   *  lane, tile and read number (uint16)
+   *  index name length (uint16) and index name
+   *  number of clusters (uint32)
+   *  sample name length (uint16) and sample name
+   *  project name length (uint16) and project name
+   */
+  static class IndexV1Layout extends StreamedRecordLayout<IndexRecord> {
+    IndexV1Layout() {
+      super(1, 1);
+    }
+
+    @Override
+    public IndexRecord newRecord() {
+      return new IndexRecord(new StringDictionary());
+    }
+
+    @Override
+    public void read(LittleEndianInputStream in, IndexRecord record) throws IOException {
+      record.lane = in.readUnsignedShort();
+      record.tile = in.readUnsignedShort();
+      record.readNum = in.readUnsignedShort();
+      record.indexSeq = record.names.read(in, in.readUnsignedShort());
+      record.numClusters = in.readUint32();
+      record.sampleName = record.names.read(in, in.readUnsignedShort());
+      record.projectName = record.names.read(in, in.readUnsignedShort());
+    }
+  }
+
+  /*
+   * ImageMetricsOut.bin v1: lane, tile, cycle, channel id (0 - 3 for
+   * [A, C, G, T]) and the minimum and maximum contrast (uint16). Every record
+   * holds one channel.
+   */
+  static class ImageV1Layout extends FixedRecordLayout<ImageRecord> {
+    ImageV1Layout(int recordLength) throws IOException {
+      super(1, recordLength, 2, CYCLE_OFFSET);
+      checkRecordLength(IMAGE, 1, recordLength, 12);
+    }
+
+    @Override
+    public ImageRecord newRecord() {
+      return new ImageRecord();
+    }
+
+    @Override
+    protected void decode(ByteBuffer buf, int base, ImageRecord record) {
+      record.lane = buf.getShort(base) & 0xFFFF;
+      record.tile = buf.getShort(base + 2) & 0xFFFF;
+      record.cycle = buf.getShort(base + 4) & 0xFFFF;
+      int channel = buf.getShort(base + 6) & 0xFFFF;
+      if (channel < ImageRecord.NUM_CHANNELS) {
+        record.numChannels = 1;
+        record.setChannel(0, channel, buf.getShort(base + 8) & 0xFFFF, buf.getShort(base + 10) & 0xFFFF);
+      }
+      else {
+        record.numChannels = 0;
+      }
+    }
+  }
+
+  /*
+   * ImageMetricsOut.bin v2 and v3. The header holds the number of channels.
+   * Records hold the lane (uint16), tile (uint16 in v2, uint32 in v3), cycle
+   * (uint16) and the minimum and maximum contrast (uint16) of every channel.
+   * Channels beyond [A, C, G, T] are ignored.
+   */
+  static class ImageChannelsLayout extends FixedRecordLayout<ImageRecord> {
+    private final int numChannels;
+    private final int tileLength;
+
+    ImageChannelsLayout(int version, int recordLength, int numChannels) throws IOException {
+      super(version, recordLength, 3, version >= 3 ? 6 : CYCLE_OFFSET);
+      this.numChannels = numChannels;
+      this.tileLength = version >= 3 ? 4 : 2;
+      checkRecordLength(IMAGE, version, recordLength, 4 + tileLength + 4 * numChannels);
+    }
+
+    @Override
+    public ImageRecord newRecord() {
+      return new ImageRecord();
+    }
+
+    @Override
+    protected void decode(ByteBuffer buf, int base, ImageRecord record) {
+      record.lane = buf.getShort(base) & 0xFFFF;
+      record.tile = tileLength == 4 ? buf.getInt(base + 2) : buf.getShort(base + 2) & 0xFFFF;
+      record.cycle = buf.getShort(base + 2 + tileLength) & 0xFFFF;
+      int minOffset = base + 4 + tileLength;
+      int maxOffset = minOffset + 2 * numChannels;
+      record.numChannels = Math.min(numChannels, ImageRecord.NUM_CHANNELS);
+      for (int ch = 0; ch < record.numChannels; ch++) {
+        record.setChannel(ch, ch, buf.getShort(minOffset + 2 * ch) & 0xFFFF, buf.getShort(maxOffset + 2 * ch) & 0xFFFF);
+      }
+    }
+  }
+
+  /*
+   * ControlMetricsOut.bin v1. The header only holds the version. Records have
+   * a variable length and are read field by field from the stream:
+   *  lane, tile and read number (uint16)
+   *  control name length (uint16) and control name
+   *  index name length (uint16) and index name
+   *  number of clusters identified as control (uint32)
+   */
+  static class ControlV1Layout extends StreamedRecordLayout<ControlRecord> {
+    ControlV1Layout() {
+      super(1, 1);
+    }
+
+    @Override
+    public ControlRecord newRecord() {
+      return new ControlRecord(new StringDictionary());
+    }
+
+    @Override
+    public void read(LittleEndianInputStream in, ControlRecord record) throws IOException {
+      record.lane = in.readUnsignedShort();
+      record.tile = in.readUnsignedShort();
+      record.readNum = in.readUnsignedShort();
+      record.controlName = record.names.read(in, in.readUnsignedShort());
+      record.indexName = record.names.read(in, in.readUnsignedShort());
+      record.numClusters = in.readUint32();
+    }
+  }
+}
@@ -0,0 +1,20 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+/**
+ * Layout of records with a variable length, such as the names in
+ * IndexMetrics and ControlMetrics records. Records are read field by field
+ * from the stream; they have no record length and no cycle offset.
+ */
+public abstract class StreamedRecordLayout<R extends IlluminaRecord> extends RecordLayout<R> {
+
+  protected StreamedRecordLayout(int version, int headerLength) {
+    super(version, 0, headerLength, -1);
+  }
+}
@@ -9,8 +9,6 @@ package nki.parsers.illumina;
 
 import java.io.IOException;
 import java.io.EOFException;
-import java.util.ArrayList;
-import java.util.*;
 import java.util.logging.Level;
 
 import nki.objects.ClusterDensity;
@@ -21,6 +19,11 @@ import nki.util.LoggerWrapper;
 public class TileMetrics extends GenericIlluminaParser {
   private final static int CLUSTER_DENSITY = 100;
   private final static int CLUSTER_DENSITY_PF = 101;
+  private final static int NUM_CLUSTERS = 102;
+  private final static int NUM_CLUSTERS_PF = 103;
+  private final static int PHASING_FIRST = 200;
+  private final static int PERCENT_ALIGNED_FIRST = 300;
+  private final static int CONTROL_LANE = 400;
 
   // Instantiate Logger
   private static final LoggerWrapper metrixLogger = LoggerWrapper.getInstance();
@@ -33,11 +36,19 @@ public class TileMetrics extends GenericIlluminaParser {
   private PhasingCollection pMap = new PhasingCollection();
   // LANE --> READ --> PrePhasingScores
   private PhasingCollection preMap = new PhasingCollection();
+  // LANE --> READ --> Percent aligned
+  private PhasingCollection alignedMap = new PhasingCollection();
+  // Keep all tile values for exact quantiles; applied when decoding starts.
+  private boolean exact = false;
 
   public TileMetrics(String source, int state) {
     super(TileMetrics.class, source, state);
   }
 
+  public void setExact(boolean exact) {
+    this.exact = exact;
+  }
+
   public ClusterDensity getCDmap() {
     return cdMap;
   }
@@ -70,6 +81,14 @@ public class TileMetrics extends GenericIlluminaParser {
     this.preMap = preMap;
   }
 
+  public PhasingCollection getPercentAlignedMap() {
+    return alignedMap;
+  }
+
+  public void setPercentAlignedMap(PhasingCollection alignedMap) {
+    this.alignedMap = alignedMap;
+  }
+
 	/*
    *	Binary structure:
 	 *	byte 0: file version number (2)
@@ -88,88 +107,93 @@ public class TileMetrics extends GenericIlluminaParser {
 		code (201 + (N  1) * 2): prephasing for read N
 		code (300 + N  1): percent aligned for read N
 		code 400: control lane
+		Version 3 records are translated to these codes by the record layout.
 	 */
 
+  /*
+   * TileMetricsOut.bin is rewritten in place by RTA. A refresh of an unchanged
+   * file keeps the current collections; a changed file is decoded again.
+   */
+  @Override
+  protected boolean isAppendOnly() {
+    return false;
+  }
+
+  @Override
+  protected String getFileType() {
+    return RecordLayouts.TILE;
+  }
+
   public void digestData() {
     if (fileMissing) {
       metrixLogger.log.log(Level.SEVERE, "Unable to parse Tile Metrics");
     }
-    else {
-      try {
-        setVersion(leis.readByte());
-        setRecordLength(leis.readByte());
-      }
-      catch (IOException Ex) {
-        metrixLogger.log.log(Level.SEVERE, "Error in parsing version number and recordLength: {0}", Ex.toString());
-      }
-
-      boolean eofCheck = true;
+    else if (isAtStart()) {
+      cdMap = new ClusterDensity();
+      cdPFMap = new ClusterDensity();
+      pMap = new PhasingCollection();
+      preMap = new PhasingCollection();
+      alignedMap = new PhasingCollection();
+      cdMap.setExact(exact);
+      cdPFMap.setExact(exact);
+      pMap.setExact(exact);
+      preMap.setExact(exact);
+      alignedMap.setExact(exact);
 
       try {
-        int record = 1;
-        int laneCheck = 0;
-        while (eofCheck) {
-          int laneNr = leis.readUnsignedShort();
-          int tileNr = leis.readUnsignedShort();
-          int metricCode = leis.readUnsignedShort();
-          //float metricValue = leis.readFloat();
-          double metricValue = leis.readFloat();
-
-          // Cluster Density Parsing
-          if (metricCode == CLUSTER_DENSITY) {
-            cdMap.setMetric(laneNr, metricValue);
-          }
-          else if (metricCode == CLUSTER_DENSITY_PF) {
-            cdPFMap.setMetric(laneNr, metricValue);
-          }
-
-          //
-          // Possible catch number of clusters here (code 102 && 103)
-          //
-          List<Integer> codeMap = digits(metricCode);
-
-          // Next in loop because were not looking at phasing or prephasing.
-          if (metricCode == (102 | 103)) {
-            continue;
-          }
-
-          // Calc Phasing code / Prephasing code
-          int PHAPRE = (metricCode - 200) % 2;
-          // Calc readnumber from metriccode
-          int readNum = (int) Math.floor((metricCode - 200) / 2) + 1;
-
-          //		if(rds.isIndexedRead(readNum)){
-          //			continue;
-          //		}
-
-          //		if(metricValue == 0){
-          //			continue;
-          //		}
-
-          // Phasing / Pre-phasing Parsing
-          if (codeMap.get(2) == 2) {  // Metric code starts with 2
-            // Phasing
-            if (PHAPRE == 0) {
-              pMap.setPhasing(laneNr, readNum, metricValue);
-            }
-
-            // Prephasing
-            if (PHAPRE == 1) {
-              preMap.setPhasing(laneNr, readNum, metricValue);
+        RecordCursor<TileRecord> cursor = cursor();
+        TileRecord record = cursor.getRecord();
+        while (cursor.next()) {
+          int laneNr = record.getLane();
+          for (int metric = 0; metric < record.getNumMetrics(); metric++) {
+            int metricCode = record.getMetricCode(metric);
+            double metricValue = record.getMetricValue(metric);
+
+            switch (metricCode) {
+              case CLUSTER_DENSITY:
+                cdMap.setMetric(laneNr, metricValue);
+                break;
+              case CLUSTER_DENSITY_PF:
+                cdPFMap.setMetric(laneNr, metricValue);
+                break;
+              case NUM_CLUSTERS:
+                cdMap.setClusterCount(laneNr, metricValue);
+                break;
+              case NUM_CLUSTERS_PF:
+                cdPFMap.setClusterCount(laneNr, metricValue);
+                break;
+              case CONTROL_LANE:
+                cdMap.setControlLane(laneNr, metricValue != 0);
+                break;
+              default:
+                if (metricCode >= PHASING_FIRST && metricCode < PERCENT_ALIGNED_FIRST) {
+                  // Code 200 + (N - 1) * 2 is phasing, 201 + (N - 1) * 2 prephasing for read N.
+                  int readNum = ((metricCode - PHASING_FIRST) >> 1) + 1;
+                  if ((metricCode & 1) == 0) {
+                    pMap.setPhasing(laneNr, readNum, metricValue);
+                  }
+                  else {
+                    preMap.setPhasing(laneNr, readNum, metricValue);
+                  }
+                }
+                else if (metricCode >= PERCENT_ALIGNED_FIRST && metricCode < CONTROL_LANE) {
+                  // Code 300 + N - 1 is percent aligned for read N.
+                  int readNum = metricCode - PERCENT_ALIGNED_FIRST + 1;
+                  alignedMap.setPhasing(laneNr, readNum, metricValue);
+                }
+                // Skip the other codes
+                break;
             }
           }
-          else {  // Skip the other codes
-            continue;
-          }
-          record++;
         }
       }
       catch (EOFException EOFEx) {
-        eofCheck = false;
+        // Reached end of file
       }
       catch (IOException Ex) {
-        eofCheck = false;
+        metrixLogger.log.log(Level.SEVERE, "IO Error in parsing Tile Metrics: {0}", Ex.toString());
       }
+      consumeAll();
 
       // Set the collection objects.
       cdMap.setType("CD");
@@ -180,9 +204,19 @@ public class TileMetrics extends GenericIlluminaParser {
       setPhasingMap(pMap);
       preMap.setType("PREPH");
       setPrephasingMap(preMap);
+      alignedMap.setType("ALIGNED");
+      setPercentAlignedMap(alignedMap);
     }
   }
 
+  /*
+   * Cursor over the records that have not been decoded yet. The record
+   * object is reused for every record.
+   */
+  public RecordCursor<TileRecord> cursor() throws IOException {
+    return openCursor();
+  }
+
   private String parseMetricCode(int code) {
     String metricValue = "";
     if (code == CLUSTER_DENSITY) {
@@ -215,13 +249,4 @@ public class TileMetrics extends GenericIlluminaParser {
 
     return metricValue;
   }
-
-  private List<Integer> digits(int i) {
-    List<Integer> digits = new ArrayList<>();
-    while (i > 0) {
-      digits.add(i % 10);
-      i /= 10;
-    }
-    return digits;
-  }
 }
@@ -0,0 +1,39 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+/**
+ * Record of TileMetricsOut.bin as metric codes and values of a tile.
+ * A version 2 record holds a single metric. A version 3 record holds the
+ * cluster counts and densities of a tile, or the percent aligned of a read;
+ * these are translated to the version 2 metric codes.
+ */
+public class TileRecord extends IlluminaRecord {
+  static final int MAX_METRICS = 4;
+
+  int numMetrics;
+  final int[] metricCodes = new int[MAX_METRICS];
+  final float[] metricValues = new float[MAX_METRICS];
+
+  public int getNumMetrics() {
+    return numMetrics;
+  }
+
+  public int getMetricCode(int metric) {
+    return metricCodes[metric];
+  }
+
+  public float getMetricValue(int metric) {
+    return metricValues[metric];
+  }
+
+  void setMetric(int metric, int code, float value) {
+    metricCodes[metric] = code;
+    metricValues[metric] = value;
+  }
+}
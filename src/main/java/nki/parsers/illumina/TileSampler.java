@@ -0,0 +1,63 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.parsers.illumina;
+
+/**
+ * Deterministic subset of the tiles of a flowcell: every Nth tile of every
+ * swath, starting at the first. The tile within its swath is taken from the
+ * last two digits of the tile code (e.g. 2316: surface 2, swath 3, tile 16),
+ * so the same tiles are sampled on every refresh and in every InterOp file.
+ */
+public class TileSampler {
+  private final int every;
+
+  public TileSampler(int every) {
+    if (every < 1) {
+      throw new IllegalArgumentException("Sample interval must be at least 1: " + every);
+    }
+    this.every = every;
+  }
+
+  public int getEvery() {
+    return every;
+  }
+
+  public boolean accept(int tile) {
+    int tileInSwath = tile >= 100 ? tile % 100 : tile;
+    return tileInSwath > 0 && (tileInSwath - 1) % every == 0;
+  }
+
+  // Number of sampled tiles of a swath with tilesPerSwath tiles.
+  public int getSampledTiles(int tilesPerSwath) {
+    return (tilesPerSwath + every - 1) / every;
+  }
+
+  /*
+   * Only passes the records of sampled tiles to aggregator.
+   */
+  <R extends IlluminaRecord, A> ChunkAggregator<R, A> filter(final ChunkAggregator<R, A> aggregator) {
+    return new ChunkAggregator<R, A>() {
+      @Override
+      public A newAggregate() {
+        return aggregator.newAggregate();
+      }
+
+      @Override
+      public void add(R record, A aggregate) {
+        if (accept(record.getTile())) {
+          aggregator.add(record, aggregate);
+        }
+      }
+
+      @Override
+      public void merge(A into, A from) {
+        aggregator.merge(into, from);
+      }
+    };
+  }
+}
@@ -8,13 +8,16 @@
 package nki.parsers.xml;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
+import nki.io.RunArchive;
 import nki.objects.Summary;
 
 public class XmlDriver {
@@ -30,15 +33,31 @@ public class XmlDriver {
     this.summary = sum;
   }
 
+  /*
+   * The run directory may also be a run archive (see RunArchive); RunInfo.xml
+   * is then parsed from the archive entry.
+   */
   public boolean parseRunInfo() throws SAXException, IOException, ParserConfigurationException {
-    File xmlFile = new File(directory + "/RunInfo.xml");
-    if (!xmlFile.isFile()) {
+    String xmlPath = directory + "/RunInfo.xml";
+    File xmlFile = new File(xmlPath);
+    boolean archived = !xmlFile.isFile() && RunArchive.isArchivePath(xmlPath);
+    if (!xmlFile.isFile() && !archived) {
       return false;
     }
     summary.setRunDirectory(directory);
     documentBuilderFactory = DocumentBuilderFactory.newInstance();
     documentBuilder = documentBuilderFactory.newDocumentBuilder();
-    doc = documentBuilder.parse(xmlFile);
+    if (archived) {
+      try (InputStream in = RunArchive.open(xmlPath)) {
+        doc = documentBuilder.parse(in);
+      }
+      catch (FileNotFoundException fnfe) {
+        return false;
+      }
+    }
+    else {
+      doc = documentBuilder.parse(xmlFile);
+    }
     doc.getDocumentElement().normalize();
     
     setSummary(RunInfoHandler.parseAll(doc, summary));
@@ -7,106 +7,296 @@
 
 package nki.util;
 
+import java.nio.DoubleBuffer;
 import java.util.*;
-import java.util.logging.Level;
-import nki.util.LoggerWrapper;
 
+/**
+ * Statistics over lists and arrays of values. The double[] methods skip NaN
+ * values, do not modify their argument unless stated otherwise, compute sum,
+ * mean and variance in a single pass, and select medians and quartiles in
+ * O(n) instead of sorting. The List methods delegate to them. The
+ * DoubleBuffer methods work on the values between position and limit and
+ * leave the position of the buffer unchanged.
+ */
 public class ArrayUtils {
   public static double sum(List<Double> a) {
-    if (a.size() > 0) {
-      double sum = 0;
-
-      for (Double i : a) {
-        sum += i;
-      }
-      return sum;
-    }
-    return 0;
+    return sum(toArray(a));
   }
 
   public static double mean(List<Double> a) {
-    double sum = sum(a);
-    double mean = 0;
-    mean = sum / (a.size() * 1.0);
-    return mean;
+    return mean(toArray(a));
   }
 
   public static double median(List<Double> a) {
-    Collections.sort(a);
+    return median(toArray(a));
+  }
+
+  public static double max(List<Double> a) {
+    return max(toArray(a));
+  }
+
+  public static double min(List<Double> a) {
+    return min(toArray(a));
+  }
+
+  public static double sd(List<Double> a) {
+    return sd(toArray(a));
+  }
+
+  public static double quartile(List<Double> values, double lowerPercent) {
+    if (values == null || values.isEmpty()) {
+      throw new IllegalArgumentException("The data array either is null or does not contain any data.");
+    }
+    return quartile(toArray(values), lowerPercent);
+  }
 
-    int middle = a.size() / 2;
+  public double getVariance(List<Double> data) {
+    double[] m = moments(toArray(data));
+    return m[0] == 0 ? Double.NaN : m[2] * (m[0] - 1) / m[0];
+  }
 
-    if (a.size() % 2 == 1) {
-      return a.get(middle);
+  public static double[] toArray(Collection<Double> values) {
+    double[] arr = new double[values.size()];
+    int i = 0;
+    for (Double value : values) {
+      arr[i++] = value == null ? Double.NaN : value;
     }
-    else {
-      return (a.get(middle - 1) + a.get(middle)) / 2.0;
+    return arr;
+  }
+
+  /*
+   * { count, mean, sample variance } of the non-NaN values of a[from, to),
+   * computed in one pass with Welford's method. The mean is NaN when there
+   * are no values, the variance is 0 for less than two values.
+   */
+  public static double[] moments(double[] a, int from, int to) {
+    long n = 0;
+    double mean = 0;
+    double m2 = 0;
+    for (int i = from; i < to; i++) {
+      double x = a[i];
+      if (Double.isNaN(x)) {
+        continue;
+      }
+      n++;
+      double delta = x - mean;
+      mean += delta / n;
+      m2 += delta * (x - mean);
     }
+    return new double[]{n, n == 0 ? Double.NaN : mean, n < 2 ? 0 : m2 / (n - 1)};
   }
 
-  public static double max(List<Double> a) {
-    return Collections.max(a);
+  public static double[] moments(double[] a) {
+    return moments(a, 0, a.length);
   }
 
-  public static double min(List<Double> a) {
-    return Collections.min(a);
+  public static double[] moments(DoubleBuffer b) {
+    if (b.hasArray()) {
+      int from = b.arrayOffset() + b.position();
+      return moments(b.array(), from, from + b.remaining());
+    }
+    long n = 0;
+    double mean = 0;
+    double m2 = 0;
+    for (int i = b.position(); i < b.limit(); i++) {
+      double x = b.get(i);
+      if (Double.isNaN(x)) {
+        continue;
+      }
+      n++;
+      double delta = x - mean;
+      mean += delta / n;
+      m2 += delta * (x - mean);
+    }
+    return new double[]{n, n == 0 ? Double.NaN : mean, n < 2 ? 0 : m2 / (n - 1)};
   }
 
-  public static double sd(List<Double> a) {
+  public static double sum(double[] a) {
     double sum = 0;
-    double mean = mean(a);
+    for (double x : a) {
+      if (!Double.isNaN(x)) {
+        sum += x;
+      }
+    }
+    return sum;
+  }
 
-    for (Double i : a)
-      sum += Math.pow((i - mean), 2);
-    return Math.sqrt(sum / (a.size() - 1)); // sample
+  public static double mean(double[] a) {
+    return moments(a)[1];
   }
 
-  public static double quartile(double[] values, double lowerPercent) {
-      if (values == null || values.length == 0) {
-          throw new IllegalArgumentException("The data array either is null or does not contain any data.");
+  // Sample variance.
+  public static double variance(double[] a) {
+    return moments(a)[2];
+  }
+
+  // Sample standard deviation.
+  public static double sd(double[] a) {
+    return Math.sqrt(variance(a));
+  }
+
+  public static double min(double[] a) {
+    double min = Double.NaN;
+    for (double x : a) {
+      if (x < min || Double.isNaN(min)) {
+        min = x;
       }
+    }
+    return min;
+  }
+
+  public static double max(double[] a) {
+    double max = Double.NaN;
+    for (double x : a) {
+      if (x > max || Double.isNaN(max)) {
+        max = x;
+      }
+    }
+    return max;
+  }
 
-      // Rank order the values
-      double[] v = new double[values.length];
-      System.arraycopy(values, 0, v, 0, values.length);
-      Arrays.sort(v);
+  public static double median(double[] a) {
+    double[] v = withoutNaN(a);
+    return median(v, 0, v.length);
+  }
 
-      int n = (int) Math.round(v.length * lowerPercent / 100);
+  // Selects on a copy of the non-NaN values; the buffer is not reordered.
+  public static double median(DoubleBuffer b) {
+    double[] v = withoutNaN(b);
+    return median(v, 0, v.length);
+  }
 
-      return v[n];
+  /*
+   * Value at rank round(n * lowerPercent / 100) of the n sorted non-NaN
+   * values.
+   */
+  public static double quartile(double[] values, double lowerPercent) {
+    if (values == null || values.length == 0) {
+      throw new IllegalArgumentException("The data array either is null or does not contain any data.");
+    }
+    double[] v = withoutNaN(values);
+    return quantile(v, 0, v.length, lowerPercent);
   }
 
-  public static double quartile(List<Double> values, double lowerPercent) {
-      if (values == null || values.isEmpty()) {
-          throw new IllegalArgumentException("The data array either is null or does not contain any data.");
+  public static double quartile(DoubleBuffer values, double lowerPercent) {
+    if (values == null || !values.hasRemaining()) {
+      throw new IllegalArgumentException("The data array either is null or does not contain any data.");
+    }
+    double[] v = withoutNaN(values);
+    return quantile(v, 0, v.length, lowerPercent);
+  }
+
+  /*
+   * Median of a[from, to), which must not contain NaN. Reorders the range.
+   */
+  public static double median(double[] a, int from, int to) {
+    int n = to - from;
+    if (n == 0) {
+      return Double.NaN;
+    }
+    int middle = from + n / 2;
+    double upper = select(a, from, to, middle);
+    if (n % 2 == 1) {
+      return upper;
+    }
+    // After selection the lower half holds the smaller values.
+    double lower = a[from];
+    for (int i = from + 1; i < middle; i++) {
+      lower = Math.max(lower, a[i]);
+    }
+    return (lower + upper) / 2.0;
+  }
+
+  /*
+   * Value at rank round(n * percent / 100) of a[from, to), which must not
+   * contain NaN. Reorders the range.
+   */
+  public static double quantile(double[] a, int from, int to, double percent) {
+    int n = to - from;
+    if (n == 0) {
+      return Double.NaN;
+    }
+    int rank = (int) Math.min(Math.round(n * percent / 100), n - 1);
+    return select(a, from, to, from + rank);
+  }
+
+  /*
+   * Quickselect: reorder a[from, to) so that a[k] holds the value it would
+   * hold if the range was sorted, with smaller or equal values before it and
+   * larger or equal values after it. Expected O(n).
+   */
+  public static double select(double[] a, int from, int to, int k) {
+    int lo = from;
+    int hi = to - 1;
+    while (hi > lo) {
+      // Median of three as pivot, to avoid the worst case on sorted input.
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < a[lo]) {
+        swap(a, lo, mid);
       }
-      
-      double[] prival = new double[values.size()];
-      for (int i = 0; i < values.size(); i++) {
-        prival[i] = values.get(i);
+      if (a[hi] < a[lo]) {
+        swap(a, lo, hi);
       }
+      if (a[hi] < a[mid]) {
+        swap(a, mid, hi);
+      }
+      double pivot = a[mid];
 
-      // Rank order the values
-      Arrays.sort(prival);
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (a[i] < pivot) {
+          i++;
+        }
+        while (a[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(a, i, j);
+          i++;
+          j--;
+        }
+      }
 
-      int n = (int) Math.round(prival.length * lowerPercent / 100);
-      
-      if(prival.length > n){
-        return prival[n];
-      }else{
-        return 0;
+      if (k <= j) {
+        hi = j;
       }
+      else if (k >= i) {
+        lo = i;
+      }
+      else {
+        return a[k];
+      }
+    }
+    return a[k];
   }
 
-  public double getVariance(List<Double> data) {
-    double mean = mean(data);
-    double temp = 0;
-    double size = data.size();
+  private static double[] withoutNaN(double[] a) {
+    double[] v = new double[a.length];
+    int n = 0;
+    for (double x : a) {
+      if (!Double.isNaN(x)) {
+        v[n++] = x;
+      }
+    }
+    return n == v.length ? v : Arrays.copyOf(v, n);
+  }
 
-    for (double a : data) {
-      temp += (mean - a) * (mean - a);
+  private static double[] withoutNaN(DoubleBuffer b) {
+    double[] v = new double[b.remaining()];
+    int n = 0;
+    for (int i = b.position(); i < b.limit(); i++) {
+      double x = b.get(i);
+      if (!Double.isNaN(x)) {
+        v[n++] = x;
+      }
     }
+    return n == v.length ? v : Arrays.copyOf(v, n);
+  }
 
-    return temp / size;
+  private static void swap(double[] a, int i, int j) {
+    double tmp = a[i];
+    a[i] = a[j];
+    a[j] = tmp;
   }
 }
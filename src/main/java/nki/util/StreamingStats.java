@@ -0,0 +1,232 @@
+// Metrix - A server / client interface for Illumina Sequencing Metrics.
+// Copyright (C) 2014 Bernd van der Veen
+
+// This program comes with ABSOLUTELY NO WARRANTY;
+// This is free software, and you are welcome to redistribute it
+// under certain conditions; for more information please see LICENSE.txt
+
+package nki.util;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Running statistics over a stream of values, such as the per-tile scores
+ * of a lane. Count, sum, mean and variance (Welford), min and max are kept
+ * exactly and read in O(1).
+ *
+ * Quantiles are exact as long as at most exactLimit values were added; up
+ * to that many values are kept. Beyond the limit the values are moved into
+ * a histogram of BINS equal-width bins whose range doubles whenever a value
+ * falls outside of it, so memory does not depend on the number of values
+ * and quantiles are accurate to one bin width. NaN and infinite values are
+ * ignored.
+ */
+public class StreamingStats implements Serializable {
+
+  public static final long serialVersionUID = 42L;
+  // Values kept for exact quantiles by default; covers the tiles of a MiSeq or HiSeq lane.
+  public static final int DEFAULT_EXACT_LIMIT = 128;
+  private static final int BINS = 128;
+
+  private final int exactLimit;
+  private long count = 0;
+  private double sum = 0;
+  private double mean = 0;
+  private double m2 = 0;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+
+  // Exact mode: the values, in no particular order.
+  private double[] values;
+
+  // Histogram mode: bin b covers [lo + b * width, lo + (b + 1) * width).
+  private long[] bins = null;
+  private double lo;
+  private double width;
+
+  public StreamingStats() {
+    this(DEFAULT_EXACT_LIMIT);
+  }
+
+  /*
+   * Keep quantiles exact up to exactLimit values. Integer.MAX_VALUE
+   * keeps all values.
+   */
+  public StreamingStats(int exactLimit) {
+    this.exactLimit = Math.max(1, exactLimit);
+    this.values = new double[Math.min(8, this.exactLimit)];
+  }
+
+  // A copy that is not affected by values added to other later on.
+  public StreamingStats(StreamingStats other) {
+    this.exactLimit = other.exactLimit;
+    this.count = other.count;
+    this.sum = other.sum;
+    this.mean = other.mean;
+    this.m2 = other.m2;
+    this.min = other.min;
+    this.max = other.max;
+    this.values = other.values == null ? null : other.values.clone();
+    this.bins = other.bins == null ? null : other.bins.clone();
+    this.lo = other.lo;
+    this.width = other.width;
+  }
+
+  public void add(double x) {
+    if (Double.isNaN(x) || Double.isInfinite(x)) {
+      return;
+    }
+
+    count++;
+    sum += x;
+    double delta = x - mean;
+    mean += delta / count;
+    m2 += delta * (x - mean);
+    if (count == 1) {
+      min = x;
+      max = x;
+    }
+    else {
+      min = Math.min(min, x);
+      max = Math.max(max, x);
+    }
+
+    if (bins != null) {
+      addToBin(x);
+      return;
+    }
+
+    int n = (int) count - 1;
+    if (n == exactLimit) {
+      toHistogram();
+      addToBin(x);
+      return;
+    }
+    if (n == values.length) {
+      values = Arrays.copyOf(values, (int) Math.min((long) n * 2, exactLimit));
+    }
+    values[n] = x;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  // True while all values are kept and quantiles are exact.
+  public boolean isExact() {
+    return bins == null;
+  }
+
+  public double getSum() {
+    return sum;
+  }
+
+  public double getMean() {
+    return count == 0 ? Double.NaN : mean;
+  }
+
+  // Sample variance.
+  public double getVariance() {
+    return count < 2 ? 0 : m2 / (count - 1);
+  }
+
+  // Sample standard deviation.
+  public double getSD() {
+    return Math.sqrt(getVariance());
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  public double getMedian() {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (bins != null) {
+      return binQuantile(count / 2);
+    }
+
+    return ArrayUtils.median(values, 0, (int) count);
+  }
+
+  /*
+   * Value at rank round(count * percent / 100) of the sorted values, the
+   * definition used by ArrayUtils.quartile.
+   */
+  public double getQuantile(double percent) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (bins != null) {
+      return binQuantile(Math.min(Math.round(count * percent / 100), count - 1));
+    }
+    return ArrayUtils.quantile(values, 0, (int) count, percent);
+  }
+
+  // Move the exact values into a histogram spanning their range.
+  private void toHistogram() {
+    int n = (int) count - 1;
+    double first = values[0];
+    double low = first;
+    double high = first;
+    for (int i = 1; i < n; i++) {
+      low = Math.min(low, values[i]);
+      high = Math.max(high, values[i]);
+    }
+
+    bins = new long[BINS];
+    lo = low;
+    width = high > low ? (high - low) / (BINS - 1) : Math.max(Math.abs(low), 1) * 1e-6;
+    for (int i = 0; i < n; i++) {
+      addToBin(values[i]);
+    }
+    values = null;
+  }
+
+  private void addToBin(double x) {
+    while (x < lo) {
+      // Double the width, extending the range downwards by the current range.
+      long[] wider = new long[BINS];
+      for (int b = 0; b < BINS; b++) {
+        wider[BINS / 2 + b / 2] += bins[b];
+      }
+      lo -= BINS * width;
+      width *= 2;
+      bins = wider;
+    }
+    while (x >= lo + BINS * width) {
+      // Double the width, extending the range upwards.
+      long[] wider = new long[BINS];
+      for (int b = 0; b < BINS; b++) {
+        wider[b / 2] += bins[b];
+      }
+      width *= 2;
+      bins = wider;
+    }
+    int b = (int) ((x - lo) / width);
+    bins[Math.min(b, BINS - 1)]++;
+  }
+
+  // Value at rank (0-based) interpolated within its bin.
+  private double binQuantile(long rank) {
+    long seen = 0;
+    for (int b = 0; b < BINS; b++) {
+      if (seen + bins[b] > rank) {
+        double value = lo + (b + (rank - seen + 0.5) / bins[b]) * width;
+        return Math.max(min, Math.min(max, value));
+      }
+      seen += bins[b];
+    }
+    return max;
+  }
+}